@@ -0,0 +1,165 @@
+package dev.ebullient.json5e.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dev.ebullient.json5e.qute.QuteBackground;
+import dev.ebullient.json5e.qute.QuteClass;
+import dev.ebullient.json5e.qute.QuteDeity;
+import dev.ebullient.json5e.qute.QuteFeat;
+import dev.ebullient.json5e.qute.QuteItem;
+import dev.ebullient.json5e.qute.QuteMonster;
+import dev.ebullient.json5e.qute.QuteRace;
+import dev.ebullient.json5e.qute.QuteSource;
+import dev.ebullient.json5e.qute.QuteSpell;
+import dev.ebullient.json5e.qute.QuteSubclass;
+import dev.ebullient.json5e.tools5e.BenchmarkCorpus;
+import dev.ebullient.json5e.tools5e.JsonIndex;
+import io.quarkus.qute.Engine;
+import io.quarkus.qute.ReflectionValueResolver;
+
+/**
+ * Rendering and writing converted entries: each {@code Templates.renderX}, and {@link MarkdownWriter#writeFiles}.
+ * <p>
+ * Templates are parsed by a standalone Qute engine (there is no CDI container here).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBenchmark {
+
+    Json5eTui tui;
+    JsonIndex index;
+    Templates templates;
+    List<QuteSource> sources;
+    Map<String, List<QuteSource>> byType;
+
+    Path output;
+    MarkdownWriter writer;
+
+    @Setup
+    public void setup() throws IOException {
+        tui = BenchmarkCorpus.tui();
+        index = BenchmarkCorpus.prepared(tui);
+        templates = templates(tui);
+        sources = BenchmarkCorpus.convertAll(index);
+        byType = sources.stream().collect(Collectors.groupingBy(qs -> qs.getClass().getSimpleName()));
+
+        output = Files.createTempDirectory("json5e-benchmark");
+        tui.setOutputPath(output);
+        writer = new MarkdownWriter(output, templates, tui);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(output)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Type {
+        @Param({ "background", "class", "deity", "feat", "item", "monster", "race", "spell", "subclass" })
+        String type;
+    }
+
+    @Benchmark
+    public void render(Type type, Blackhole bh) {
+        Function<QuteSource, String> render = renderer(type.type);
+        List<QuteSource> list = byType.get(className(type.type));
+        if (list == null) {
+            throw new IllegalStateException("No " + type.type + " entries in " + BenchmarkCorpus.DATA);
+        }
+        for (QuteSource qs : list) {
+            bh.consume(render.apply(qs));
+        }
+    }
+
+    @Benchmark
+    public void writeFiles() {
+        writer.writeFiles(sources, index.compendiumPath());
+    }
+
+    String className(String type) {
+        return "Qute" + Character.toUpperCase(type.charAt(0)) + type.substring(1);
+    }
+
+    Function<QuteSource, String> renderer(String type) {
+        switch (type) {
+            case "background":
+                return qs -> templates.renderBackground((QuteBackground) qs);
+            case "class":
+                return qs -> templates.renderClass((QuteClass) qs);
+            case "deity":
+                return qs -> templates.renderDeity((QuteDeity) qs);
+            case "feat":
+                return qs -> templates.renderFeat((QuteFeat) qs);
+            case "item":
+                return qs -> templates.renderItem((QuteItem) qs);
+            case "monster":
+                return qs -> templates.renderMonster((QuteMonster) qs);
+            case "race":
+                return qs -> templates.renderRace((QuteRace) qs);
+            case "spell":
+                return qs -> templates.renderSpell((QuteSpell) qs);
+            case "subclass":
+                return qs -> templates.renderSubclass((QuteSubclass) qs);
+            default:
+                throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
+
+    static Templates templates(Json5eTui tui) throws IOException {
+        Engine engine = Engine.builder()
+                .addDefaults()
+                .addValueResolver(new ReflectionValueResolver())
+                .build();
+
+        Templates templates = new Templates();
+        templates.tui = tui;
+        templates.engine = engine;
+        templates.index = engine.parse(read("index.txt"));
+        templates.background2md = engine.parse(read("background2md.txt"));
+        templates.class2md = engine.parse(read("class2md.txt"));
+        templates.deity2md = engine.parse(read("deity2md.txt"));
+        templates.feat2md = engine.parse(read("feat2md.txt"));
+        templates.item2md = engine.parse(read("item2md.txt"));
+        templates.monster2md = engine.parse(read("monster2md.txt"));
+        templates.name2md = engine.parse(read("name2md.txt"));
+        templates.note2md = engine.parse(read("note2md.txt"));
+        templates.race2md = engine.parse(read("race2md.txt"));
+        templates.spell2md = engine.parse(read("spell2md.txt"));
+        templates.subclass2md = engine.parse(read("subclass2md.txt"));
+        return templates;
+    }
+
+    static String read(String id) throws IOException {
+        try (InputStream in = Templates.class.getResourceAsStream("/templates/" + id)) {
+            if (in == null) {
+                throw new IllegalStateException("Unable to find template " + id);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
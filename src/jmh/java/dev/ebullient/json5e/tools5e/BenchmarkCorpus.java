@@ -0,0 +1,96 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.qute.QuteSource;
+
+/**
+ * Data used by benchmarks.
+ * <p>
+ * By default, this is the synthetic sample in {@code src/test/resources/5etools-sample/data}
+ * (no 5etools clone is needed). Set {@code -Djson5e.benchmark.data=<dir>} to use another data directory.
+ */
+public class BenchmarkCorpus {
+    public static final Path DATA = Path.of(System.getProperty("json5e.benchmark.data",
+            "src/test/resources/5etools-sample/data"));
+
+    // Types written to the compendium (see Json2MarkdownConverter#writeAll)
+    static final List<IndexType> COMPENDIUM_TYPES = List.of(
+            IndexType.background, IndexType.classtype, IndexType.deity, IndexType.feat,
+            IndexType.item, IndexType.monster, IndexType.race, IndexType.subrace, IndexType.spell);
+
+    public static Json5eTui tui() {
+        Json5eTui tui = new Json5eTui();
+        tui.init(null, false, false);
+        return tui;
+    }
+
+    /** @return data files, in the order they are read */
+    public static List<Path> files(Json5eTui tui) {
+        List<Path> files = tui.listInputs(DATA);
+        if (files.isEmpty()) {
+            throw new IllegalStateException("Unable to find 5etools data in " + DATA.toAbsolutePath());
+        }
+        return files;
+    }
+
+    /** @return content of each data file, in the order they are read */
+    public static Map<String, byte[]> content(Json5eTui tui) throws IOException {
+        Map<String, byte[]> content = new LinkedHashMap<>();
+        for (Path p : files(tui)) {
+            content.put(p.getFileName().toString(), Files.readAllBytes(p));
+        }
+        return content;
+    }
+
+    /** @return a new index, with each file imported (not prepared) */
+    public static JsonIndex importAll(Json5eTui tui, Map<String, byte[]> content) throws IOException {
+        JsonIndex index = new JsonIndex(List.of("*"), tui);
+        for (Entry<String, byte[]> e : content.entrySet()) {
+            index.importTree(e.getKey(), Json5eTui.MAPPER.readTree(e.getValue()));
+        }
+        return index;
+    }
+
+    /** @return a prepared index containing all sources */
+    public static JsonIndex prepared(Json5eTui tui) throws IOException {
+        JsonIndex index = importAll(tui, content(tui));
+        index.prepare();
+        return index;
+    }
+
+    /** @return origin (unresolved) nodes that copy another entry */
+    public static List<Entry<IndexType, JsonNode>> copies(JsonIndex index) {
+        List<Entry<IndexType, JsonNode>> copies = new ArrayList<>();
+        for (Entry<String, JsonNode> e : index.includedEntries()) {
+            JsonNode origin = index.getOrigin(e.getKey());
+            if (origin != null && origin.has("_copy")) {
+                copies.add(Map.entry(IndexType.getTypeFromKey(e.getKey()), origin));
+            }
+        }
+        return copies;
+    }
+
+    /** @return all included entries, converted (as they are when files are written) */
+    public static List<QuteSource> convertAll(JsonIndex index) {
+        Json2MarkdownConverter converter = new Json2MarkdownConverter(index, null);
+        List<QuteSource> sources = new ArrayList<>();
+        for (Entry<String, JsonNode> e : index.includedEntries()) {
+            IndexType type = IndexType.getTypeFromKey(e.getKey());
+            if (COMPENDIUM_TYPES.contains(type)) {
+                sources.addAll(converter.convert(e));
+            }
+        }
+        return sources;
+    }
+}
@@ -0,0 +1,85 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Converting entries: {@link JsonSource#replaceText(String)} and {@link JsonSourceCopier#handleCopy}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConvertBenchmark {
+    // Representative text from monster, spell and class entries
+    static final Map<String, String> TEXT = Map.of(
+            "monster", "{@atk mw} {@hit 4} to hit, reach 5 ft., one target. {@h}5 ({@damage 1d6 + 2}) slashing damage. "
+                    + "The goblin can take the {@action Disengage} or {@action Hide} action (spell save {@dc 12}).",
+            "spell", "You call upon binding power. Each creature in range must make a {@dc 13} Dexterity saving throw, "
+                    + "taking {@damage 2d6} fire damage on a failed save. A creature that fails is {@condition prone}. "
+                    + "Targets can use a {@action Dash} as a bonus action, or consult {@spell Arcane Bolt} for details.",
+            "class", "(a) {@item chain mail|phb} or (b) {@item leather armor|phb}, and a {@item longsword|phb}. "
+                    + "{@dice 5d4 × 10|5d4 × 10|Starting Gold}. You can use it a number of times equal to your "
+                    + "{@skill Athletics} modifier. See {@classFeature Wizard Feature 2|Wizard||2}.",
+            "nested", "{@note If you cast {@spell Arcane Bolt} at {@b {@i higher}} levels, {@dice 1d6} more "
+                    + "({@link see here|https://example.com}).} A {@creature goblin|mm|{@i small}} watches.");
+
+    JsonIndex index;
+    List<Entry<IndexType, JsonNode>> copies;
+
+    @Setup
+    public void setup() throws IOException {
+        index = BenchmarkCorpus.prepared(BenchmarkCorpus.tui());
+        copies = BenchmarkCorpus.copies(index);
+        if (copies.isEmpty()) {
+            throw new IllegalStateException("No entries with _copy in " + BenchmarkCorpus.DATA);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Text {
+        @Param({ "monster", "spell", "class", "nested" })
+        String text;
+
+        String input;
+
+        @Setup
+        public void setup() {
+            input = TEXT.get(text);
+        }
+    }
+
+    @Benchmark
+    public String replaceText(Text text) {
+        return index.replaceText(text.input);
+    }
+
+    /** The original regex passes (nested text converts differently), to compare with replaceText */
+    @Benchmark
+    public String replaceTextBaseline(Text text) {
+        return BaselineTextReplacer.replaceText(index, text.input);
+    }
+
+    @Benchmark
+    public void handleCopy(Blackhole bh) {
+        // A new copier for each run: resolved copies are kept
+        JsonSourceCopier copier = new JsonSourceCopier(index);
+        for (Entry<IndexType, JsonNode> e : copies) {
+            bh.consume(copier.handleCopy(e.getKey(), e.getValue()));
+        }
+    }
+}
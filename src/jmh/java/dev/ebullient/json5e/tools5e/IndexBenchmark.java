@@ -0,0 +1,82 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+
+/**
+ * Reading and indexing data files: {@link Json5eTui#readFile}, {@link JsonIndex#importTree},
+ * and {@link JsonIndex#prepare()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IndexBenchmark {
+    Json5eTui tui;
+    List<Path> files;
+    List<Map.Entry<String, JsonNode>> trees;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tui = BenchmarkCorpus.tui();
+        files = BenchmarkCorpus.files(tui);
+        // Importing and preparing an index do not modify parsed trees: parse them once
+        trees = new ArrayList<>();
+        for (Map.Entry<String, byte[]> e : BenchmarkCorpus.content(tui).entrySet()) {
+            trees.add(Map.entry(e.getKey(), Json5eTui.MAPPER.readTree(e.getValue())));
+        }
+    }
+
+    /** An index is prepared once: import the (already parsed) trees into a new one for each call */
+    @State(Scope.Thread)
+    public static class Imported {
+        JsonIndex index;
+
+        @Setup(Level.Invocation)
+        public void setup(IndexBenchmark benchmark) {
+            index = new JsonIndex(List.of("*"), benchmark.tui);
+            for (Map.Entry<String, JsonNode> e : benchmark.trees) {
+                index.importTree(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    @Benchmark
+    public void readFile(Blackhole bh) throws IOException {
+        for (Path p : files) {
+            tui.readFile(p, (name, node) -> bh.consume(node));
+        }
+    }
+
+    @Benchmark
+    public JsonIndex importTree() {
+        JsonIndex index = new JsonIndex(List.of("*"), tui);
+        for (Map.Entry<String, JsonNode> e : trees) {
+            index.importTree(e.getKey(), e.getValue());
+        }
+        return index;
+    }
+
+    @Benchmark
+    public JsonIndex prepare(Imported imported) {
+        imported.index.prepare();
+        return imported.index;
+    }
+}
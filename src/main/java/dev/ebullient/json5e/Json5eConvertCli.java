@@ -5,17 +5,35 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
+import dev.ebullient.json5e.io.EntryProfiler;
+import dev.ebullient.json5e.io.InputWatcher;
 import dev.ebullient.json5e.io.Json5eTui;
 import dev.ebullient.json5e.io.MarkdownWriter;
+import dev.ebullient.json5e.io.OutputManifest;
+import dev.ebullient.json5e.io.RunMetrics;
 import dev.ebullient.json5e.io.TemplatePaths;
 import dev.ebullient.json5e.io.Templates;
+import dev.ebullient.json5e.tools5e.DependencyGraph;
+import dev.ebullient.json5e.tools5e.IndexCache;
 import dev.ebullient.json5e.tools5e.Json2MarkdownConverter;
 import dev.ebullient.json5e.tools5e.JsonIndex;
+import dev.ebullient.json5e.tools5e.JsonSourceCopier;
+import dev.ebullient.json5e.tools5e.LinkCache;
 import io.quarkus.runtime.QuarkusApplication;
 import io.quarkus.runtime.annotations.QuarkusMain;
 import picocli.CommandLine;
@@ -35,6 +53,7 @@ import picocli.CommandLine.Spec;
 @QuarkusMain
 @Command(name = "5e-convert", header = "Convert 5etools data to markdown", subcommands = {
         Completion.class,
+        ServeCommand.class,
 }, description = {
         "%n%nThis will read from a 5etools json file (or the 5etools data directory) and will produce xml or markdown documents (based on options).",
 }, footer = {
@@ -80,6 +99,11 @@ public class Json5eConvertCli implements Callable<Integer>, QuarkusApplication {
     @Spec
     private CommandSpec spec;
 
+    static final long WATCH_DEBOUNCE_MS = 300;
+
+    // Graph of the last conversion (watch mode)
+    DependencyGraph lastGraph;
+
     @Option(names = { "-d", "--debug" }, description = "Enable debug output", defaultValue = "false", scope = ScopeType.INHERIT)
     boolean debug;
 
@@ -92,10 +116,33 @@ public class Json5eConvertCli implements Callable<Integer>, QuarkusApplication {
     @Option(names = "--index", description = "Create index of keys that can be used to exclude entries")
     boolean filterIndex;
 
+    @Option(names = "--threads", description = "Number of threads used to read, convert, and write files (default: ${DEFAULT-VALUE})%n  Files are processed sequentially by default; use the number of available processors for the fastest conversion")
+    int threads = 1;
+
+    @Option(names = "--stream", description = "Write each file as soon as it is converted%n  Uses less memory for large inputs")
+    boolean stream;
+
+    @Option(names = "--index-cache", description = "Cache the prepared index in this file%n  The cache is used instead of reading input files when they have not changed")
+    Path indexCache;
+
+    @Option(names = "--incremental", description = "Only write files that have changed since the last run%n  Content hashes are kept in "
+            + OutputManifest.MANIFEST_FILE + " in the output directory")
+    boolean incremental;
+
+    @Option(names = "--metrics", arity = "0..1", fallbackValue = "", paramLabel = "<json file>", description = "Print time spent in each stage of the run%n  If a file name is given, also write metrics as json to that file in the output directory")
+    String metrics;
+
+    @Option(names = "--profile-entries", paramLabel = "N", description = "Report the N entries that took the most time (and memory) to convert, render, and write")
+    int profileEntries;
+
+    @Option(names = "--watch", description = "Keep running: write files again when input files or custom templates change%n  Only changed entries are converted (implies --incremental)")
+    boolean watch;
+
     @ArgGroup(exclusive = false)
     TemplatePaths paths = new TemplatePaths();
 
-    @Option(names = "-o", description = "Output directory", required = true)
+    // Required to convert files (not for subcommands): checked in call()
+    @Option(names = "-o", description = "Output directory (required)")
     void setOutputPath(File outputDir) {
         output = outputDir.toPath().toAbsolutePath().normalize();
         if (output.toFile().exists() && output.toFile().isFile()) {
@@ -118,24 +165,114 @@ public class Json5eConvertCli implements Callable<Integer>, QuarkusApplication {
             throw new CommandLine.MissingParameterException(spec.commandLine(), spec.args(),
                     "Must specify an input file");
         }
+        if (output == null) {
+            throw new CommandLine.MissingParameterException(spec.commandLine(), spec.findOption("-o"),
+                    "Missing required option: '-o=<outputPath>'");
+        }
         if (!output.toFile().exists() && !output.toFile().mkdirs()) {
             tui.errorf("Unable to create output directory: %s", output);
             return ExitCode.USAGE;
         }
-        if (source.size() == 1 && source.get(0).contains(",")) {
-            String tmp = source.remove(0);
-            source = List.of(tmp.split(","));
-        }
-        if (source.contains("ALL")) {
-            source = List.of("*");
-        }
+        source = sources(source);
 
+        RunMetrics runMetrics = new RunMetrics(metrics != null);
+        tui.setMetrics(runMetrics);
+        EntryProfiler profiler = new EntryProfiler(profileEntries);
+        tui.setProfiler(profiler);
         tui.setOutputPath(output);
+        tui.setThreads(threads);
+        OutputManifest manifest = incremental || watch ? OutputManifest.load(output, tui) : null;
+        tui.setManifest(manifest);
         tui.verbosef("Writing markdown to %s.\n", output);
 
+        // Parse templates before reading anything: stop early if a template is invalid
+        tui.verbosef("Custom templates: %s", paths.customTemplates.toString());
+        if (!tpl.setCustomTemplates(paths)) {
+            return ExitCode.USAGE;
+        }
+        tui.debugf("Defined templates: %s", tpl);
+
         boolean allOk = true;
         JsonIndex index = new JsonIndex(source, tui);
 
+        IndexCache cache = null;
+        if (indexCache != null) {
+            try {
+                cache = new IndexCache(indexCache, input, source, tui);
+            } catch (IOException e) {
+                tui.error(e, "  Exception: " + e.getMessage());
+                allOk = false;
+            }
+        }
+
+        // Watch mode keeps parsed input files to build the index again: always read them
+        Map<Path, JsonNode> parsed = watch ? new LinkedHashMap<>() : null;
+        if (parsed == null && cache != null && cache.load(index)) {
+            tui.outPrintf("✅ restored prepared index from %s%n", indexCache);
+            if (manifest != null) {
+                tui.getInputHashes().forEach(manifest::inputRead);
+            }
+        } else {
+            tui.setHashInputs(cache != null);
+            if (parsed != null) {
+                readInputs(parsed, Set.of());
+                importInputs(index, parsed);
+            } else {
+                allOk &= readAll(tui, input, index);
+            }
+            tui.outPrintln("✅ finished reading 5etools data.");
+            index.prepare();
+
+            if (cache != null && allOk) {
+                try {
+                    cache.save(index);
+                } catch (IOException e) {
+                    tui.error(e, "  Exception: " + e.getMessage());
+                    allOk = false;
+                }
+            }
+        }
+
+        allOk &= writeFiles(index, manifest);
+
+        profiler.report(tui);
+        runMetrics.report(tui);
+        if (metrics != null && !metrics.isBlank()) {
+            try {
+                runMetrics.save(output.resolve(metrics), threads);
+            } catch (IOException e) {
+                tui.error(e, "  Exception: " + e.getMessage());
+                allOk = false;
+            }
+        }
+
+        if (watch) {
+            return watch(index, parsed) && allOk ? ExitCode.OK : ExitCode.SOFTWARE;
+        }
+        return allOk ? ExitCode.OK : ExitCode.SOFTWARE;
+    }
+
+    /**
+     * @param source Sources as given on the command line
+     * @return list of sources: comma-separated values are split, and ALL is replaced by *
+     */
+    static List<String> sources(List<String> source) {
+        if (source.size() == 1 && source.get(0).contains(",")) {
+            source = List.of(source.get(0).split(","));
+        }
+        if (source.contains("ALL")) {
+            source = List.of("*");
+        }
+        return source;
+    }
+
+    /**
+     * Read input files (or 5etools data directories) into the index.
+     *
+     * @return true if all inputs were read
+     */
+    static boolean readAll(Json5eTui tui, List<Path> input, JsonIndex index) {
+        boolean allOk = true;
         for (Path inputPath : input) {
             tui.outPrintf("⏱  Reading %s%n", inputPath);
             try {
@@ -149,13 +286,18 @@ public class Json5eConvertCli implements Callable<Integer>, QuarkusApplication {
                 allOk = false;
             }
         }
-        tui.outPrintln("✅ finished reading 5etools data.");
-        index.prepare();
-
-        tui.verbosef("Custom templates: %s", paths.customTemplates.toString());
-        tpl.setCustomTemplates(paths);
-        tui.debugf("Defined templates: %s", tpl);
+        return allOk;
+    }
 
+    /**
+     * Write the index of keys (if requested), and convert all entries.
+     *
+     * @param index Prepared index
+     * @param manifest Output manifest (incremental or watch mode), or null
+     * @return true if all files were written
+     */
+    boolean writeFiles(JsonIndex index, OutputManifest manifest) {
+        boolean allOk = true;
         if (filterIndex) {
             try {
                 index.writeIndex(output.resolve("all-index.json"));
@@ -166,13 +308,159 @@ public class Json5eConvertCli implements Callable<Integer>, QuarkusApplication {
             }
         }
 
+        DependencyGraph graph = null;
+        if (manifest != null) {
+            tpl.recordTemplates(manifest);
+            graph = DependencyGraph.load(index, manifest, output, lastGraph);
+            lastGraph = graph;
+        }
+
         MarkdownWriter writer = new MarkdownWriter(output, tpl, tui);
         tui.outPrintln("💡 Writing files to " + output);
         new Json2MarkdownConverter(index, writer)
+                .streaming(stream)
+                .dependencies(graph)
                 .writeAll()
                 .writeRulesAndTables();
 
-        return allOk ? ExitCode.OK : ExitCode.SOFTWARE;
+        LinkCache links = index.linkCache();
+        tui.verbosef("Resolved %d links: %d cache hits, %d misses", links.size(), links.hits(), links.misses());
+        JsonSourceCopier copier = index.copier();
+        tui.verbosef("Resolved %d copies: %d cache hits, %d misses", copier.size(), copier.hits(), copier.misses());
+        tpl.renderStats().forEach((id, stats) -> tui.verbosef("Rendered %s %d times: %d ms, %d characters",
+                id, stats.count(), TimeUnit.NANOSECONDS.toMillis(stats.nanos()), stats.chars()));
+
+        if (manifest != null) {
+            try {
+                manifest.save();
+                graph.save();
+            } catch (IOException e) {
+                tui.error(e, "  Exception: " + e.getMessage());
+                allOk = false;
+            }
+            graph.report();
+            manifest.report();
+        }
+        return allOk;
+    }
+
+    /**
+     * Watch input files and custom templates, and write files again when they change.
+     * <p>
+     * Parsed input files are kept: only changed files are read again. The index is built
+     * again from the parsed files, sharing unchanged trees with the previous index: resolved
+     * copies that do not depend on a changed entry are reused. When only templates have changed,
+     * the prepared index is used as it is. In both cases, only entries that have changed (or that are rendered
+     * with a changed template) are converted again.
+     *
+     * @param index Prepared index
+     * @param parsed Parsed input files, in the order they were read
+     * @return true if watching stopped normally (interrupted)
+     */
+    boolean watch(JsonIndex index, Map<Path, JsonNode> parsed) {
+        try (InputWatcher watcher = new InputWatcher(tui, WATCH_DEBOUNCE_MS)) {
+            for (Path p : input) {
+                watcher.watch(p);
+            }
+            for (Path p : paths.customTemplates.values()) {
+                watcher.watch(p);
+            }
+            Set<Path> templates = paths.customTemplates.values().stream()
+                    .map(p -> p.toAbsolutePath().normalize())
+                    .collect(Collectors.toSet());
+
+            tui.outPrintln("👀 Watching for changes (Ctrl-C to stop)");
+            while (true) {
+                Set<Path> changed = watcher.take();
+                long start = System.nanoTime();
+
+                boolean inputsChanged = readInputs(parsed, changed);
+                boolean templatesChanged = changed.stream().anyMatch(templates::contains);
+                if (!inputsChanged && !templatesChanged) {
+                    continue;
+                }
+
+                OutputManifest manifest = OutputManifest.load(output, tui);
+                tui.getInputHashes().forEach(manifest::inputRead);
+                tui.setManifest(manifest);
+
+                if (inputsChanged) {
+                    index = new JsonIndex(source, tui, index);
+                    importInputs(index, parsed);
+                    index.prepare();
+                }
+                if (templatesChanged && !tpl.setCustomTemplates(paths)) {
+                    // Keep the current templates until the template is fixed
+                    tui.outPrintln("👀 Watching for changes (Ctrl-C to stop)");
+                    continue;
+                }
+
+                writeFiles(index, manifest);
+                tui.outPrintf("✅ Updated in %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                tui.outPrintln("👀 Watching for changes (Ctrl-C to stop)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (IOException e) {
+            tui.error(e, "  Exception: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Read input files that have changed (or all files, the first time).
+     *
+     * @param parsed Parsed input files, updated in place (in the order files are read)
+     * @param changed Changed files or directories
+     * @return true if an input file was added, removed, or changed (content, rather than time)
+     */
+    boolean readInputs(Map<Path, JsonNode> parsed, Set<Path> changed) {
+        List<Path> files = new ArrayList<>();
+        for (Path inputPath : input) {
+            if (parsed.isEmpty()) {
+                tui.outPrintf("⏱  Reading %s%n", inputPath);
+            }
+            if (inputPath.toFile().isDirectory()) {
+                tui.addInputRoot(inputPath.getParent());
+            }
+            tui.listInputs(inputPath).stream()
+                    .map(p -> p.toAbsolutePath().normalize())
+                    .forEach(files::add);
+        }
+
+        Map<Path, String> hashes = tui.getInputHashes();
+        List<Path> read = files.stream()
+                .filter(p -> !parsed.containsKey(p) || changed.stream().anyMatch(p::startsWith))
+                .collect(Collectors.toList());
+        Map<Path, String> previous = new HashMap<>();
+        read.forEach(p -> previous.put(p, hashes.get(p)));
+
+        Map<Path, JsonNode> updates = new HashMap<>();
+        tui.readFiles(read, updates::put);
+
+        boolean modified = !files.equals(new ArrayList<>(parsed.keySet()));
+        for (Path p : read) {
+            modified |= !Objects.equals(previous.get(p), hashes.get(p));
+        }
+
+        Map<Path, JsonNode> all = new LinkedHashMap<>();
+        for (Path p : files) {
+            JsonNode node = updates.containsKey(p) ? updates.get(p) : parsed.get(p);
+            if (node != null) {
+                all.put(p, node);
+            }
+        }
+        hashes.keySet().retainAll(all.keySet());
+        parsed.clear();
+        parsed.putAll(all);
+        return modified;
+    }
+
+    /** Import parsed input files into the index (import does not modify the parsed trees) */
+    void importInputs(JsonIndex index, Map<Path, JsonNode> parsed) {
+        BiConsumer<String, JsonNode> importFile = index.importFile();
+        parsed.forEach((p, node) -> importFile.accept(p.getFileName().toString(), node));
     }
 
     private int executionStrategy(ParseResult parseResult) {
@@ -0,0 +1,55 @@
+package dev.ebullient.json5e;
+
+import dev.ebullient.json5e.io.MarkdownWriter;
+import dev.ebullient.json5e.qute.AbilityScores;
+import dev.ebullient.json5e.qute.ImageRef;
+import dev.ebullient.json5e.qute.QuteBackground;
+import dev.ebullient.json5e.qute.QuteBase;
+import dev.ebullient.json5e.qute.QuteClass;
+import dev.ebullient.json5e.qute.QuteDeity;
+import dev.ebullient.json5e.qute.QuteFeat;
+import dev.ebullient.json5e.qute.QuteItem;
+import dev.ebullient.json5e.qute.QuteMonster;
+import dev.ebullient.json5e.qute.QuteName;
+import dev.ebullient.json5e.qute.QuteNote;
+import dev.ebullient.json5e.qute.QuteRace;
+import dev.ebullient.json5e.qute.QuteSource;
+import dev.ebullient.json5e.qute.QuteSpell;
+import dev.ebullient.json5e.qute.QuteSubclass;
+import dev.ebullient.json5e.qute.Trait;
+import dev.ebullient.json5e.tools5e.Json2QuteMonster;
+import dev.ebullient.json5e.tools5e.JsonSource;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Classes used with reflection, registered for the native executable:
+ * <ul>
+ * <li>Qute models, read by templates (using the reflection value resolver)</li>
+ * <li>Traits (and other monster elements), dumped by SnakeYAML for statblocks</li>
+ * <li>Classes read or written by Jackson (with field visibility ANY, see {@link dev.ebullient.json5e.io.Json5eTui#MAPPER})</li>
+ * </ul>
+ * Nested classes (builders, spellcasting, saves and skills, ...) are included.
+ */
+@RegisterForReflection(ignoreNested = false, targets = {
+        AbilityScores.class,
+        ImageRef.class,
+        QuteBackground.class,
+        QuteBase.class,
+        QuteClass.class,
+        QuteDeity.class,
+        QuteFeat.class,
+        QuteItem.class,
+        QuteMonster.class,
+        QuteName.class,
+        QuteNote.class,
+        QuteRace.class,
+        QuteSource.class,
+        QuteSpell.class,
+        QuteSubclass.class,
+        Trait.class,
+        MarkdownWriter.FileMap.class,
+        Json2QuteMonster.class,
+        JsonSource.JsonMediaHref.class,
+})
+public class ReflectionConfiguration {
+}
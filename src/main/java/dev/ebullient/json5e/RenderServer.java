@@ -0,0 +1,214 @@
+package dev.ebullient.json5e;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.io.MarkdownWriter;
+import dev.ebullient.json5e.io.RenderCache;
+import dev.ebullient.json5e.qute.QuteSource;
+import dev.ebullient.json5e.tools5e.Json2MarkdownConverter;
+import dev.ebullient.json5e.tools5e.JsonIndex;
+
+/**
+ * Render entries of a prepared index on request (HTTP, bound to the loopback address).
+ * <ul>
+ * <li><code>GET /render/{index-key}</code>: markdown for the entry, as it would be written to a file.
+ * A subclass is rendered by converting its class.
+ * The <code>X-Cache</code> header is <code>hit</code> if the markdown was cached.</li>
+ * <li><code>GET /stats</code>: cache size and hit rate, and render latency percentiles (json).</li>
+ * </ul>
+ * Rendered markdown is kept in a {@link RenderCache}.
+ */
+public class RenderServer {
+    static final String RENDER = "/render/";
+    static final String STATS = "/stats";
+
+    final JsonIndex index;
+    final Json5eTui tui;
+    final Json2MarkdownConverter converter;
+    final MarkdownWriter writer;
+    final RenderCache cache;
+    final Latencies latencies = new Latencies(4096);
+
+    HttpServer server;
+    ExecutorService executor;
+
+    /**
+     * @param index Prepared index
+     * @param writer Writer used to render converted entries (nothing is written)
+     * @param cacheBytes Maximum size of cached markdown
+     */
+    public RenderServer(JsonIndex index, MarkdownWriter writer, long cacheBytes) {
+        this.index = index;
+        this.tui = index.tui();
+        this.writer = writer;
+        this.converter = new Json2MarkdownConverter(index, writer);
+        this.cache = new RenderCache(cacheBytes);
+    }
+
+    /**
+     * Start the server on the loopback address.
+     *
+     * @param port Port to listen on (0 to use any free port)
+     * @param threads Number of threads handling requests
+     * @return the port the server is listening on
+     */
+    public int start(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "json5e-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext(RENDER, this::render);
+        server.createContext(STATS, this::stats);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    void render(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "Method not allowed");
+                return;
+            }
+            String path = exchange.getRequestURI().getRawPath();
+            String key = URLDecoder.decode(path.substring(RENDER.length()), StandardCharsets.UTF_8)
+                    .toLowerCase();
+
+            boolean[] rendered = { false };
+            byte[] content;
+            try {
+                content = cache.get(key, k -> {
+                    rendered[0] = true;
+                    return render(k);
+                });
+            } catch (RuntimeException e) {
+                tui.errorf(e, "Unable to render %s", key);
+                send(exchange, 500, "text/plain", "Unable to render " + key + ": " + e.getMessage());
+                return;
+            }
+            if (content == null) {
+                send(exchange, 404, "text/plain", "Unknown or excluded entry: " + key);
+                return;
+            }
+            exchange.getResponseHeaders().set("X-Cache", rendered[0] ? "miss" : "hit");
+            send(exchange, 200, "text/markdown; charset=utf-8", content);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** @return rendered markdown for the entry (not the subclasses of a class), or null */
+    byte[] render(String key) {
+        long start = System.nanoTime();
+        List<QuteSource> sources = converter.convert(key);
+        QuteSource qs = sources.stream()
+                .filter(s -> key.equals(s.key()))
+                .findFirst()
+                .orElse(sources.isEmpty() ? null : sources.get(0));
+        if (qs == null) {
+            return null;
+        }
+        byte[] content = writer.render(qs).getBytes(StandardCharsets.UTF_8);
+        latencies.add(System.nanoTime() - start);
+        return content;
+    }
+
+    void stats(HttpExchange exchange) throws IOException {
+        try {
+            send(exchange, 200, "application/json",
+                    Json5eTui.MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(stats()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    ObjectNode stats() {
+        ObjectNode node = Json5eTui.MAPPER.createObjectNode();
+        ObjectNode cacheNode = node.putObject("cache");
+        cacheNode.put("entries", cache.size());
+        cacheNode.put("bytes", cache.bytes());
+        cacheNode.put("hits", cache.hits());
+        cacheNode.put("misses", cache.misses());
+        cacheNode.put("evictions", cache.evictions());
+        cacheNode.put("hitRate", cache.hitRate());
+
+        long[] samples = latencies.samples();
+        ObjectNode renderNode = node.putObject("render");
+        renderNode.put("count", latencies.count());
+        renderNode.put("p50Ms", Latencies.percentile(samples, 50) / 1e6);
+        renderNode.put("p90Ms", Latencies.percentile(samples, 90) / 1e6);
+        renderNode.put("p99Ms", Latencies.percentile(samples, 99) / 1e6);
+        renderNode.put("maxMs", Latencies.percentile(samples, 100) / 1e6);
+        return node;
+    }
+
+    void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        send(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /** Most recent render latencies (nanoseconds) */
+    static class Latencies {
+        final long[] ring;
+        long count;
+
+        Latencies(int size) {
+            ring = new long[size];
+        }
+
+        synchronized void add(long nanos) {
+            ring[(int) (count % ring.length)] = nanos;
+            count++;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        /** @return sorted copy of the most recent latencies */
+        synchronized long[] samples() {
+            long[] samples = Arrays.copyOf(ring, (int) Math.min(count, ring.length));
+            Arrays.sort(samples);
+            return samples;
+        }
+
+        /** @return nearest-rank percentile of sorted samples (0 if there are none) */
+        static long percentile(long[] sorted, int p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package dev.ebullient.json5e;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import javax.inject.Inject;
+
+import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.io.MarkdownWriter;
+import dev.ebullient.json5e.io.TemplatePaths;
+import dev.ebullient.json5e.io.Templates;
+import dev.ebullient.json5e.tools5e.JsonIndex;
+import picocli.CommandLine;
+import picocli.CommandLine.ArgGroup;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ExitCode;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
+
+@Command(name = "serve", header = "Render entries on request (HTTP, on localhost)", description = {
+        "%nRead and prepare the index once, then render entries on request:",
+        "  GET /render/{index-key}   markdown for the entry (e.g. /render/spell|fireball|phb)",
+        "  GET /stats                cache hit rate and render latency percentiles (json)",
+        "The server only accepts connections from the local host.",
+}, mixinStandardHelpOptions = true)
+public class ServeCommand implements Callable<Integer> {
+
+    List<Path> input;
+
+    @Inject
+    Templates tpl;
+
+    @Inject
+    Json5eTui tui;
+
+    @Spec
+    private CommandSpec spec;
+
+    @Option(names = "-s", description = "Source Books%n  Comma-separated list or multiple declarations (PHB,DMG,...); use ALL for all sources")
+    List<String> source = Collections.emptyList();
+
+    @Option(names = "--port", description = "Port to listen on (default: ${DEFAULT-VALUE}); use 0 for any free port")
+    int port = 8015;
+
+    @Option(names = "--cache-size", paramLabel = "MB", description = "Maximum size of rendered markdown kept in memory (default: ${DEFAULT-VALUE} MB)")
+    int cacheSize = 64;
+
+    @Option(names = "--threads", description = "Number of threads used to read files and answer requests")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    @ArgGroup(exclusive = false)
+    TemplatePaths paths = new TemplatePaths();
+
+    @Parameters(description = "Source file(s)")
+    void setInput(List<File> inputFile) {
+        input = new ArrayList<>(inputFile.size());
+        for (File f : inputFile) {
+            input.add(f.toPath().toAbsolutePath().normalize());
+        }
+    }
+
+    @Override
+    public Integer call() {
+        if (input == null || input.isEmpty()) {
+            throw new CommandLine.MissingParameterException(spec.commandLine(), spec.args(),
+                    "Must specify an input file");
+        }
+        tui.setThreads(threads);
+        if (!tpl.setCustomTemplates(paths)) {
+            return ExitCode.USAGE;
+        }
+
+        JsonIndex index = new JsonIndex(Json5eConvertCli.sources(source), tui);
+        boolean allOk = Json5eConvertCli.readAll(tui, input, index);
+        tui.outPrintln("✅ finished reading 5etools data.");
+        index.prepare();
+
+        RenderServer server = new RenderServer(index, new MarkdownWriter(null, tpl, tui), cacheSize * 1024L * 1024L);
+        try {
+            int listening = server.start(port, threads);
+            tui.outPrintf("💡 Rendering entries at http://localhost:%d/render/{index-key} (Ctrl-C to stop)%n", listening);
+            new CountDownLatch(1).await();
+        } catch (IOException e) {
+            tui.error(e, "  Exception: " + e.getMessage());
+            return ExitCode.SOFTWARE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.stop();
+        }
+        return allOk ? ExitCode.OK : ExitCode.SOFTWARE;
+    }
+}
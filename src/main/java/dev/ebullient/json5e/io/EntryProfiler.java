@@ -0,0 +1,145 @@
+package dev.ebullient.json5e.io;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Time and allocated bytes for each entry (by index key), for each stage
+ * (convert, render, write), to find the entries that are the most expensive to process.
+ * <p>
+ * Allocated bytes are counted per thread by the JVM (if supported): each stage of an
+ * entry is measured on the thread that runs it.
+ */
+public class EntryProfiler {
+    public static final String CONVERT = RunMetrics.CONVERT;
+    public static final String RENDER = RunMetrics.RENDER;
+    public static final String WRITE = RunMetrics.WRITE;
+
+    public static final EntryProfiler DISABLED = new EntryProfiler(0);
+
+    final int top;
+    final com.sun.management.ThreadMXBean allocationBean;
+    final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param top Number of entries to report: profiling is disabled if this is 0 or less
+     */
+    public EntryProfiler(int top) {
+        this.top = top;
+        this.allocationBean = top > 0 ? allocationBean() : null;
+    }
+
+    static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                }
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    public boolean isEnabled() {
+        return top > 0;
+    }
+
+    /**
+     * Start measuring a stage of an entry (on this thread).
+     *
+     * @param key Index key of the entry
+     * @param stage Stage: convert, render, write
+     * @return sample to stop when the stage is done
+     */
+    public Sample start(String key, String stage) {
+        return top > 0 && key != null ? new Sample(this, key, stage) : Sample.NONE;
+    }
+
+    long allocatedBytes() {
+        return allocationBean == null ? 0 : allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static class Sample {
+        static final Sample NONE = new Sample(null, null, null);
+
+        final EntryProfiler profiler;
+        final String key;
+        final String stage;
+        final long start;
+        final long allocated;
+
+        Sample(EntryProfiler profiler, String key, String stage) {
+            this.profiler = profiler;
+            this.key = key;
+            this.stage = stage;
+            this.allocated = profiler == null ? 0 : profiler.allocatedBytes();
+            this.start = profiler == null ? 0 : System.nanoTime();
+        }
+
+        public void stop() {
+            if (profiler == null) {
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            long bytes = profiler.allocatedBytes() - allocated;
+            profiler.entries.computeIfAbsent(key, k -> new Entry())
+                    .add(stage, nanos, bytes);
+        }
+    }
+
+    static class Entry {
+        final Map<String, LongAdder[]> stages = new ConcurrentHashMap<>();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        void add(String stage, long n, long b) {
+            LongAdder[] s = stages.computeIfAbsent(stage, k -> new LongAdder[] { new LongAdder(), new LongAdder() });
+            s[0].add(n);
+            s[1].add(b);
+            nanos.add(n);
+            bytes.add(b);
+        }
+    }
+
+    /** @return keys of the most expensive entries (by time), most expensive first */
+    List<String> worst() {
+        return entries.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Entry> e) -> e.getValue().nanos.sum()).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(top)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Print the most expensive entries, with time and allocated bytes for each stage.
+     *
+     * @param tui Json5eTui for output
+     */
+    public void report(Json5eTui tui) {
+        if (top <= 0) {
+            return;
+        }
+        List<String> keys = worst();
+        tui.outPrintf("%n%d most expensive entries (of %d)%s:%n", keys.size(), entries.size(),
+                allocationBean == null ? ", allocation is not measured" : "");
+        tui.outPrintf("%10s %12s  %s%n", "ms", "alloc KB", "key / stage");
+        for (String key : keys) {
+            Entry e = entries.get(key);
+            tui.outPrintf("%10.1f %12d  %s%n", e.nanos.sum() / 1e6, e.bytes.sum() / 1024, key);
+            new TreeMap<>(e.stages).forEach((stage, s) -> tui.outPrintf("%10.1f %12d    %s%n",
+                    s[0].sum() / 1e6, s[1].sum() / 1024, stage));
+        }
+        tui.outPrintln("");
+    }
+}
@@ -0,0 +1,111 @@
+package dev.ebullient.json5e.io;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for conversion, copies, rendering, and writing files.
+ * <p>
+ * Record a run with <code>java -XX:StartFlightRecording=filename=run.jfr -jar ...</code>, then
+ * use <code>jfr print --events dev.ebullient.json5e.Convert run.jfr</code> (or JMC) to find
+ * the entries that take the most time.
+ * <p>
+ * Use the factory methods (<code>FlightEvents.convert()</code>, ...) to start an event:
+ * they return null (and no event is created) unless the event is enabled in a recording.
+ * Set fields and commit only if <code>shouldCommit()</code> is true.
+ */
+public class FlightEvents {
+    static final String CATEGORY = "json5e";
+
+    static final EventType CONVERT = EventType.getEventType(Convert.class);
+    static final EventType COPY = EventType.getEventType(Copy.class);
+    static final EventType RENDER = EventType.getEventType(Render.class);
+    static final EventType WRITE = EventType.getEventType(Write.class);
+
+    private FlightEvents() {
+    }
+
+    /** @return started event, or null if the event is not enabled */
+    public static Convert convert() {
+        return CONVERT.isEnabled() ? begin(new Convert()) : null;
+    }
+
+    /** @return started event, or null if the event is not enabled */
+    public static Copy copy() {
+        return COPY.isEnabled() ? begin(new Copy()) : null;
+    }
+
+    /** @return started event, or null if the event is not enabled */
+    public static Render render() {
+        return RENDER.isEnabled() ? begin(new Render()) : null;
+    }
+
+    /** @return started event, or null if the event is not enabled */
+    public static Write write() {
+        return WRITE.isEnabled() ? begin(new Write()) : null;
+    }
+
+    static <T extends Event> T begin(T event) {
+        event.begin();
+        return event;
+    }
+
+    @Name("dev.ebullient.json5e.Convert")
+    @Label("Convert Entry")
+    @Description("Conversion of an index entry into a Qute resource (Json2QuteX.build)")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Convert extends Event {
+        @Label("Key")
+        public String key;
+
+        @Label("Type")
+        public String type;
+    }
+
+    @Name("dev.ebullient.json5e.Copy")
+    @Label("Merge Copy")
+    @Description("Merge of an entry with the entry it copies (_copy and _mod)")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Copy extends Event {
+        @Label("Origin Key")
+        public String originKey;
+
+        @Label("Mods")
+        @Description("Number of modifications applied")
+        public int mods;
+    }
+
+    @Name("dev.ebullient.json5e.Render")
+    @Label("Render Template")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Render extends Event {
+        @Label("Template")
+        public String templateId;
+
+        @Label("Size")
+        @Description("Number of characters rendered")
+        public int size;
+    }
+
+    @Name("dev.ebullient.json5e.Write")
+    @Label("Write File")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Write extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+}
@@ -0,0 +1,212 @@
+package dev.ebullient.json5e.io;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watch input files and directories for changes.
+ * <p>
+ * Directories are watched with all of their subdirectories (including those created later).
+ * For a file, the directory containing the file is watched, and only changes to that file are reported.
+ * <p>
+ * Changes are collected until none have been seen for a while (debounce): saving a file in an editor,
+ * or copying several files, is reported as one set of changes.
+ */
+public class InputWatcher implements Closeable {
+    final Json5eTui tui;
+    final long debounceMillis;
+    final EventSource source;
+
+    final Set<Path> watched = new HashSet<>();
+    final Set<Path> trees = new HashSet<>();
+    final Set<Path> files = new HashSet<>();
+
+    /**
+     * @param tui Json5eTui for output
+     * @param debounceMillis Time without changes before changes are reported
+     */
+    public InputWatcher(Json5eTui tui, long debounceMillis) throws IOException {
+        this(tui, debounceMillis, new WatchServiceSource());
+    }
+
+    InputWatcher(Json5eTui tui, long debounceMillis, EventSource source) {
+        this.tui = tui;
+        this.debounceMillis = debounceMillis;
+        this.source = source;
+    }
+
+    /**
+     * Watch a file, or a directory and all of its subdirectories.
+     *
+     * @param path File or directory
+     */
+    public void watch(Path path) throws IOException {
+        Path p = path.toAbsolutePath().normalize();
+        if (p.toFile().isDirectory()) {
+            trees.add(p);
+            registerTree(p);
+        } else {
+            files.add(p);
+            register(p.getParent());
+        }
+    }
+
+    /**
+     * Wait for changes.
+     * <p>
+     * A directory may be reported (rather than the files it contains) if too many
+     * changes were made at once: all files in that directory should be read again.
+     *
+     * @return changed, created, or deleted files (absolute paths), sorted
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Set<Path> take() throws InterruptedException {
+        Set<Path> changed = new TreeSet<>();
+        while (changed.isEmpty()) {
+            Events events = source.poll(-1);
+            while (events != null) {
+                collect(events, changed);
+                events = source.poll(debounceMillis);
+            }
+        }
+        tui.debugf("Changed: %s", changed);
+        return changed;
+    }
+
+    void collect(Events events, Set<Path> changed) {
+        Path dir = events.dir;
+        boolean inTree = trees.stream().anyMatch(dir::startsWith);
+        for (WatchEvent<?> event : events.events) {
+            if (event.kind() == OVERFLOW) {
+                if (inTree) {
+                    changed.add(dir);
+                } else {
+                    files.stream().filter(f -> dir.equals(f.getParent())).forEach(changed::add);
+                }
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (inTree) {
+                if (event.kind() == ENTRY_CREATE && child.toFile().isDirectory()) {
+                    changed.addAll(registerTree(child));
+                }
+                changed.add(child);
+            } else if (files.contains(child)) {
+                changed.add(child);
+            }
+        }
+    }
+
+    /** @return files found in the directory tree */
+    Set<Path> registerTree(Path dir) {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            Set<Path> found = new HashSet<>();
+            for (Path p : stream.collect(Collectors.toList())) {
+                if (p.toFile().isDirectory()) {
+                    register(p);
+                } else {
+                    found.add(p);
+                }
+            }
+            return found;
+        } catch (IOException e) {
+            tui.errorf(e, "Unable to watch %s", dir);
+            return Set.of();
+        }
+    }
+
+    void register(Path dir) throws IOException {
+        if (watched.add(dir)) {
+            source.register(dir);
+            tui.debugf("Watching %s", dir);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /** Events for one watched directory */
+    static class Events {
+        final Path dir;
+        final List<WatchEvent<?>> events;
+
+        Events(Path dir, List<WatchEvent<?>> events) {
+            this.dir = dir;
+            this.events = events;
+        }
+    }
+
+    /** Source of events for watched directories (the file system, or a test) */
+    interface EventSource extends Closeable {
+        void register(Path dir) throws IOException;
+
+        /**
+         * @param timeoutMillis Time to wait for events, or -1 to wait until there are some
+         * @return events for a directory, or null if there were none in time
+         */
+        Events poll(long timeoutMillis) throws InterruptedException;
+    }
+
+    static class WatchServiceSource implements EventSource {
+        final WatchService service;
+        final Map<WatchKey, Path> keys = new HashMap<>();
+
+        WatchServiceSource() throws IOException {
+            this.service = FileSystems.getDefault().newWatchService();
+        }
+
+        @Override
+        public void register(Path dir) throws IOException {
+            keys.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+        }
+
+        @Override
+        public Events poll(long timeoutMillis) throws InterruptedException {
+            while (true) {
+                WatchKey key = timeoutMillis < 0
+                        ? service.take()
+                        : service.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    return null;
+                }
+                Path dir = keys.get(key);
+                if (dir == null) {
+                    key.cancel();
+                    continue;
+                }
+                List<WatchEvent<?>> events = key.pollEvents();
+                if (!key.reset()) {
+                    keys.remove(key);
+                }
+                return new Events(dir, events);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            service.close();
+        }
+    }
+}
@@ -2,16 +2,29 @@ package dev.ebullient.json5e.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -51,30 +64,27 @@ public class Json5eTui {
         return s;
     }
 
-    private static Yaml plainYaml;
+    // Yaml instances are not thread-safe: keep one per thread
+    private static final ThreadLocal<Yaml> plainYaml = ThreadLocal.withInitial(() -> {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultScalarStyle(ScalarStyle.PLAIN);
+        options.setPrettyFlow(true);
+        return new Yaml(options);
+    });
 
     public static Yaml plainYaml() {
-        Yaml y = plainYaml;
-        if (y == null) {
-            DumperOptions options = new DumperOptions();
-            options.setDefaultScalarStyle(ScalarStyle.PLAIN);
-            options.setPrettyFlow(true);
-            y = plainYaml = new Yaml(options);
-        }
-        return y;
+        return plainYaml.get();
     }
 
-    private static Yaml quotedYaml;
+    private static final ThreadLocal<Yaml> quotedYaml = ThreadLocal.withInitial(() -> {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultScalarStyle(ScalarStyle.DOUBLE_QUOTED);
+        options.setPrettyFlow(true);
+        return new Yaml(options);
+    });
 
     public static Yaml quotedYaml() {
-        Yaml y = quotedYaml;
-        if (y == null) {
-            DumperOptions options = new DumperOptions();
-            options.setDefaultScalarStyle(ScalarStyle.DOUBLE_QUOTED);
-            options.setPrettyFlow(true);
-            y = quotedYaml = new Yaml(options);
-        }
-        return y;
+        return quotedYaml.get();
     }
 
     static final boolean picocliDebugEnabled = "DEBUG".equalsIgnoreCase(System.getProperty("picocli.trace"));
@@ -92,6 +102,29 @@ public class Json5eTui {
     private boolean verbose;
     private Path output = Paths.get("");
     private final Set<Path> inputRoot = new TreeSet<>();
+    private final Map<Path, Future<JsonNode>> pending = new HashMap<>();
+
+    // 5etools data files and directories, in the order they are read
+    static final List<String> DATA_FILES = List.of(
+            "adventures.json", "books.json", "names.json", "variantrules.json",
+            "actions.json", "conditionsdiseases.json", "skills.json", "senses.json", "loot.json",
+            "bestiary", "bestiary/traits.json", "bestiary/legendarygroups.json",
+            "backgrounds.json", "fluff-backgrounds.json",
+            "class",
+            "deities.json",
+            "feats.json", "optionalfeatures.json",
+            "items.json", "items-base.json", "fluff-items.json", "magicvariants.json",
+            "races.json", "fluff-races.json",
+            "spells");
+    private int threads = 1;
+    // Worker threads shared by parallel calls: per-thread state (e.g. NoteWriter buffers) is reused
+    private ThreadPoolExecutor workers = null;
+    private static final ThreadLocal<Boolean> isWorker = ThreadLocal.withInitial(() -> false);
+    private OutputManifest manifest = null;
+    private RunMetrics metrics = RunMetrics.DISABLED;
+    private EntryProfiler profiler = EntryProfiler.DISABLED;
+    private boolean hashInputs = false;
+    private final Map<Path, String> inputHashes = new ConcurrentHashMap<>();
 
     public Json5eTui() {
         this.ansi = Help.Ansi.OFF;
@@ -119,6 +152,80 @@ public class Json5eTui {
         this.output = output;
     }
 
+    public synchronized void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        // Resize the pool in place: callers may still be submitting tasks to it
+        if (workers != null && workers.getMaximumPoolSize() > this.threads) {
+            workers.setCorePoolSize(this.threads);
+            workers.setMaximumPoolSize(this.threads);
+        } else if (workers != null) {
+            workers.setMaximumPoolSize(this.threads);
+            workers.setCorePoolSize(this.threads);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param manifest Manifest used to skip writing unchanged files (incremental mode),
+     *        or null to always write files
+     */
+    public void setManifest(OutputManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    public OutputManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @param metrics Metrics for this run
+     */
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics == null ? RunMetrics.DISABLED : metrics;
+    }
+
+    /** @return metrics for this run (disabled unless --metrics was specified) */
+    public RunMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @param profiler Profiler for entries in this run
+     */
+    public void setProfiler(EntryProfiler profiler) {
+        this.profiler = profiler == null ? EntryProfiler.DISABLED : profiler;
+    }
+
+    /** @return profiler for entries (disabled unless --profile-entries was specified) */
+    public EntryProfiler profiler() {
+        return profiler;
+    }
+
+    /**
+     * @param hashInputs if true, remember the hash of each input file as it is read
+     * @see #getInputHashes()
+     */
+    public void setHashInputs(boolean hashInputs) {
+        this.hashInputs = hashInputs;
+    }
+
+    /** @return hash of each input file that has been read (if enabled, or in incremental mode) */
+    public Map<Path, String> getInputHashes() {
+        return inputHashes;
+    }
+
+    /** @return directories used to find images referenced by input files */
+    public Set<Path> getInputRoots() {
+        return inputRoot;
+    }
+
+    public void addInputRoot(Path root) {
+        inputRoot.add(root);
+    }
+
     public void close() {
         out.flush();
         err.flush();
@@ -212,7 +319,7 @@ public class Json5eTui {
     }
 
     public String slugify(String s) {
-        return slugifier().slugify(s);
+        return Slugs.slugify(s);
     }
 
     public void copyImages(List<ImageRef> images) {
@@ -233,20 +340,99 @@ public class Json5eTui {
             // target path must be pre-resolved to compendium or rules root
             // so just make sure the image dir exists
             targePath.getParent().toFile().mkdirs();
+            if (manifest != null && isCopied(sourcePath, targePath)) {
+                continue;
+            }
+            RunMetrics.Timer timer = metrics.start(RunMetrics.IMAGES);
             try {
                 Files.copy(sourcePath, targePath, StandardCopyOption.REPLACE_EXISTING);
+                timer.stop(1, targePath.toFile().length());
             } catch (IOException e) {
+                timer.stop(0, 0);
                 errorf(e, "Unable to copy image from %s to %s", image.sourcePath, image.targetPath);
             }
         }
     }
 
+    // incremental: the image was copied before, and has not been modified since
+    boolean isCopied(Path sourcePath, Path targetPath) {
+        File source = sourcePath.toFile();
+        File target = targetPath.toFile();
+        return target.exists()
+                && target.length() == source.length()
+                && target.lastModified() >= source.lastModified();
+    }
+
+    /**
+     * Apply the function to each element using the configured number of threads.
+     * Results are returned in the order of the original list.
+     * Runtime exceptions thrown by the function are rethrown on the calling thread.
+     * <p>
+     * Worker threads are kept (until idle for a while) and shared by all calls;
+     * a call made from a worker thread applies the function on that thread.
+     */
+    public <T, R> List<R> parallel(List<T> elements, Function<T, R> function) {
+        int n = Math.min(threads, elements.size());
+        if (n <= 1 || isWorker.get()) {
+            List<R> result = new ArrayList<>(elements.size());
+            elements.forEach(e -> result.add(function.apply(e)));
+            return result;
+        }
+        ExecutorService executor = workers();
+        List<Future<R>> futures = new ArrayList<>(elements.size());
+        try {
+            elements.forEach(e -> futures.add(executor.submit(() -> function.apply(e))));
+
+            List<R> result = new ArrayList<>(elements.size());
+            for (Future<R> f : futures) {
+                result.add(f.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for workers", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private synchronized ExecutorService workers() {
+        if (workers == null) {
+            workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread t = new Thread(() -> {
+                            isWorker.set(true);
+                            r.run();
+                        }, "json5e-worker");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            workers.allowCoreThreadTimeOut(true);
+        }
+        return workers;
+    }
+
     public void readFile(Path p, BiConsumer<String, JsonNode> callback) throws IOException {
         inputRoot.add(p.getParent().toAbsolutePath());
 
         File f = p.toFile();
-        JsonNode node = MAPPER.readTree(f);
-        callback.accept(f.getName(), node);
+        JsonNode node = parse(p);
+        RunMetrics.Timer timer = metrics.start(RunMetrics.IMPORT);
+        long count = 0;
+        try {
+            callback.accept(f.getName(), node);
+            count = 1;
+        } finally {
+            timer.stop(count, 0);
+        }
         verbosef("🔖 Finished reading %s", p);
     }
 
@@ -265,7 +451,7 @@ public class Json5eTui {
                     } catch (Exception e) {
                         errorf(e, "Error reading directory %s", p.toString());
                     }
-                } else if ((name.startsWith("fluff") || name.startsWith(basename)) && name.endsWith(".json")) {
+                } else if (isDataFile(basename, name)) {
                     try {
                         readFile(p, callback);
                     } catch (Exception e) {
@@ -279,31 +465,173 @@ public class Json5eTui {
     }
 
     public void read5eTools(Path dir, BiConsumer<String, JsonNode> callback) throws IOException {
-        List<String> inputs = List.of(
-                "adventures.json", "books.json", "names.json", "variantrules.json",
-                "actions.json", "conditionsdiseases.json", "skills.json", "senses.json", "loot.json",
-                "bestiary", "bestiary/traits.json", "bestiary/legendarygroups.json",
-                "backgrounds.json", "fluff-backgrounds.json",
-                "class",
-                "deities.json",
-                "feats.json", "optionalfeatures.json",
-                "items.json", "items-base.json", "fluff-items.json", "magicvariants.json",
-                "races.json", "fluff-races.json",
-                "spells");
-
         if (!dir.resolve("adventures.json").toFile().exists()) {
             debugf("Unable to find 5eTools data: %s", dir.toString());
             return;
         }
         inputRoot.add(dir.getParent());
 
-        for (String input : inputs) {
+        ExecutorService executor = startParsing(list5eTools(dir));
+        try {
+            for (String input : DATA_FILES) {
+                Path p = dir.resolve(input);
+                if (p.toFile().isFile()) {
+                    readFile(p, callback);
+                } else {
+                    readDirectory(p, callback);
+                }
+            }
+        } finally {
+            stopParsing(executor);
+        }
+    }
+
+    /**
+     * Read a list of files (see {@link #listInputs(Path)}). Files are parsed ahead of the
+     * callback (using the configured number of threads), and handed to it in order.
+     *
+     * @param files Files to read
+     * @param callback Called with the path and parsed tree of each file
+     */
+    public void readFiles(List<Path> files, BiConsumer<Path, JsonNode> callback) {
+        ExecutorService executor = startParsing(files);
+        try {
+            for (Path p : files) {
+                try {
+                    readFile(p, (name, node) -> callback.accept(p, node));
+                } catch (Exception e) {
+                    errorf(e, "Error parsing file %s", p.toString());
+                }
+            }
+        } finally {
+            stopParsing(executor);
+        }
+    }
+
+    /**
+     * List the files that would be read from an input path (as given on the command line),
+     * in the order they would be read.
+     *
+     * @param input File or 5etools data directory
+     * @return files read from the input path
+     */
+    public List<Path> listInputs(Path input) {
+        if (input.toFile().isDirectory()) {
+            return input.resolve("adventures.json").toFile().exists()
+                    ? list5eTools(input)
+                    : List.of();
+        }
+        return List.of(input);
+    }
+
+    List<Path> list5eTools(Path dir) {
+        List<Path> files = new ArrayList<>();
+        for (String input : DATA_FILES) {
             Path p = dir.resolve(input);
             if (p.toFile().isFile()) {
-                readFile(p, callback);
+                files.add(p);
             } else {
-                readDirectory(p, callback);
+                listDirectory(p, files);
+            }
+        }
+        return files;
+    }
+
+    boolean isDataFile(String basename, String name) {
+        return (name.startsWith("fluff") || name.startsWith(basename)) && name.endsWith(".json");
+    }
+
+    void listDirectory(Path dir, List<Path> files) {
+        String basename = dir.getFileName().toString();
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.forEach(p -> {
+                if (p.toFile().isDirectory()) {
+                    listDirectory(p, files);
+                } else if (isDataFile(basename, p.getFileName().toString())) {
+                    files.add(p);
+                }
+            });
+        } catch (IOException e) {
+            // reported when the directory is read
+        }
+    }
+
+    /**
+     * Parse files on a pool of worker threads ahead of the reader.
+     * Parsed trees are handed to the callback by {@link #readFile} on the calling thread,
+     * in the original file order, so index collisions resolve exactly as they do when
+     * reading sequentially.
+     */
+    ExecutorService startParsing(List<Path> files) {
+        int n = Math.min(threads, files.size());
+        if (n <= 1) {
+            return null;
+        }
+        ExecutorService executor = newExecutor(n, "json5e-reader");
+        for (Path p : files) {
+            pending.put(p, executor.submit(() -> readTree(p)));
+        }
+        debugf("Parsing %d files using %d threads", files.size(), n);
+        return executor;
+    }
+
+    void stopParsing(ExecutorService executor) {
+        if (executor != null) {
+            pending.values().forEach(f -> f.cancel(true));
+            pending.clear();
+            executor.shutdownNow();
+        }
+    }
+
+    private ExecutorService newExecutor(int n, String name) {
+        return Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    JsonNode parse(Path p) throws IOException {
+        Future<JsonNode> future = pending.remove(p);
+        if (future == null) {
+            return readTree(p);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + p);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to read " + p, e.getCause());
+        }
+    }
+
+    JsonNode readTree(Path p) throws IOException {
+        RunMetrics.Timer timer = metrics.start(RunMetrics.READ);
+        long count = 0;
+        long bytes = 0;
+        try {
+            if (manifest == null && !hashInputs) {
+                JsonNode node = MAPPER.readTree(p.toFile());
+                count = 1;
+                bytes = p.toFile().length();
+                return node;
+            }
+            byte[] content = Files.readAllBytes(p);
+            String hash = OutputManifest.hash(content);
+            inputHashes.put(p.toAbsolutePath().normalize(), hash);
+            if (manifest != null) {
+                manifest.inputRead(p, hash);
             }
+            JsonNode node = MAPPER.readTree(content);
+            count = 1;
+            bytes = content.length;
+            return node;
+        } finally {
+            timer.stop(count, bytes);
         }
     }
 }
@@ -1,32 +1,30 @@
 package dev.ebullient.json5e.io;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import dev.ebullient.json5e.qute.QuteBackground;
-import dev.ebullient.json5e.qute.QuteClass;
-import dev.ebullient.json5e.qute.QuteDeity;
-import dev.ebullient.json5e.qute.QuteFeat;
-import dev.ebullient.json5e.qute.QuteItem;
-import dev.ebullient.json5e.qute.QuteMonster;
 import dev.ebullient.json5e.qute.QuteName;
 import dev.ebullient.json5e.qute.QuteNote;
-import dev.ebullient.json5e.qute.QuteRace;
 import dev.ebullient.json5e.qute.QuteSource;
-import dev.ebullient.json5e.qute.QuteSpell;
-import dev.ebullient.json5e.qute.QuteSubclass;
+import dev.ebullient.json5e.tools5e.IndexType;
 import io.quarkus.qute.TemplateData;
 
 public class MarkdownWriter {
@@ -53,7 +51,7 @@ public class MarkdownWriter {
         }
 
         // Counts and sorted lists (to write index)
-        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Integer> counts = new ConcurrentHashMap<>();
         Set<FileMap> fileMappings = new TreeSet<>(fileSort);
 
         // Find duplicates
@@ -66,96 +64,156 @@ public class MarkdownWriter {
             pathMap.computeIfAbsent(fileMap, k -> new ArrayList<>()).add(qs);
         }
 
-        for (Map.Entry<FileMap, List<T>> pathEntry : pathMap.entrySet()) {
+        List<Map.Entry<FileMap, List<T>>> pathEntries = new ArrayList<>(pathMap.entrySet());
+        for (Map.Entry<FileMap, List<T>> pathEntry : pathEntries) {
             if (pathEntry.getValue().size() > 1) {
                 tui.warnf("Conflict: several entries would write to the same file:\n  %s",
                         pathEntry.getValue().stream().map(QuteSource::key)
                                 .collect(Collectors.joining("\n  ")));
             }
-            fileMappings.add(doWrite(pathEntry.getKey(), pathEntry.getValue().get(0), counts));
         }
 
+        // Render and write files concurrently, then write the (sorted) index files
+        fileMappings.addAll(tui.parallel(pathEntries,
+                pathEntry -> doWrite(pathEntry.getKey(), pathEntry.getValue().get(0), counts)));
+
+        writeIndexes(fileMappings);
+        counts.forEach((k, v) -> tui.outPrintf("✅ Wrote %s files to %s.%n", v, k));
+    }
+
+    /**
+     * Start writing files one at a time, as they are converted.
+     *
+     * @param compendiumPath Root of the compendium (relative to the output directory)
+     * @return writer that will keep only a compact record of each written file
+     * @see StreamingWriter
+     */
+    public StreamingWriter streaming(Path compendiumPath) {
+        return new StreamingWriter(compendiumPath);
+    }
+
+    void writeIndexes(Set<FileMap> fileMappings) {
         fileMappings.stream()
                 .collect(Collectors.groupingBy(fm -> fm.dir))
                 .forEach((dir, value) -> {
                     String fileName = dir.getFileName().toString();
                     String title = fileName.substring(0, 1).toUpperCase() + fileName.substring(1);
                     try {
-                        writeFile(new FileMap(title, fileName, dir), templates.renderIndex(title, value));
+                        writeFile(new FileMap(title, fileName, dir), null,
+                                out -> templates.renderIndexTo(title, value, out), false);
                     } catch (IOException ex) {
                         throw new WrappedIOException(ex);
                     }
                 });
+    }
 
-        counts.forEach((k, v) -> tui.outPrintf("✅ Wrote %s files to %s.%n", v, k));
+    /**
+     * Render a converted source with the template for its type.
+     *
+     * @param qs Converted source
+     * @return rendered markdown
+     */
+    public String render(QuteSource qs) {
+        return templates.render(qs);
     }
 
     <T extends QuteSource> FileMap doWrite(FileMap fileMap, T qs, Map<String, Integer> counts) {
-        String type = qs.getClass().getSimpleName();
+        String dir = IndexType.of(qs).outputDir;
+        if (dir == null) {
+            throw new IllegalArgumentException("Unknown file type:" + qs.getClass().getSimpleName());
+        }
 
         try {
-            switch (type) {
-                case "QuteBackground":
-                    writeFile(fileMap, templates.renderBackground((QuteBackground) qs));
-                    counts.compute("backgrounds", (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                case "QuteClass":
-                    writeFile(fileMap, templates.renderClass((QuteClass) qs));
-                    counts.compute(QuteSource.CLASSES_PATH, (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                case "QuteDeity":
-                    writeFile(fileMap, templates.renderDeity((QuteDeity) qs));
-                    counts.compute(QuteSource.DEITIES_PATH, (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                case "QuteFeat":
-                    writeFile(fileMap, templates.renderFeat((QuteFeat) qs));
-                    counts.compute(QuteSource.FEATS_PATH, (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                case "QuteItem":
-                    writeFile(fileMap, templates.renderItem((QuteItem) qs));
-                    counts.compute(QuteSource.ITEMS_PATH, (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                case "QuteMonster":
-                    writeFile(fileMap, templates.renderMonster((QuteMonster) qs));
-                    counts.compute(QuteSource.MONSTERS_BASE_PATH, (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                case "QuteRace":
-                    writeFile(fileMap, templates.renderRace((QuteRace) qs));
-                    counts.compute("races", (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                case "QuteSpell":
-                    writeFile(fileMap, templates.renderSpell((QuteSpell) qs));
-                    counts.compute(QuteSource.SPELLS_PATH, (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                case "QuteSubclass":
-                    writeFile(fileMap, templates.renderSubclass((QuteSubclass) qs));
-                    counts.compute(QuteSource.CLASSES_PATH, (k, v) -> (v == null) ? 1 : v + 1);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unknown file type:" + type);
-            }
+            writeFile(fileMap, qs.key(), out -> templates.renderTo(qs, out), true);
         } catch (IOException e) {
             throw new WrappedIOException(e);
         }
+        counts.compute(dir, (k, v) -> (v == null) ? 1 : v + 1);
         return fileMap;
     }
 
-    void writeFile(FileMap fileMap, String content) throws IOException {
+    void writeFile(FileMap fileMap, String key, Consumer<NoteWriter> render, boolean trim) throws IOException {
         Path targetDir = Paths.get(output.toString(), fileMap.dir.toString());
-        targetDir.toFile().mkdirs();
+        Files.createDirectories(targetDir);
 
         Path target = targetDir.resolve(fileMap.fileName);
-        Files.write(target, content.getBytes(StandardCharsets.UTF_8));
+        write(target, key, render, trim);
+    }
+
+    /**
+     * Render content to the target file, using the buffers of this thread's {@link NoteWriter}:
+     * content is encoded as it is rendered, then written to the file (or, in incremental mode,
+     * compared with the existing file). The file is only opened once rendering is done.
+     * <p>
+     * The render stage includes encoding rendered content; the write stage includes opening,
+     * writing and closing the file, or comparing and writing the collected content.
+     *
+     * @param target File to write
+     * @param key Index key of the rendered entry (profiled), or null
+     * @param render Renders content to the writer
+     * @param trim True if leading and trailing whitespace should be removed
+     */
+    void write(Path target, String key, Consumer<NoteWriter> render, boolean trim) throws IOException {
+        NoteWriter out = NoteWriter.get();
+        // render first: a failed render leaves the existing file untouched
+        render(key, render, out.start(null, trim));
+
+        OutputManifest manifest = tui.getManifest();
+        FlightEvents.Write event = FlightEvents.write();
+        EntryProfiler.Sample sample = tui.profiler().start(key, EntryProfiler.WRITE);
+        RunMetrics.Timer timer = tui.metrics().start(RunMetrics.WRITE);
+        long count = 0;
+        try {
+            if (manifest == null) {
+                ByteBuffer content = ByteBuffer.wrap(out.content(), 0, (int) out.bytes());
+                try (FileChannel channel = FileChannel.open(target,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    while (content.hasRemaining()) {
+                        channel.write(content);
+                    }
+                }
+            } else {
+                manifest.write(target, out.content(), (int) out.bytes());
+            }
+            count = 1;
+        } finally {
+            timer.stop(count, count * out.bytes());
+            sample.stop();
+        }
+        commit(event, target, out);
+    }
+
+    private void render(String key, Consumer<NoteWriter> render, NoteWriter out) {
+        EntryProfiler.Sample sample = tui.profiler().start(key, EntryProfiler.RENDER);
+        RunMetrics.Timer timer = tui.metrics().start(RunMetrics.RENDER);
+        long count = 0;
+        try {
+            render.accept(out);
+            out.finish();
+            count = 1;
+        } finally {
+            timer.stop(count, count * out.bytes());
+            sample.stop();
+        }
+    }
+
+    private void commit(FlightEvents.Write event, Path target, NoteWriter out) {
+        if (event != null && event.shouldCommit()) {
+            event.path = target.toString();
+            event.bytes = out.bytes();
+            event.commit();
+        }
     }
 
     public void writeNotes(Path dir, Collection<QuteNote> notes) {
         Path targetDir = output.resolve(dir);
         targetDir.toFile().mkdirs();
 
-        for (QuteNote n : notes) {
+        tui.parallel(new ArrayList<>(notes), n -> {
             String fileName = tui.slugify(n.getName()) + ".md";
             writeNote(targetDir, fileName, n);
-        }
+            return fileName;
+        });
 
         tui.outPrintf("✅ Wrote %s notes (rules and tables).%n", notes.size());
     }
@@ -164,12 +222,13 @@ public class MarkdownWriter {
         Path rootDir = output.resolve(dir);
         rootDir.toFile().mkdirs();
 
-        notes.forEach((k, v) -> {
-            Path fullPath = rootDir.resolve(k);
+        tui.parallel(new ArrayList<>(notes.entrySet()), e -> {
+            Path fullPath = rootDir.resolve(e.getKey());
             Path targetDir = fullPath.getParent();
             String fileName = fullPath.getFileName().toString();
             targetDir.toFile().mkdirs();
-            writeNote(targetDir, fileName, v);
+            writeNote(targetDir, fileName, e.getValue());
+            return fileName;
         });
 
         tui.outPrintf("✅ Wrote %s notes (rules and tables).%n", notes.size());
@@ -177,9 +236,8 @@ public class MarkdownWriter {
 
     public void writeNote(Path targetDir, String fileName, QuteNote n) {
         Path target = targetDir.resolve(fileName);
-        String content = templates.renderNote(n);
         try {
-            Files.write(target, content.getBytes(StandardCharsets.UTF_8));
+            write(target, null, out -> templates.renderTo(n, out), true);
         } catch (IOException e) {
             throw new WrappedIOException(e);
         }
@@ -191,9 +249,8 @@ public class MarkdownWriter {
 
         names.forEach(n -> {
             Path target = rootDir.resolve("names-" + tui.slugify(n.getName()) + ".md");
-            String content = templates.renderName(n);
             try {
-                Files.write(target, content.getBytes(StandardCharsets.UTF_8));
+                write(target, null, out -> templates.renderTo(n, out), true);
             } catch (IOException e) {
                 throw new WrappedIOException(e);
             }
@@ -201,6 +258,105 @@ public class MarkdownWriter {
         tui.outPrintf("✅ Wrote %s name tables.%n", names.size());
     }
 
+    /**
+     * Writes each converted source immediately, rather than collecting all of them first.
+     * Memory use scales with the number of written files (a {@link FileRecord} each),
+     * not with the size of the rendered content.
+     * <p>
+     * When several sources map to the same file, the one with the lowest order wins
+     * (as it would when writing a list of sources), even if it is written last.
+     */
+    public class StreamingWriter {
+        final Path compendiumPath;
+        final Map<FileMap, FileRecord> written = new ConcurrentHashMap<>();
+        final Map<String, Integer> counts = new ConcurrentHashMap<>();
+
+        StreamingWriter(Path compendiumPath) {
+            this.compendiumPath = compendiumPath;
+        }
+
+        /**
+         * Render and write the source (unless a source with a lower order was written to the same file).
+         *
+         * @param order Position of the source: the lowest order wins when sources are in conflict
+         * @param qs Source to write
+         * @return file the source maps to
+         */
+        public <T extends QuteSource> FileMap write(long order, T qs) {
+            FileMap fileMap = new FileMap(qs.title(),
+                    qs.targetFile(),
+                    compendiumPath.resolve(qs.targetPath()).normalize());
+
+            // only the record is updated in the map: rendering and writing happen outside of it
+            FileRecord record = written.compute(fileMap, (k, r) -> {
+                r = r == null ? new FileRecord(fileMap) : r;
+                r.keys.put(order, qs.key());
+                return r;
+            });
+            // sources in conflict write one at a time; a source with a lower order that arrives later writes again
+            synchronized (record) {
+                if (order == record.keys.firstKey()) {
+                    record.fileMap = doWrite(fileMap, qs, record.counted ? new HashMap<>() : counts);
+                    record.counted = true;
+                }
+            }
+            return fileMap;
+        }
+
+        /**
+         * Keep a file written by a previous (incremental) run: it is listed in the index, but not written.
+         *
+         * @param order Position of the source the file was written for
+         * @param fileMap File to keep
+         * @param key Key of the source the file was written for
+         */
+        public void keep(long order, FileMap fileMap, String key) {
+            written.compute(fileMap, (k, record) -> {
+                if (record == null) {
+                    record = new FileRecord(fileMap);
+                    tui.getManifest().keep(Paths.get(output.toString(), fileMap.dir.toString())
+                            .resolve(fileMap.fileName));
+                }
+                record.keys.put(order, key);
+                return record;
+            });
+        }
+
+        /**
+         * Write the index files, and report conflicts.
+         *
+         * @return keys of all sources that were in conflict with another
+         */
+        public Set<String> finish() {
+            Set<String> conflicts = new HashSet<>();
+            Set<FileMap> fileMappings = new TreeSet<>(fileSort);
+            written.values().forEach(r -> {
+                if (r.keys.size() > 1) {
+                    tui.warnf("Conflict: several entries would write to the same file:\n  %s",
+                            String.join("\n  ", r.keys.values()));
+                    conflicts.addAll(r.keys.values());
+                }
+                fileMappings.add(r.fileMap);
+            });
+            if (!fileMappings.isEmpty()) {
+                writeIndexes(fileMappings);
+                counts.forEach((k, v) -> tui.outPrintf("✅ Wrote %s files to %s.%n", v, k));
+            }
+            return conflicts;
+        }
+    }
+
+    /** Compact record of a written file: directory, file name and title, and the keys that map to it */
+    static class FileRecord {
+        FileMap fileMap;
+        boolean counted;
+        final ConcurrentSkipListMap<Long, String> keys = new ConcurrentSkipListMap<>();
+
+        FileRecord(FileMap fileMap) {
+            this.fileMap = fileMap;
+        }
+    }
+
     @TemplateData
     public static class FileMap {
 
@@ -210,7 +366,7 @@ public class MarkdownWriter {
 
         public FileMap(String title, String fileName, Path dirName) {
             this.title = title;
-            this.fileName = Json5eTui.slugifier().slugify(fileName) + (fileName.endsWith(".md") ? "" : ".md");
+            this.fileName = Slugs.slugify(fileName) + (fileName.endsWith(".md") ? "" : ".md");
             this.dir = dirName;
         }
 
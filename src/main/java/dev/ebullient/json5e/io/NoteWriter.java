@@ -0,0 +1,201 @@
+package dev.ebullient.json5e.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import dev.ebullient.json5e.io.MarkdownWriter.WrappedIOException;
+
+/**
+ * Encodes rendered content (chunks of text, as produced by a template) as UTF-8,
+ * without building the whole content as a String first.
+ * <p>
+ * Content is collected in a (growing) byte buffer, and then written to a channel
+ * ({@link #flush()}) or compared with the existing file. When writing to a channel, content
+ * larger than {@link #MAX_KEPT} is written as the buffer fills.
+ * Leading and trailing whitespace can be removed as chunks arrive (as <code>String.trim()</code> would).
+ * <p>
+ * Buffers and the encoder are reused: there is one writer per thread.
+ */
+final class NoteWriter implements Consumer<String> {
+    static final int CHARS = 8 * 1024;
+    static final int BYTES = 32 * 1024;
+    // a buffer grown to collect a large note is not kept for the next one
+    static final int MAX_KEPT = 1024 * 1024;
+
+    private static final ThreadLocal<NoteWriter> writers = ThreadLocal.withInitial(NoteWriter::new);
+
+    /** @return the writer for this thread */
+    static NoteWriter get() {
+        return writers.get();
+    }
+
+    final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    final CharBuffer chars = CharBuffer.allocate(CHARS);
+    // whitespace that is only written if more content follows
+    final StringBuilder pending = new StringBuilder();
+    ByteBuffer bytes = ByteBuffer.allocate(BYTES);
+
+    WritableByteChannel channel;
+    boolean trim;
+    boolean started;
+    long length;
+    long written;
+
+    private NoteWriter() {
+    }
+
+    /**
+     * @param channel Channel to write to, or null to collect the content (see {@link #content()})
+     * @param trim True if leading and trailing whitespace should be removed
+     * @return this writer
+     */
+    NoteWriter start(WritableByteChannel channel, boolean trim) {
+        this.channel = channel;
+        this.trim = trim;
+        this.started = !trim;
+        this.length = 0;
+        this.written = 0;
+        this.pending.setLength(0);
+        this.chars.clear();
+        if (bytes.capacity() > MAX_KEPT) {
+            bytes = ByteBuffer.allocate(BYTES);
+        }
+        this.bytes.clear();
+        this.encoder.reset();
+        return this;
+    }
+
+    @Override
+    public void accept(String chunk) {
+        int start = 0;
+        int end = chunk.length();
+        if (!trim) {
+            append(chunk, start, end);
+            return;
+        }
+        if (!started) {
+            while (start < end && chunk.charAt(start) <= ' ') {
+                start++;
+            }
+            if (start == end) {
+                return;
+            }
+            started = true;
+        }
+        int last = end;
+        while (last > start && chunk.charAt(last - 1) <= ' ') {
+            last--;
+        }
+        if (last > start) {
+            if (pending.length() > 0) {
+                append(pending, 0, pending.length());
+                pending.setLength(0);
+            }
+            append(chunk, start, last);
+        }
+        pending.append(chunk, last, end);
+    }
+
+    /**
+     * Encode remaining content (trailing whitespace is dropped when trimming).
+     */
+    void finish() {
+        if (!trim && pending.length() > 0) {
+            append(pending, 0, pending.length());
+        }
+        pending.setLength(0);
+        encode(true);
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+    }
+
+    /**
+     * Write encoded content to the channel (after {@link #finish()}).
+     */
+    void flush() {
+        if (channel != null) {
+            write();
+        }
+    }
+
+    /** @return number of characters written (after trimming) */
+    long length() {
+        return length;
+    }
+
+    /** @return number of bytes encoded (written or collected) */
+    long bytes() {
+        return written + bytes.position();
+    }
+
+    /** @return collected content (when there is no channel): valid up to {@link #bytes()} */
+    byte[] content() {
+        return bytes.array();
+    }
+
+    private void append(CharSequence s, int start, int end) {
+        length += end - start;
+        while (start < end) {
+            int n = Math.min(chars.remaining(), end - start);
+            if (s instanceof String) {
+                chars.put((String) s, start, start + n);
+            } else {
+                for (int i = start; i < start + n; i++) {
+                    chars.put(s.charAt(i));
+                }
+            }
+            start += n;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    private void encode(boolean endOfInput) {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        // keep an unpaired (high) surrogate for the next chunk
+        chars.compact();
+    }
+
+    /** Make room for more encoded bytes (write them to the channel if the buffer is large) */
+    private void drain() {
+        if (channel == null || bytes.capacity() < MAX_KEPT) {
+            ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+            bytes.flip();
+            larger.put(bytes);
+            bytes = larger;
+            return;
+        }
+        write();
+    }
+
+    private void write() {
+        bytes.flip();
+        try {
+            while (bytes.hasRemaining()) {
+                written += channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new WrappedIOException(e);
+        }
+        bytes.clear();
+    }
+}
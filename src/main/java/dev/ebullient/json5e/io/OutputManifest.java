@@ -0,0 +1,277 @@
+package dev.ebullient.json5e.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Content hashes of everything written to (and read for) an output directory.
+ * <p>
+ * The manifest is read from the output directory at the start of an incremental run.
+ * Files with the same content hash as the last run are not written again; the manifest
+ * is then saved with the hashes of this run (inputs, templates and written files).
+ */
+public class OutputManifest {
+    public static final String MANIFEST_FILE = ".json5e-manifest.json";
+    static final int VERSION = 1;
+
+    // MessageDigest instances are not thread-safe: keep one per thread
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    final Path output;
+    final Json5eTui tui;
+
+    final Map<String, String> previousInputs = new TreeMap<>();
+    final Map<String, String> previousTemplates = new TreeMap<>();
+    final Map<String, String> previousFiles = new TreeMap<>();
+
+    final Map<String, String> inputs = new ConcurrentHashMap<>();
+    final Map<String, String> templates = new ConcurrentHashMap<>();
+    final Map<String, String> files = new ConcurrentHashMap<>();
+
+    final LongAdder created = new LongAdder();
+    final LongAdder updated = new LongAdder();
+    final LongAdder unchanged = new LongAdder();
+
+    OutputManifest(Path output, Json5eTui tui) {
+        this.output = output;
+        this.tui = tui;
+    }
+
+    /**
+     * Read the manifest left in the output directory by a previous run.
+     * A missing or unreadable manifest is treated as empty: every file will be (re-)written.
+     *
+     * @param output Output directory
+     * @param tui Json5eTui for messages
+     * @return manifest that will compare written content with the previous run
+     */
+    public static OutputManifest load(Path output, Json5eTui tui) {
+        OutputManifest manifest = new OutputManifest(output, tui);
+        Path file = output.resolve(MANIFEST_FILE);
+        if (file.toFile().exists()) {
+            try {
+                JsonNode node = Json5eTui.MAPPER.readTree(file.toFile());
+                if (node.path("version").asInt() == VERSION) {
+                    readHashes(node.get("inputs"), manifest.previousInputs);
+                    readHashes(node.get("templates"), manifest.previousTemplates);
+                    readHashes(node.get("files"), manifest.previousFiles);
+                } else {
+                    tui.warnf("Ignoring manifest %s: unknown version", file);
+                }
+            } catch (IOException e) {
+                tui.warnf("Ignoring manifest %s: %s", file, e.getMessage());
+            }
+        }
+        tui.debugf("Previous run wrote %d files", manifest.previousFiles.size());
+        return manifest;
+    }
+
+    static void readHashes(JsonNode node, Map<String, String> hashes) {
+        if (node != null) {
+            node.fields().forEachRemaining(e -> hashes.put(e.getKey(), e.getValue().asText()));
+        }
+    }
+
+    /** Remember the hash of an input (json) file */
+    public void inputRead(Path p, String hash) {
+        inputs.put(p.toAbsolutePath().normalize().toString(), hash);
+    }
+
+    /** Remember the hash of a template */
+    public void templateRead(String id, byte[] content) {
+        templates.put(id, hash(content));
+    }
+
+    /** @return hash of a template, or "-" if it was not read */
+    public String templateHash(String id) {
+        return templates.getOrDefault(id, "-");
+    }
+
+    /** @return true if no input file has been added, changed, or removed since the last run */
+    public boolean inputsUnchanged() {
+        return inputs.equals(previousInputs);
+    }
+
+    /** @return true if no template has been added, changed, or removed since the last run */
+    public boolean templatesUnchanged() {
+        return templates.equals(previousTemplates);
+    }
+
+    /**
+     * Write content to the target file, unless the file already holds the same content.
+     *
+     * @param target File to write
+     * @param content Content of the file
+     * @return true if the file was written
+     */
+    public boolean write(Path target, byte[] content) throws IOException {
+        return write(target, content, content.length);
+    }
+
+    /**
+     * Write content to the target file, unless the file already holds the same content.
+     *
+     * @param target File to write
+     * @param content Buffer holding the content of the file
+     * @param length Length of the content (from the start of the buffer)
+     * @return true if the file was written
+     */
+    public boolean write(Path target, byte[] content, int length) throws IOException {
+        String key = relativeKey(target);
+        String hash = hash(content, length);
+        files.put(key, hash);
+
+        String previous = previousFiles.get(key);
+        File file = target.toFile();
+        boolean exists = file.exists();
+        // A changed size catches most edits made to the file since it was written (no need to read it)
+        if (exists && file.length() == length
+                && (hash.equals(previous)
+                        || (previous == null && sameContent(target, content, length)))) {
+            // Nothing to do: content is the same as last written (or as found)
+            unchanged.increment();
+            return false;
+        }
+
+        try (OutputStream out = Files.newOutputStream(target)) {
+            out.write(content, 0, length);
+        }
+        if (exists) {
+            updated.increment();
+        } else {
+            created.increment();
+        }
+        return true;
+    }
+
+    /**
+     * @param target Output file
+     * @param modified Last modified time of the file when it was written
+     * @return true if the file was written by the previous run, and has not been modified since
+     */
+    public boolean isKnown(Path target, long modified) {
+        File file = target.toFile();
+        return previousFiles.containsKey(relativeKey(target))
+                && file.lastModified() == modified;
+    }
+
+    /**
+     * Keep a file written by the previous run (it would be written with the same content).
+     *
+     * @param target Output file
+     */
+    public void keep(Path target) {
+        String key = relativeKey(target);
+        String previous = previousFiles.get(key);
+        if (previous == null) {
+            throw new IllegalStateException("Unable to keep " + target + ": it was not written by the previous run");
+        }
+        files.put(key, previous);
+        unchanged.increment();
+    }
+
+    /**
+     * Files written by the previous run that were not written by this one.
+     * These are not removed, but remain in the manifest until they are deleted.
+     */
+    public Set<String> staleFiles() {
+        Set<String> stale = new TreeSet<>(previousFiles.keySet());
+        stale.removeAll(files.keySet());
+        return stale;
+    }
+
+    public void save() throws IOException {
+        Set<String> stale = staleFiles();
+        Map<String, String> allFiles = new TreeMap<>(files);
+        for (String key : stale) {
+            if (output.resolve(key).toFile().exists()) {
+                allFiles.put(key, previousFiles.get(key));
+            }
+        }
+
+        ObjectNode node = Json5eTui.MAPPER.createObjectNode();
+        node.put("version", VERSION);
+        node.set("inputs", Json5eTui.MAPPER.valueToTree(new TreeMap<>(inputs)));
+        node.set("templates", Json5eTui.MAPPER.valueToTree(new TreeMap<>(templates)));
+        node.set("files", Json5eTui.MAPPER.valueToTree(allFiles));
+        Json5eTui.MAPPER.writerWithDefaultPrettyPrinter()
+                .writeValue(output.resolve(MANIFEST_FILE).toFile(), node);
+    }
+
+    public void report() {
+        Set<String> changedInputs = changed(previousInputs, inputs);
+        Set<String> changedTemplates = changed(previousTemplates, templates);
+        tui.verbosef("Changed input files: %s", changedInputs);
+        tui.verbosef("Changed templates: %s", changedTemplates);
+
+        Set<String> stale = staleFiles();
+        stale.forEach(s -> tui.verbosef("  stale: %s", s));
+
+        tui.outPrintf("✅ %d input files and %d templates changed; %d files created, %d updated, %d unchanged, %d stale.%n",
+                changedInputs.size(), changedTemplates.size(),
+                created.sum(), updated.sum(), unchanged.sum(), stale.size());
+    }
+
+    static Set<String> changed(Map<String, String> previous, Map<String, String> current) {
+        Set<String> changed = new TreeSet<>();
+        current.forEach((k, v) -> {
+            if (!v.equals(previous.get(k))) {
+                changed.add(k);
+            }
+        });
+        previous.keySet().stream()
+                .filter(k -> !current.containsKey(k))
+                .forEach(changed::add);
+        return changed;
+    }
+
+    String relativeKey(Path target) {
+        return output.relativize(target.toAbsolutePath().normalize()).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    static boolean sameContent(Path target, byte[] content, int length) throws IOException {
+        byte[] existing = Files.readAllBytes(target);
+        return Arrays.equals(content, 0, length, existing, 0, existing.length);
+    }
+
+    /** @return SHA-256 hash of the content, as a hex string */
+    public static String hash(byte[] content) {
+        return hash(content, content.length);
+    }
+
+    /** @return SHA-256 hash of the first length bytes of the content, as a hex string */
+    static String hash(byte[] content, int length) {
+        MessageDigest md = sha256.get();
+        md.reset();
+        md.update(content, 0, length);
+        byte[] digest = md.digest();
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
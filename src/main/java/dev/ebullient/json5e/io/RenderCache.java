@@ -0,0 +1,98 @@
+package dev.ebullient.json5e.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Rendered content (UTF-8 bytes) by key, bounded by the total size of the content.
+ * <p>
+ * When the cache is full, the least recently used entries are removed.
+ * Content larger than the cache is rendered, but not kept.
+ * <p>
+ * Content is rendered outside of the lock: two threads asking for the same missing key
+ * may both render it.
+ */
+public class RenderCache {
+    final long maxBytes;
+    final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    long bytes;
+    long hits;
+    long misses;
+    long evictions;
+
+    /**
+     * @param maxBytes Maximum total size of cached content
+     */
+    public RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param key Key of the content
+     * @param render Renders the content if it is not cached (may return null: nothing is cached)
+     * @return cached or rendered content, or null
+     */
+    public byte[] get(String key, Function<String, byte[]> render) {
+        synchronized (this) {
+            byte[] content = entries.get(key);
+            if (content != null) {
+                hits++;
+                return content;
+            }
+            misses++;
+        }
+        byte[] content = render.apply(key);
+        if (content != null) {
+            put(key, content);
+        }
+        return content;
+    }
+
+    synchronized void put(String key, byte[] content) {
+        if (content.length > maxBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, content);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += content.length;
+
+        Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            bytes -= eldest.getValue().length;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /** @return ratio of hits to lookups (0 if nothing has been looked up) */
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,230 @@
+package dev.ebullient.json5e.io;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Time spent in each stage of a run: reading and importing files, preparing the index,
+ * resolving copies, converting entries (by type), rendering templates, writing files and
+ * copying images.
+ * <p>
+ * For each stage, metrics record the number of items (files, entries, ...) and bytes,
+ * the time spent by all threads (wall and CPU time), and the elapsed time from the start
+ * of the first item to the end of the last.
+ * <p>
+ * Wall and CPU time are exclusive: time spent in a stage that is nested in another on the
+ * same thread (copies are resolved while the index is prepared or entries are converted)
+ * is only counted for the nested stage.
+ * <p>
+ * CPU time is only measured (and thread CPU time measurement only enabled) when metrics are enabled.
+ */
+public class RunMetrics {
+    public static final String READ = "read";
+    public static final String IMPORT = "import";
+    public static final String PREPARE = "prepare";
+    public static final String COPY = "copy";
+    public static final String CONVERT = "convert";
+    public static final String RENDER = "render";
+    public static final String WRITE = "write";
+    public static final String IMAGES = "images";
+
+    public static final RunMetrics DISABLED = new RunMetrics(false);
+    static final int VERSION = 1;
+
+    final boolean enabled;
+    final ThreadMXBean threadBean;
+    final boolean cpuTime;
+    final long started = System.nanoTime();
+    final Map<String, Stage> stages = new ConcurrentHashMap<>();
+    // innermost timer running on each thread
+    final ThreadLocal<Timer> running = new ThreadLocal<>();
+
+    public RunMetrics(boolean enabled) {
+        this.enabled = enabled;
+        this.threadBean = enabled ? ManagementFactory.getThreadMXBean() : null;
+        this.cpuTime = enabled && threadBean.isCurrentThreadCpuTimeSupported();
+        if (cpuTime && !threadBean.isThreadCpuTimeEnabled()) {
+            threadBean.setThreadCpuTimeEnabled(true);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start timing an item (on this thread).
+     *
+     * @param stage Name of the stage
+     * @return timer to stop when the item is done
+     */
+    public Timer start(String stage) {
+        return enabled ? new Timer(this, stage) : Timer.NONE;
+    }
+
+    /**
+     * @param stage Name of the stage
+     * @param type Qualifier: <code>convert monster</code>
+     * @return timer to stop when the item is done
+     */
+    public Timer start(String stage, Object type) {
+        return enabled ? new Timer(this, stage + " " + type) : Timer.NONE;
+    }
+
+    long cpuNow() {
+        return cpuTime ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    public static class Timer {
+        static final Timer NONE = new Timer(null, null);
+
+        final RunMetrics metrics;
+        final String stage;
+        final Timer parent;
+        final long wallStart;
+        final long cpuStart;
+        // time spent in nested timers
+        long nestedWall;
+        long nestedCpu;
+
+        Timer(RunMetrics metrics, String stage) {
+            this.metrics = metrics;
+            this.stage = stage;
+            if (metrics == null) {
+                this.parent = null;
+                this.wallStart = 0;
+                this.cpuStart = 0;
+            } else {
+                this.parent = metrics.running.get();
+                metrics.running.set(this);
+                this.wallStart = System.nanoTime();
+                this.cpuStart = metrics.cpuNow();
+            }
+        }
+
+        /** One item done */
+        public void stop() {
+            stop(1, 0);
+        }
+
+        /**
+         * @param count Number of items done
+         * @param bytes Number of bytes read or written
+         */
+        public void stop(long count, long bytes) {
+            if (metrics == null) {
+                return;
+            }
+            long wallEnd = System.nanoTime();
+            long cpu = metrics.cpuNow() - cpuStart;
+            metrics.running.set(parent);
+            if (parent != null) {
+                parent.nestedWall += wallEnd - wallStart;
+                parent.nestedCpu += cpu;
+            }
+            metrics.stages.computeIfAbsent(stage, Stage::new)
+                    .add(count, bytes, wallStart, wallEnd, wallEnd - wallStart - nestedWall, cpu - nestedCpu);
+        }
+    }
+
+    static class Stage {
+        final String name;
+        final LongAdder count = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder wallNanos = new LongAdder();
+        final LongAdder cpuNanos = new LongAdder();
+        final AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong last = new AtomicLong(Long.MIN_VALUE);
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void add(long n, long b, long start, long end, long wall, long cpu) {
+            count.add(n);
+            bytes.add(b);
+            wallNanos.add(wall);
+            cpuNanos.add(cpu);
+            first.accumulateAndGet(start, Math::min);
+            last.accumulateAndGet(end, Math::max);
+        }
+
+        long elapsedNanos() {
+            return last.get() - first.get();
+        }
+
+        double perSecond() {
+            long elapsed = elapsedNanos();
+            return elapsed <= 0 ? 0 : count.sum() * 1e9 / elapsed;
+        }
+    }
+
+    /** @return stages in the order they started */
+    List<Stage> stages() {
+        List<Stage> list = new ArrayList<>(stages.values());
+        list.sort(Comparator.comparingLong((Stage s) -> s.first.get()).thenComparing(s -> s.name));
+        return list;
+    }
+
+    /**
+     * Print a summary table.
+     *
+     * @param tui Json5eTui for output
+     */
+    public void report(Json5eTui tui) {
+        if (!enabled) {
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        tui.outPrintf("%n%-22s %8s %10s %10s %10s %12s %10s%n",
+                "Stage", "Count", "Elapsed ms", "Wall ms", "CPU ms", "Bytes", "Per sec");
+        for (Stage s : stages()) {
+            tui.outPrintf("%-22s %8d %10d %10d %10s %12d %10.1f%n",
+                    s.name, s.count.sum(), millis(s.elapsedNanos()), millis(s.wallNanos.sum()),
+                    cpuTime ? String.valueOf(millis(s.cpuNanos.sum())) : "-",
+                    s.bytes.sum(), s.perSecond());
+        }
+        tui.outPrintf("%-22s %8s %10d%n%n", "total", "", millis(elapsed));
+    }
+
+    /**
+     * Write metrics as json.
+     *
+     * @param file Target file
+     * @param threads Number of threads used for the run
+     * @throws IOException if the file can not be written
+     */
+    public void save(Path file, int threads) throws IOException {
+        ObjectNode node = Json5eTui.MAPPER.createObjectNode();
+        node.put("version", VERSION);
+        node.put("threads", threads);
+        node.put("elapsedMs", millis(System.nanoTime() - started));
+        node.put("cpuTime", cpuTime);
+        ObjectNode stagesNode = node.putObject("stages");
+        for (Stage s : stages()) {
+            ObjectNode stage = stagesNode.putObject(s.name);
+            stage.put("count", s.count.sum());
+            stage.put("bytes", s.bytes.sum());
+            stage.put("elapsedMs", millis(s.elapsedNanos()));
+            stage.put("wallMs", millis(s.wallNanos.sum()));
+            stage.put("cpuMs", millis(s.cpuNanos.sum()));
+            stage.put("perSecond", Math.round(s.perSecond() * 10) / 10.0);
+        }
+        Json5eTui.MAPPER.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), node);
+    }
+
+    static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -0,0 +1,106 @@
+package dev.ebullient.json5e.io;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Slugs (file names, tags, block ids), with the same result as {@link Json5eTui#slugifier()}.
+ * <p>
+ * Most names are plain ASCII: they are converted directly (trim, remove quotes,
+ * replace runs of non-word characters with a dash, lower case). Names containing other
+ * characters (<code>Faerûnian</code>) or symbols with built-in replacements are
+ * converted by the slugify library (normalization and replacements).
+ * <p>
+ * The same names are converted many times: slugs are kept in a bounded cache,
+ * which is cleared when it is full.
+ */
+public final class Slugs {
+    static final int MAX_CACHED = 8192;
+    static final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    // The library lower cases with the default locale (e.g. dotless i in Turkish)
+    static final boolean asciiLowerCase = "I".toLowerCase(Locale.getDefault()).equals("i");
+
+    private Slugs() {
+    }
+
+    /**
+     * @param text Text to convert
+     * @return slug (lower case)
+     */
+    public static String slugify(String text) {
+        if (text == null) {
+            return "";
+        }
+        String slug = cache.get(text);
+        if (slug == null) {
+            slug = create(text);
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            cache.put(text, slug);
+        }
+        return slug;
+    }
+
+    static String create(String text) {
+        String slug = asciiLowerCase ? asciiSlug(text) : null;
+        return slug == null
+                ? Json5eTui.slugifier().slugify(text)
+                : slug;
+    }
+
+    /**
+     * @return slug, or null if the text contains characters that are not handled here
+     */
+    static String asciiSlug(String text) {
+        int len = text.length();
+        StringBuilder sb = null;
+        boolean dash = false;
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (isWordChar(c)) {
+                if (sb == null) {
+                    sb = new StringBuilder(len);
+                } else if (dash) {
+                    sb.append('-');
+                }
+                dash = false;
+                sb.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            } else if (c == '\'' || c == '"') {
+                // removed (custom replacement) before separators are collapsed
+            } else if (isSeparator(c)) {
+                dash = true;
+            } else {
+                return null;
+            }
+        }
+        // leading and trailing separators are removed
+        return sb == null ? "" : sb.toString();
+    }
+
+    static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    static boolean isSeparator(char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case '-':
+            case ',':
+            case '.':
+            case '(':
+            case ')':
+            case ':':
+            case ';':
+            case '/':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package dev.ebullient.json5e.io;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -20,14 +28,26 @@ import dev.ebullient.json5e.qute.QuteMonster;
 import dev.ebullient.json5e.qute.QuteName;
 import dev.ebullient.json5e.qute.QuteNote;
 import dev.ebullient.json5e.qute.QuteRace;
+import dev.ebullient.json5e.qute.QuteSource;
 import dev.ebullient.json5e.qute.QuteSpell;
 import dev.ebullient.json5e.qute.QuteSubclass;
+import dev.ebullient.json5e.tools5e.IndexType;
 import io.quarkus.qute.Engine;
 import io.quarkus.qute.Template;
+import io.quarkus.qute.TemplateException;
+import io.quarkus.qute.TemplateInstance;
 
 @ApplicationScoped
 public class Templates {
-    final Map<String, Template> templates = new HashMap<>();
+    static final List<String> TEMPLATE_IDS = List.of(
+            "background2md.txt", "class2md.txt", "deity2md.txt", "feat2md.txt", "index.txt",
+            "item2md.txt", "monster2md.txt", "monster2md-scores.txt",
+            "monster2md-yamlStatblock-body.txt", "monster2md-yamlStatblock-header.txt",
+            "name2md.txt", "note2md.txt", "race2md.txt", "spell2md.txt", "subclass2md.txt");
+
+    // Templates by id (custom or default): replaced as a whole when custom templates are set
+    volatile Map<String, Template> templates = null;
+    final Map<String, RenderStats> stats = new ConcurrentHashMap<>();
     TemplatePaths templatePaths = null;
 
     @Inject
@@ -36,11 +56,52 @@ public class Templates {
     @Inject
     Engine engine;
 
-    public void setCustomTemplates(TemplatePaths templatePaths) {
+    /**
+     * Parse custom templates (and check default templates) for each rendered type.
+     * Templates are parsed in parallel. If any template can not be read or parsed,
+     * errors are reported and the templates in use are not changed.
+     *
+     * @param templatePaths Custom templates (may be null)
+     * @return true if all templates were parsed
+     */
+    public boolean setCustomTemplates(TemplatePaths templatePaths) {
         this.templatePaths = templatePaths;
-        this.templates.clear();
+
+        Map<String, Template> defaults = defaultTemplates();
+        List<String> ids = new ArrayList<>(defaults.keySet());
+        List<Template> parsed = tui.parallel(ids, id -> customTemplateOrDefault(id, defaults.get(id)));
+
+        Map<String, Template> result = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (parsed.get(i) == null) {
+                return false;
+            }
+            result.put(ids.get(i), parsed.get(i));
+        }
+        this.templates = Map.copyOf(result);
+        return true;
+    }
+
+    private Map<String, Template> defaultTemplates() {
+        Map<String, Template> defaults = new LinkedHashMap<>();
+        defaults.put("index.txt", index);
+        defaults.put("background2md.txt", background2md);
+        defaults.put("class2md.txt", class2md);
+        defaults.put("deity2md.txt", deity2md);
+        defaults.put("feat2md.txt", feat2md);
+        defaults.put("item2md.txt", item2md);
+        defaults.put("monster2md.txt", monster2md);
+        defaults.put("name2md.txt", name2md);
+        defaults.put("note2md.txt", note2md);
+        defaults.put("race2md.txt", race2md);
+        defaults.put("spell2md.txt", spell2md);
+        defaults.put("subclass2md.txt", subclass2md);
+        return defaults;
     }
 
+    /**
+     * @return custom template (parsed), default template, or null if the template can not be read or parsed
+     */
     private Template customTemplateOrDefault(String id, Template defaultTemplate) {
         Path customPath = templatePaths == null ? null : templatePaths.get(id);
         if (customPath != null) {
@@ -48,129 +109,220 @@ public class Templates {
                 return engine.parse(Files.readString(customPath));
             } catch (IOException e) {
                 tui.errorf(e, "Failed reading template for %s from %s", id, customPath);
+            } catch (TemplateException e) {
+                tui.errorf(e, "Failed parsing template for %s from %s: %s", id, customPath, e.getMessage());
             }
+            return null;
+        }
+        if (defaultTemplate == null) {
+            tui.errorf("Missing default template for %s", id);
         }
         return defaultTemplate;
     }
 
+    private Template template(String id) {
+        Map<String, Template> t = templates;
+        if (t == null) {
+            // custom templates have not been set: use default templates
+            templates = t = Map.copyOf(defaultTemplates());
+        }
+        return t.get(id);
+    }
+
+    /**
+     * @return render count and time for each template (by id) since the start of the process
+     */
+    public Map<String, RenderStats> renderStats() {
+        return new TreeMap<>(stats);
+    }
+
+    /**
+     * Remember the content of each template (custom or default) in the manifest:
+     * entries rendered with a template are converted again when it changes.
+     */
+    public void recordTemplates(OutputManifest manifest) {
+        for (String id : TEMPLATE_IDS) {
+            Path customPath = templatePaths == null ? null : templatePaths.get(id);
+            try {
+                if (customPath != null) {
+                    manifest.templateRead(id, Files.readAllBytes(customPath));
+                } else {
+                    try (InputStream in = Templates.class.getResourceAsStream("/templates/" + id)) {
+                        if (in != null) {
+                            manifest.templateRead(id, in.readAllBytes());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                tui.errorf(e, "Failed reading template for %s", id);
+            }
+        }
+    }
+
     @Inject
     public Template index;
 
     public String renderIndex(String name, Collection<FileMap> resources) {
-        return index
+        return render("index.txt", template("index.txt")
                 .data("name", name)
-                .data("resources", resources)
-                .render();
+                .data("resources", resources), false);
+    }
+
+    void renderIndexTo(String name, Collection<FileMap> resources, NoteWriter out) {
+        stream("index.txt", template("index.txt")
+                .data("name", name)
+                .data("resources", resources), out);
+    }
+
+    /**
+     * Render a resource with the template for its type, as a stream of chunks.
+     *
+     * @param resource Converted source, note or name table
+     * @param out Writer for the rendered content (trims leading and trailing whitespace)
+     */
+    void renderTo(Object resource, NoteWriter out) {
+        String id = templateId(resource);
+        stream(id, template(id).data("resource", resource), out);
+    }
+
+    static String templateId(Object resource) {
+        if (resource instanceof QuteSource) {
+            IndexType type = IndexType.of((QuteSource) resource);
+            if (type.templateId != null) {
+                return type.templateId;
+            }
+        } else if (resource instanceof QuteName) {
+            return "name2md.txt";
+        } else if (resource instanceof QuteNote) {
+            return "note2md.txt";
+        }
+        throw new IllegalArgumentException("Unknown file type:" + resource.getClass().getSimpleName());
+    }
+
+    /**
+     * Render a converted source with the template for its type.
+     *
+     * @param resource Converted source
+     * @return rendered markdown (trimmed)
+     */
+    public String render(QuteSource resource) {
+        String id = templateId(resource);
+        return render(id, template(id).data("resource", resource), true);
+    }
+
+    private void stream(String id, TemplateInstance instance, NoteWriter out) {
+        FlightEvents.Render event = FlightEvents.render();
+        long start = System.nanoTime();
+        try {
+            instance.consume(out).toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rendering " + id, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed rendering " + id, e.getCause());
+        }
+        stats.computeIfAbsent(id, k -> new RenderStats()).add(System.nanoTime() - start, (int) out.length());
+        if (event != null && event.shouldCommit()) {
+            event.templateId = id;
+            event.size = (int) out.length();
+            event.commit();
+        }
+    }
+
+    private String render(String id, TemplateInstance instance, boolean trim) {
+        FlightEvents.Render event = FlightEvents.render();
+        long start = System.nanoTime();
+        String content = instance.render();
+        if (trim) {
+            content = content.trim();
+        }
+        stats.computeIfAbsent(id, k -> new RenderStats()).add(System.nanoTime() - start, content.length());
+        if (event != null && event.shouldCommit()) {
+            event.templateId = id;
+            event.size = content.length();
+            event.commit();
+        }
+        return content;
     }
 
     @Inject
     public Template background2md;
 
     public String renderBackground(QuteBackground resource) {
-        Template tpl = templates.computeIfAbsent("background2md.txt", k -> customTemplateOrDefault(k, background2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("background2md.txt", template("background2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template class2md;
 
     public String renderClass(QuteClass resource) {
-        Template tpl = templates.computeIfAbsent("class2md.txt", k -> customTemplateOrDefault(k, class2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("class2md.txt", template("class2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template deity2md;
 
     public String renderDeity(QuteDeity resource) {
-        Template tpl = templates.computeIfAbsent("deity2md.txt", k -> customTemplateOrDefault(k, deity2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("deity2md.txt", template("deity2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template feat2md;
 
     public String renderFeat(QuteFeat resource) {
-        Template tpl = templates.computeIfAbsent("feat2md.txt", k -> customTemplateOrDefault(k, feat2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("feat2md.txt", template("feat2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template item2md;
 
     public String renderItem(QuteItem resource) {
-        Template tpl = templates.computeIfAbsent("item2md.txt", k -> customTemplateOrDefault(k, item2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("item2md.txt", template("item2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template monster2md;
 
     public String renderMonster(QuteMonster resource) {
-        Template tpl = templates.computeIfAbsent("monster2md.txt", k -> customTemplateOrDefault(k, monster2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("monster2md.txt", template("monster2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template name2md;
 
     public String renderName(QuteName resource) {
-        Template tpl = templates.computeIfAbsent("name2md.txt", k -> customTemplateOrDefault(k, name2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("name2md.txt", template("name2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template note2md;
 
     public String renderNote(QuteNote resource) {
-        Template tpl = templates.computeIfAbsent("note2md.txt", k -> customTemplateOrDefault(k, note2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("note2md.txt", template("note2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template race2md;
 
     public String renderRace(QuteRace resource) {
-        Template tpl = templates.computeIfAbsent("race2md.txt", k -> customTemplateOrDefault(k, race2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("race2md.txt", template("race2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template spell2md;
 
     public String renderSpell(QuteSpell resource) {
-        Template tpl = templates.computeIfAbsent("spell2md.txt", k -> customTemplateOrDefault(k, spell2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("spell2md.txt", template("spell2md.txt").data("resource", resource), true);
     }
 
     @Inject
     public Template subclass2md;
 
     public String renderSubclass(QuteSubclass resource) {
-        Template tpl = templates.computeIfAbsent("subclass2md.txt", k -> customTemplateOrDefault(k, subclass2md));
-        return tpl
-                .data("resource", resource)
-                .render().trim();
+        return render("subclass2md.txt", template("subclass2md.txt").data("resource", resource), true);
     }
 
     @Override
@@ -193,4 +345,29 @@ public class Templates {
                 ", subclass2md=" + subclass2md +
                 '}';
     }
+
+    /** Number of renders, time spent and characters rendered, for one template */
+    public static class RenderStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder chars = new LongAdder();
+
+        void add(long elapsed, int length) {
+            count.increment();
+            nanos.add(elapsed);
+            chars.add(length);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long nanos() {
+            return nanos.sum();
+        }
+
+        public long chars() {
+            return chars.sum();
+        }
+    }
 }
@@ -17,10 +17,10 @@ public class BackgroundTraits2Note extends Json2QuteCommon {
     public List<QuteNote> buildNotes() {
         List<QuteNote> notes = new ArrayList<>();
 
-        addIfPresent(notes, Json2QuteBackground.traits, "Personality Traits");
+        addIfPresent(notes, index().backgroundTraits, "Personality Traits");
         addIdealsIfPresent(notes);
-        addIfPresent(notes, Json2QuteBackground.bonds, "Bonds");
-        addIfPresent(notes, Json2QuteBackground.flaws, "Flaws");
+        addIfPresent(notes, index().backgroundBonds, "Bonds");
+        addIfPresent(notes, index().backgroundFlaws, "Flaws");
 
         return notes;
     }
@@ -45,11 +45,11 @@ public class BackgroundTraits2Note extends Json2QuteCommon {
     }
 
     private void addIdealsIfPresent(List<QuteNote> notes) {
-        if (Json2QuteBackground.ideals.isEmpty()) {
+        if (index().backgroundIdeals.isEmpty()) {
             return;
         }
 
-        List<String> ideals = Json2QuteBackground.ideals.stream()
+        List<String> ideals = index().backgroundIdeals.stream()
                 .map(x -> x.replace("**", ""))
                 .map(x -> x.replaceAll("^\\|\\s*\\d+\\s*", ""))
                 .collect(Collectors.toList());
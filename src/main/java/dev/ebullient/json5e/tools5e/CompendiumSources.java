@@ -2,7 +2,6 @@ package dev.ebullient.json5e.tools5e;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -16,19 +15,26 @@ import com.fasterxml.jackson.databind.JsonNode;
 import dev.ebullient.json5e.io.Json5eTui;
 
 public class CompendiumSources {
+    // Source abbreviations are interned (per registry)
+    final SourceIds ids;
     final IndexType type;
     final String key;
     final String name;
-    final Set<String> bookSources = new LinkedHashSet<>();
+    // ids of book sources: primary source first, no duplicates
+    final int[] bookSources;
     final String sourceText;
 
-    public CompendiumSources(IndexType type, String key, JsonNode jsonElement) {
+    CompendiumSources(SourceIds ids, IndexType type, String key, JsonNode jsonElement) {
+        this.ids = ids;
         this.type = type;
         this.key = key;
         this.name = (jsonElement.has("name")
                 ? jsonElement.get("name").asText()
                 : jsonElement.get("abbreviation").asText()).trim();
-        this.sourceText = findSourceText(jsonElement);
+
+        Set<String> books = new LinkedHashSet<>();
+        this.sourceText = findSourceText(jsonElement, books);
+        this.bookSources = books.stream().mapToInt(ids::id).toArray();
     }
 
     public String getSourceText(boolean useSrd) {
@@ -42,8 +48,8 @@ public class CompendiumSources {
         return List.of("compendium/src/" + primarySource().toLowerCase());
     }
 
-    private String findSourceText(JsonNode jsonElement) {
-        this.bookSources.add(jsonElement.get("source").asText());
+    private String findSourceText(JsonNode jsonElement, Set<String> books) {
+        books.add(jsonElement.get("source").asText());
 
         List<String> srcText = new ArrayList<>();
         srcText.add(sourceAndPage(jsonElement));
@@ -60,19 +66,19 @@ public class CompendiumSources {
         }
 
         if (jsonElement.has("additionalSources")) {
-            srcText.addAll(StreamSupport.stream(jsonElement.withArray("additionalSources").spliterator(), false)
+            srcText.addAll(StreamSupport.stream(jsonElement.path("additionalSources").spliterator(), false)
                     .filter(x -> !x.get("source").asText().equals(copySrc))
                     .filter(x -> notCoreSourceBook(x.get("source").asText()))
-                    .peek(x -> this.bookSources.add(x.get("source").asText()))
+                    .peek(x -> books.add(x.get("source").asText()))
                     .map(this::sourceAndPage)
                     .collect(Collectors.toList()));
         }
 
         if (jsonElement.has("otherSources")) {
-            srcText.addAll(StreamSupport.stream(jsonElement.withArray("otherSources").spliterator(), false)
+            srcText.addAll(StreamSupport.stream(jsonElement.path("otherSources").spliterator(), false)
                     .filter(x -> !x.get("source").asText().equals(copySrc))
                     .filter(x -> notCoreSourceBook(x.get("source").asText()))
-                    .peek(x -> this.bookSources.add(x.get("source").asText()))
+                    .peek(x -> books.add(x.get("source").asText()))
                     .map(this::sourceAndPage)
                     .collect(Collectors.toList()));
         }
@@ -90,16 +96,21 @@ public class CompendiumSources {
     }
 
     public boolean isPrimarySource(String source) {
-        return bookSources.iterator().next().equals(source);
+        return primarySource().equals(source);
     }
 
     public String primarySource() {
-        return bookSources.iterator().next();
+        return sourceName(bookSources[0]);
     }
 
     public Optional<String> uaSource() {
-        Optional<String> source = bookSources.stream().filter(x -> x.contains("UA") && !x.equals("UAWGE")).findFirst();
-        return source.map(CompendiumSources::sourceToAbbreviation);
+        for (int id : bookSources) {
+            String x = sourceName(id);
+            if (x.contains("UA") && !x.equals("UAWGE")) {
+                return Optional.of(sourceToAbbreviation(x));
+            }
+        }
+        return Optional.empty();
     }
 
     public String mapPrimarySource() {
@@ -108,11 +119,27 @@ public class CompendiumSources {
     }
 
     public String alternateSource() {
-        Iterator<String> i = bookSources.iterator();
-        if (bookSources.size() > 1) {
-            i.next();
+        return sourceName(bookSources[bookSources.length > 1 ? 1 : 0]);
+    }
+
+    /**
+     * @return book sources, primary source first
+     */
+    public List<String> getBookSources() {
+        List<String> books = new ArrayList<>(bookSources.length);
+        for (int id : bookSources) {
+            books.add(sourceName(id));
         }
-        return i.next();
+        return books;
+    }
+
+    String sourceName(int id) {
+        return ids.name(id);
+    }
+
+    /** @return lower case source abbreviation (as used in keys and source filters) */
+    String sourceKey(int id) {
+        return ids.key(id);
     }
 
     public String getKey() {
@@ -474,17 +501,14 @@ public class CompendiumSources {
     }
 
     public void checkKnown(Json5eTui tui, Set<String> missing) {
-        bookSources.forEach(s -> {
-            if (abvToName.containsKey(s)) {
-                return;
-            }
-            String alternate = sourceToAbv.get(s);
-            if (alternate != null) {
-                return;
+        for (int id : bookSources) {
+            String s = sourceName(id);
+            if (abvToName.containsKey(s) || sourceToAbv.containsKey(s)) {
+                continue;
             }
             if (missing.add(s)) {
                 tui.warnf("Source %s is unknown", s);
             }
-        });
+        }
     }
 }
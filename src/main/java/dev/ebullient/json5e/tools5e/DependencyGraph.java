@@ -0,0 +1,338 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.io.MarkdownWriter.FileMap;
+import dev.ebullient.json5e.io.OutputManifest;
+import dev.ebullient.json5e.qute.QuteSource;
+
+/**
+ * Index lookups made while converting each entry, and the files written for it.
+ * <p>
+ * While an entry is converted, {@link JsonIndex} records each lookup (the entry's own node,
+ * fluff and other nodes it reads, {@code _copy} parents resolved for fluff, and link targets
+ * checked for inclusion) for the converting thread. Each lookup is stored with a value
+ * (usually a hash of the node that was found), and the graph is saved next to the output.
+ * <p>
+ * On the next run, an entry whose lookups all produce the same values (and whose output
+ * files have not been modified) is not converted again: its files are kept as they are.
+ * Nodes are read after {@code _copy} has been resolved (in {@link JsonIndex#prepare()}),
+ * so a change to a copied entry also changes the hash of each copy.
+ * <p>
+ * The templates used to render an entry are dependencies of the entry: when a template
+ * changes, only entries of that type are converted again.
+ */
+public class DependencyGraph {
+    public static final String GRAPH_FILE = ".json5e-dependencies.json";
+    static final int VERSION = 3;
+
+    final JsonIndex index;
+    final OutputManifest manifest;
+    final Path output;
+    final String fingerprint;
+
+    final Map<String, Conversion> previous = new HashMap<>();
+    final Map<String, Conversion> current = new ConcurrentHashMap<>();
+
+    // Hashes of indexed nodes: taken once per index, before conversion starts
+    final Map<JsonNode, String> nodeHashes = new IdentityHashMap<>();
+
+    // Values of dependencies in this run (the index does not change while converting)
+    final Map<String, String> values = new ConcurrentHashMap<>();
+    final ThreadLocal<Set<String>> recording = new ThreadLocal<>();
+
+    final LongAdder converted = new LongAdder();
+    final LongAdder reused = new LongAdder();
+
+    DependencyGraph(JsonIndex index, OutputManifest manifest, Path output, String fingerprint) {
+        this.index = index;
+        this.manifest = manifest;
+        this.output = output;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Read the graph saved in the output directory by a previous run.
+     * The graph is ignored if it was created with other settings (sources or version).
+     *
+     * @param index Prepared index
+     * @param manifest Output manifest (hashes of templates and written files)
+     * @param output Output directory
+     * @return graph used to skip converting unchanged entries
+     */
+    public static DependencyGraph load(JsonIndex index, OutputManifest manifest, Path output) {
+        return load(index, manifest, output, null);
+    }
+
+    /**
+     * Read the graph saved in the output directory by a previous run.
+     *
+     * @param index Prepared index
+     * @param manifest Output manifest (hashes of templates and written files)
+     * @param output Output directory
+     * @param last Graph of the last conversion in this process (watch mode), or null.
+     *        If it was created for the same index, its node hashes are reused
+     *        (nodes are hashed once per index, before conversion starts).
+     * @return graph used to skip converting unchanged entries
+     */
+    public static DependencyGraph load(JsonIndex index, OutputManifest manifest, Path output, DependencyGraph last) {
+        String version = DependencyGraph.class.getPackage().getImplementationVersion();
+        String fingerprint = String.format("%s|%s", version, index.sourceFingerprint());
+
+        DependencyGraph graph = new DependencyGraph(index, manifest, output, fingerprint);
+        if (last != null && last.index == index) {
+            graph.nodeHashes.putAll(last.nodeHashes);
+        } else {
+            List<JsonNode> nodes = index.indexedNodes();
+            List<String> hashes = index.tui().parallel(nodes, DependencyGraph::hashOf);
+            for (int i = 0; i < nodes.size(); i++) {
+                graph.nodeHashes.put(nodes.get(i), hashes.get(i));
+            }
+        }
+
+        Path file = output.resolve(GRAPH_FILE);
+        if (file.toFile().exists()) {
+            try {
+                JsonNode node = Json5eTui.MAPPER.readTree(file.toFile());
+                if (node.path("version").asInt() != VERSION) {
+                    index.tui().warnf("Ignoring %s: unknown version", file);
+                } else if (!fingerprint.equals(node.path("fingerprint").asText())) {
+                    index.tui().verbosef("Settings have changed: converting all entries");
+                } else {
+                    node.path("entries").fields()
+                            .forEachRemaining(e -> graph.previous.put(e.getKey(), Conversion.fromJson(e.getValue())));
+                }
+            } catch (IOException e) {
+                index.tui().warnf("Ignoring %s: %s", file, e.getMessage());
+            }
+        }
+        return graph;
+    }
+
+    /** Record a lookup for the entry being converted by this thread */
+    void record(String dependency) {
+        Set<String> deps = recording.get();
+        if (deps != null) {
+            deps.add(dependency);
+        }
+    }
+
+    /**
+     * Run without recording lookups made by this thread: the caller records the result instead.
+     */
+    <T> T untracked(Supplier<T> supplier) {
+        Set<String> deps = recording.get();
+        recording.remove();
+        try {
+            return supplier.get();
+        } finally {
+            if (deps != null) {
+                recording.set(deps);
+            }
+        }
+    }
+
+    /**
+     * Find the files written for an entry by the previous run, if they can be kept.
+     *
+     * @param key Index key of the entry
+     * @return files to keep, or null if the entry should be converted
+     */
+    List<Output> unchanged(String key) {
+        Conversion conversion = previous.get(key);
+        if (conversion == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> dep : conversion.dependencies.entrySet()) {
+            if (!dep.getValue().equals(value(dep.getKey()))) {
+                index.tui().debugf("Convert %s: %s has changed", key, dep.getKey());
+                return null;
+            }
+        }
+        for (Output o : conversion.outputs) {
+            if (!manifest.isKnown(o.target(output), o.modified)) {
+                index.tui().debugf("Convert %s: %s has changed", key, o.target(output));
+                return null;
+            }
+        }
+        current.put(key, conversion);
+        reused.increment();
+        return conversion.outputs;
+    }
+
+    /** Start recording lookups made by this thread while converting the entry */
+    void startRecording(String key) {
+        Set<String> deps = new HashSet<>();
+        deps.add("node:" + key);
+        for (String id : templates(IndexType.getTypeFromKey(key))) {
+            deps.add("template:" + id);
+        }
+        recording.set(deps);
+    }
+
+    /** @return ids of templates used to render entries of this type */
+    static List<String> templates(IndexType type) {
+        if (type == IndexType.classtype) {
+            // subclasses are written with their class
+            return List.of(type.templateId, IndexType.subclass.templateId);
+        }
+        return type.templateId == null ? List.of() : List.of(type.templateId);
+    }
+
+    /**
+     * Stop recording, and remember the lookups made while converting the entry
+     * along with the files that were written.
+     *
+     * @param key Index key of the entry
+     * @param outputs Files written for the entry (null if conversion failed)
+     */
+    void stopRecording(String key, List<Output> outputs) {
+        Set<String> deps = recording.get();
+        recording.remove();
+        if (outputs == null) {
+            return;
+        }
+        Map<String, String> dependencies = new TreeMap<>();
+        deps.forEach(d -> dependencies.put(d, value(d)));
+        current.put(key, new Conversion(dependencies, outputs));
+        converted.increment();
+    }
+
+    /**
+     * Describe a file written for the entry being converted.
+     *
+     * @param qs Converted source
+     * @param fileMap File the source was written to
+     * @return output of the entry
+     */
+    Output output(QuteSource qs, FileMap fileMap) {
+        Path target = output.resolve(fileMap.dir).resolve(fileMap.fileName);
+        return new Output(qs.key(), qs.title(), qs.targetFile(), fileMap.dir.toString(),
+                target.toFile().lastModified());
+    }
+
+    /**
+     * Entries with outputs that are in conflict (written for several keys) are converted again next time:
+     * which entry wins depends on the order of all entries.
+     *
+     * @param keys Keys of written sources that were in conflict
+     */
+    void forget(Set<String> keys) {
+        if (!keys.isEmpty()) {
+            current.values().removeIf(c -> c.outputs.stream().anyMatch(o -> keys.contains(o.key)));
+        }
+    }
+
+    String value(String dependency) {
+        return values.computeIfAbsent(dependency, index::dependencyValue);
+    }
+
+    public void save() throws IOException {
+        ObjectNode entries = Json5eTui.MAPPER.createObjectNode();
+        new TreeMap<>(current).forEach((k, v) -> entries.set(k, v.toJson()));
+
+        ObjectNode node = Json5eTui.MAPPER.createObjectNode();
+        node.put("version", VERSION);
+        node.put("fingerprint", fingerprint);
+        node.set("entries", entries);
+        Json5eTui.MAPPER.writeValue(output.resolve(GRAPH_FILE).toFile(), node);
+    }
+
+    public void report() {
+        index.tui().outPrintf("✅ Converted %d entries, reused %d unchanged entries.%n",
+                converted.sum(), reused.sum());
+    }
+
+    String hash(JsonNode node) {
+        if (node == null) {
+            return "-";
+        }
+        String hash = nodeHashes.get(node);
+        return hash == null ? hashOf(node) : hash;
+    }
+
+    static String hashOf(JsonNode node) {
+        return OutputManifest.hash(node.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static class Conversion {
+        final Map<String, String> dependencies;
+        final List<Output> outputs;
+
+        Conversion(Map<String, String> dependencies, List<Output> outputs) {
+            this.dependencies = dependencies;
+            this.outputs = outputs;
+        }
+
+        ObjectNode toJson() {
+            ObjectNode node = Json5eTui.MAPPER.createObjectNode();
+            node.set("dependencies", Json5eTui.MAPPER.valueToTree(dependencies));
+            ArrayNode files = node.withArray("outputs");
+            outputs.forEach(o -> files.addObject()
+                    .put("key", o.key)
+                    .put("title", o.title)
+                    .put("file", o.file)
+                    .put("dir", o.dir)
+                    .put("modified", o.modified));
+            return node;
+        }
+
+        static Conversion fromJson(JsonNode node) {
+            Map<String, String> dependencies = new TreeMap<>();
+            node.path("dependencies").fields()
+                    .forEachRemaining(e -> dependencies.put(e.getKey(), e.getValue().asText()));
+            List<Output> outputs = new ArrayList<>();
+            node.path("outputs").forEach(o -> outputs.add(new Output(
+                    o.get("key").asText(),
+                    o.get("title").asText(),
+                    o.get("file").asText(),
+                    o.get("dir").asText(),
+                    o.get("modified").asLong())));
+            return new Conversion(dependencies, outputs);
+        }
+    }
+
+    /** A file written for an entry: enough to list it in the directory index, and to check it on disk */
+    static class Output {
+        final String key;
+        final String title;
+        final String file;
+        final String dir;
+        final long modified;
+
+        Output(String key, String title, String file, String dir, long modified) {
+            this.key = key;
+            this.title = title;
+            this.file = file;
+            this.dir = dir;
+            this.modified = modified;
+        }
+
+        FileMap fileMap() {
+            return new FileMap(title, file, Path.of(dir));
+        }
+
+        Path target(Path output) {
+            FileMap fileMap = fileMap();
+            return output.resolve(fileMap.dir).resolve(fileMap.fileName);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.io.OutputManifest;
+
+/**
+ * Binary (Smile) snapshot of a prepared index.
+ * <p>
+ * The snapshot is keyed by the source filter and by the path, size, modification time,
+ * and content hash of each input file. When none of these have changed, the index is restored from the
+ * (memory-mapped) cache file instead of reading and preparing the input files again.
+ * Only files with a new size or modification time are hashed again: the hashes of the others
+ * are taken from the key of the previous snapshot.
+ * Hashes of input files are stored with the snapshot for incremental runs.
+ */
+public class IndexCache {
+    static final int VERSION = 4;
+    static final ObjectMapper SMILE = new ObjectMapper(new SmileFactory());
+
+    final Path cacheFile;
+    final Json5eTui tui;
+    final ObjectNode key;
+
+    /**
+     * @param cacheFile File containing the cached index
+     * @param inputs Input paths (as given on the command line)
+     * @param sources Source filter
+     * @param tui Json5eTui used to list input files
+     */
+    public IndexCache(Path cacheFile, List<Path> inputs, List<String> sources, Json5eTui tui) throws IOException {
+        this.cacheFile = cacheFile;
+        this.tui = tui;
+
+        key = Json5eTui.MAPPER.createObjectNode();
+        key.put("version", VERSION);
+        key.put("tool", String.valueOf(IndexCache.class.getPackage().getImplementationVersion()));
+        key.set("sources", Json5eTui.MAPPER.valueToTree(new TreeSet<>(sources)));
+
+        Map<String, JsonNode> previous = previousInputs();
+        ArrayNode files = key.putArray("inputs");
+        for (Path input : inputs) {
+            for (Path p : tui.listInputs(input)) {
+                String path = p.toAbsolutePath().normalize().toString();
+                long size = Files.size(p);
+                long modified = Files.getLastModifiedTime(p).toMillis();
+                JsonNode last = previous.get(path);
+                String hash = last != null
+                        && last.path("size").asLong(-1) == size
+                        && last.path("modified").asLong(-1) == modified
+                                ? last.path("hash").asText()
+                                : OutputManifest.hash(Files.readAllBytes(p));
+                files.addObject()
+                        .put("path", path)
+                        .put("size", size)
+                        .put("modified", modified)
+                        .put("hash", hash);
+            }
+        }
+    }
+
+    /**
+     * Read only the key of the previous snapshot (it is written first).
+     *
+     * @return input files recorded in the previous snapshot, by path; empty if there is none
+     */
+    Map<String, JsonNode> previousInputs() {
+        Map<String, JsonNode> result = new HashMap<>();
+        if (!cacheFile.toFile().exists()) {
+            return result;
+        }
+        try (JsonParser parser = SMILE.getFactory().createParser(cacheFile.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || !"key".equals(parser.nextFieldName())) {
+                return result;
+            }
+            parser.nextToken();
+            JsonNode last = SMILE.readTree(parser);
+            if (last.path("version").asInt() == VERSION) {
+                last.path("inputs").forEach(f -> result.put(f.path("path").asText(), f));
+            }
+        } catch (IOException e) {
+            tui.verbosef("Unable to read index cache %s: %s", cacheFile, e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Restore the index from the cache file, if it is present and up to date.
+     *
+     * @param index Index to restore (not yet prepared)
+     * @return true if the index was restored
+     */
+    public boolean load(JsonIndex index) {
+        if (!cacheFile.toFile().exists()) {
+            return false;
+        }
+        JsonNode node;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try (InputStream in = new ByteBufferBackedInputStream(buffer)) {
+                node = SMILE.readTree(in);
+            }
+        } catch (IOException e) {
+            tui.warnf("Unable to read index cache %s: %s", cacheFile, e.getMessage());
+            return false;
+        }
+        // compare as text: numbers may be read back as a narrower type
+        if (!key.toString().equals(String.valueOf(node.get("key")))) {
+            tui.verbosef("Index cache %s is out of date", cacheFile);
+            return false;
+        }
+
+        index.restore(node.get("index"));
+        node.get("roots").forEach(r -> tui.addInputRoot(Path.of(r.asText())));
+        node.get("hashes").fields()
+                .forEachRemaining(e -> tui.getInputHashes().put(Path.of(e.getKey()), e.getValue().asText()));
+        return true;
+    }
+
+    /**
+     * Save the prepared index to the cache file.
+     * Input files should have been read with {@link Json5eTui#setHashInputs(boolean)} enabled.
+     *
+     * @param index Prepared index
+     */
+    public void save(JsonIndex index) throws IOException {
+        ObjectNode node = SMILE.createObjectNode();
+        node.set("key", key);
+        node.set("roots", Json5eTui.MAPPER.valueToTree(
+                tui.getInputRoots().stream().map(Path::toString).toArray()));
+        ObjectNode hashes = node.putObject("hashes");
+        tui.getInputHashes().forEach((k, v) -> hashes.put(k.toString(), v));
+        node.set("index", index.snapshot());
+
+        // Replace the cache file in one step, so an interrupted write can not leave it half written
+        Path target = cacheFile.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            SMILE.writeValue(out, node);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
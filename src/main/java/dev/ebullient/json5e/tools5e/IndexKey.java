@@ -0,0 +1,104 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed form of an index key: <code>type|name|source|...</code>
+ * <p>
+ * Index keys are used as (lower case) strings: in the index, in aliases, and in
+ * files read and written by the tool. A key is parsed (without a regular expression)
+ * only where several of its fields are needed.
+ */
+public final class IndexKey {
+    final String key;
+    final IndexType type;
+    final String[] fields;
+
+    private IndexKey(String key) {
+        int pipe = key.indexOf('|');
+        if (pipe < 0) {
+            throw new IllegalArgumentException("Invalid index key (no type): " + key);
+        }
+        this.key = key;
+        this.type = IndexType.getTypeFromKey(key);
+        this.fields = split(key);
+    }
+
+    /**
+     * @param key Index key
+     * @return parsed key
+     */
+    public static IndexKey of(String key) {
+        return new IndexKey(key);
+    }
+
+    /**
+     * Create an index key: type and fields separated by pipes, in lower case.
+     * Same as {@code String.format("%s|%s|...", type, fields...).toLowerCase()}.
+     *
+     * @param type Type of the indexed element
+     * @param fields Fields of the key (name, source, ...)
+     * @return index key
+     */
+    public static String create(IndexType type, String... fields) {
+        StringBuilder sb = new StringBuilder(64).append(type.name());
+        for (String f : fields) {
+            sb.append('|').append(f);
+        }
+        // returns the same string if it is already lower case
+        return sb.toString().toLowerCase();
+    }
+
+    public IndexType type() {
+        return type;
+    }
+
+    /** @return the name: first field after the type */
+    public String name() {
+        return field(1);
+    }
+
+    /**
+     * @param i Position of the field (the type is field 0)
+     * @return field at position i, or an empty string if the key has fewer fields
+     */
+    public String field(int i) {
+        return i < fields.length ? fields[i] : "";
+    }
+
+    /** @return number of fields, including the type and trailing empty fields */
+    public int size() {
+        return fields.length;
+    }
+
+    static String[] split(String key) {
+        List<String> fields = new ArrayList<>(6);
+        int start = 0;
+        int pipe;
+        while ((pipe = key.indexOf('|', start)) >= 0) {
+            fields.add(key.substring(start, pipe));
+            start = pipe + 1;
+        }
+        fields.add(key.substring(start));
+        return fields.toArray(new String[0]);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof IndexKey && key.equals(((IndexKey) obj).key);
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
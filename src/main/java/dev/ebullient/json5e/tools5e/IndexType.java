@@ -1,26 +1,28 @@
 package dev.ebullient.json5e.tools5e;
 
+import dev.ebullient.json5e.qute.QuteSource;
+
 public enum IndexType {
-    background,
+    background("background2md.txt", QuteSource.BACKGROUND_PATH),
     backgroundfluff,
-    classtype,
+    classtype("class2md.txt", QuteSource.CLASSES_PATH),
     classfeature,
-    deity,
-    feat,
-    item,
+    deity("deity2md.txt", QuteSource.DEITIES_PATH),
+    feat("feat2md.txt", QuteSource.FEATS_PATH),
+    item("item2md.txt", QuteSource.ITEMS_PATH),
     itementry,
     itemfluff,
     itemvariant,
     legendarygroup,
-    monster,
+    monster("monster2md.txt", QuteSource.MONSTERS_BASE_PATH),
     monsterfluff,
-    race,
+    race("race2md.txt", QuteSource.RACES_PATH),
     racefluff,
-    spell,
+    spell("spell2md.txt", QuteSource.SPELLS_PATH),
     spellfluff,
-    subclass,
+    subclass("subclass2md.txt", QuteSource.CLASSES_PATH),
     subclassfeature,
-    subrace,
+    subrace("race2md.txt", QuteSource.RACES_PATH),
     optionalfeature,
     table,
     trait,
@@ -28,8 +30,38 @@ public enum IndexType {
     note,
     reference;
 
+    /** Template used to render entries of this type, or null if they are not written as files */
+    public final String templateId;
+    /** Compendium directory for entries of this type (counted as written there), or null */
+    public final String outputDir;
+
+    IndexType() {
+        this(null, null);
+    }
+
+    IndexType(String templateId, String outputDir) {
+        this.templateId = templateId;
+        this.outputDir = outputDir;
+    }
+
+    private static final IndexType[] TYPES = values();
+
+    /**
+     * @param key Index key: <code>type|...</code>
+     * @return type of the key (compared in place: the type is not copied out of the key)
+     */
     public static IndexType getTypeFromKey(String key) {
-        String typeKey = key.substring(0, key.indexOf("|"));
-        return valueOf(typeKey);
+        int pipe = key.indexOf('|');
+        for (IndexType type : TYPES) {
+            if (type.name().length() == pipe && key.regionMatches(0, type.name(), 0, pipe)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("No index type for key: " + key);
+    }
+
+    /** @return type of a converted source (from its key) */
+    public static IndexType of(QuteSource qs) {
+        return getTypeFromKey(qs.key());
     }
 }
@@ -6,35 +6,66 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import dev.ebullient.json5e.io.EntryProfiler;
+import dev.ebullient.json5e.io.FlightEvents;
 import dev.ebullient.json5e.io.MarkdownWriter;
+import dev.ebullient.json5e.io.MarkdownWriter.FileMap;
+import dev.ebullient.json5e.io.RunMetrics;
 import dev.ebullient.json5e.qute.ImageRef;
 import dev.ebullient.json5e.qute.QuteName;
 import dev.ebullient.json5e.qute.QuteNote;
 import dev.ebullient.json5e.qute.QuteSource;
 
 public class Json2MarkdownConverter {
+    // Types of entries written to files (races include subraces)
+    static final List<IndexType> FILE_TYPES = List.of(
+            IndexType.background,
+            IndexType.classtype,
+            IndexType.deity,
+            IndexType.feat,
+            IndexType.item,
+            IndexType.monster,
+            IndexType.race,
+            IndexType.spell);
+
     final JsonIndex index;
     final MarkdownWriter writer;
+    boolean streaming;
+    DependencyGraph graph;
 
     public Json2MarkdownConverter(JsonIndex index, MarkdownWriter writer) {
         this.index = index;
         this.writer = writer;
     }
 
+    /**
+     * @param streaming if true, write each file as soon as it has been converted
+     *        rather than collecting all converted sources first
+     */
+    public Json2MarkdownConverter streaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    /**
+     * @param graph Dependencies recorded by the previous run: entries that have not changed
+     *        are not converted again. Files are written as they are converted (as when streaming).
+     */
+    public Json2MarkdownConverter dependencies(DependencyGraph graph) {
+        this.graph = graph;
+        index.setDependencyGraph(graph);
+        return this;
+    }
+
     public Json2MarkdownConverter writeAll() {
-        return writeFiles(List.of(
-                IndexType.background,
-                IndexType.classtype,
-                IndexType.deity,
-                IndexType.feat,
-                IndexType.item,
-                IndexType.monster,
-                IndexType.race,
-                IndexType.spell));
+        return writeFiles(FILE_TYPES);
     }
 
     public Json2MarkdownConverter writeFiles(IndexType type) {
@@ -46,37 +77,25 @@ public class Json2MarkdownConverter {
             throw new IllegalStateException("Index must be prepared before writing files");
         }
 
-        List<QuteSource> sources = new ArrayList<>();
+        List<Entry<String, JsonNode>> entries = new ArrayList<>();
         for (Entry<String, JsonNode> e : index.includedEntries()) {
             IndexType nodeType = IndexType.getTypeFromKey(e.getKey());
-            JsonNode jsonSource = e.getValue();
-
             if (types.contains(IndexType.race) && nodeType == IndexType.subrace) {
                 // include these, too
             } else if (!types.contains(nodeType)) {
                 continue;
             }
+            entries.add(e);
+        }
 
-            if (nodeType == IndexType.classtype) {
-                Json2QuteClass jsonClass = new Json2QuteClass(index, nodeType, jsonSource);
-                QuteSource converted = jsonClass.build();
-                if (converted != null) {
-                    sources.add(converted);
-                    sources.addAll(jsonClass.buildSubclasses());
-                }
-            } else if (nodeType == IndexType.race || nodeType == IndexType.subrace) {
-                QuteSource converted = new Json2QuteRace(index, nodeType, jsonSource).build();
-                if (converted != null) {
-                    sources.add(converted);
-                }
-            } else {
-                QuteSource converted = json2qute(nodeType, jsonSource);
-                if (converted != null) {
-                    sources.add(converted);
-                }
-            }
+        if (streaming || graph != null) {
+            return streamFiles(entries);
         }
 
+        // Convert entries concurrently; results are kept in index order
+        List<QuteSource> sources = new ArrayList<>();
+        index.tui().parallel(entries, this::convert).forEach(sources::addAll);
+
         writer.writeFiles(sources, index.compendiumPath());
 
         List<ImageRef> images = sources.stream()
@@ -85,20 +104,160 @@ public class Json2MarkdownConverter {
         return this;
     }
 
-    private QuteSource json2qute(IndexType type, JsonNode jsonSource) {
+    private Json2MarkdownConverter streamFiles(List<Entry<String, JsonNode>> entries) {
+        MarkdownWriter.StreamingWriter stream = writer.streaming(index.compendiumPath());
+
+        // Convert and write entries concurrently; only image references are retained
+        List<Integer> positions = IntStream.range(0, entries.size()).boxed().collect(Collectors.toList());
+        List<ImageRef> images = new ArrayList<>();
+        index.tui().parallel(positions, i -> {
+            Entry<String, JsonNode> e = entries.get(i);
+            // order by entry, then by position within the entry (class before subclasses)
+            long order = (long) i << 32;
+
+            // Background traits are collected while converting: always convert backgrounds
+            boolean tracked = graph != null && IndexType.getTypeFromKey(e.getKey()) != IndexType.background;
+            if (tracked) {
+                List<DependencyGraph.Output> kept = graph.unchanged(e.getKey());
+                if (kept != null) {
+                    for (int j = 0; j < kept.size(); j++) {
+                        stream.keep(order | j, kept.get(j).fileMap(), kept.get(j).key);
+                    }
+                    return List.<ImageRef> of();
+                }
+                graph.startRecording(e.getKey());
+            }
+
+            List<DependencyGraph.Output> outputs = null;
+            List<ImageRef> refs = new ArrayList<>();
+            try {
+                List<QuteSource> sources = convert(e);
+                outputs = new ArrayList<>(sources.size());
+                for (int j = 0; j < sources.size(); j++) {
+                    QuteSource qs = sources.get(j);
+                    FileMap fileMap = stream.write(order | j, qs);
+                    if (tracked) {
+                        outputs.add(graph.output(qs, fileMap));
+                    }
+                    refs.addAll(qs.images());
+                }
+            } finally {
+                if (tracked) {
+                    graph.stopRecording(e.getKey(), outputs);
+                }
+            }
+            return refs;
+        }).forEach(images::addAll);
+
+        Set<String> conflicts = stream.finish();
+        if (graph != null) {
+            graph.forget(conflicts);
+        }
+
+        index.tui().copyImages(images);
+        return this;
+    }
+
+    /**
+     * Convert a single entry, e.g. to render it on request.
+     *
+     * @param key Index key of an included entry
+     * @return converted sources (a class is converted with its subclasses; a subclass
+     *         is converted with its class, and returned alone),
+     *         or an empty list if the entry is not included or is not written to a file
+     */
+    public List<QuteSource> convert(String key) {
+        if (index.notPrepared()) {
+            throw new IllegalStateException("Index must be prepared before converting entries");
+        }
+        // Keys are parsed (and kept) only if they are in the index
+        JsonNode node = index.getNode(key);
+        if (node == null) {
+            return List.of();
+        }
+        IndexType nodeType = IndexType.getTypeFromKey(key);
+        if (nodeType == IndexType.subclass) {
+            // subclass|name|class|class source|
+            IndexKey k = IndexKey.of(key);
+            String classKey = index.getAliasOrDefault(index.getClassKey(k.field(2), k.field(3)));
+            JsonNode classNode = index.getNode(classKey);
+            if (classNode == null) {
+                return List.of();
+            }
+            return convert(Map.entry(classKey, classNode)).stream()
+                    .filter(qs -> key.equals(qs.key()))
+                    .collect(Collectors.toList());
+        }
+        if (!FILE_TYPES.contains(nodeType) && nodeType != IndexType.subrace) {
+            return List.of();
+        }
+        return convert(Map.entry(key, node));
+    }
+
+    List<QuteSource> convert(Entry<String, JsonNode> e) {
+        IndexType nodeType = IndexType.getTypeFromKey(e.getKey());
+        RunMetrics.Timer timer = index.tui().metrics().start(RunMetrics.CONVERT, nodeType);
+        EntryProfiler.Sample sample = index.tui().profiler().start(e.getKey(), EntryProfiler.CONVERT);
+        try {
+            return convert(e.getKey(), nodeType, e.getValue());
+        } finally {
+            sample.stop();
+            timer.stop();
+        }
+    }
+
+    List<QuteSource> convert(String key, IndexType nodeType, JsonNode jsonSource) {
+        List<QuteSource> sources = new ArrayList<>();
+
+        if (nodeType == IndexType.classtype) {
+            Json2QuteClass jsonClass = new Json2QuteClass(index, nodeType, jsonSource);
+            QuteSource converted = build(key, nodeType, jsonClass::build);
+            if (converted != null) {
+                sources.add(converted);
+                sources.addAll(build(key, IndexType.subclass, jsonClass::buildSubclasses));
+            }
+        } else if (nodeType == IndexType.race || nodeType == IndexType.subrace) {
+            Json2QuteRace jsonRace = new Json2QuteRace(index, nodeType, jsonSource);
+            QuteSource converted = build(key, nodeType, jsonRace::build);
+            if (converted != null) {
+                sources.add(converted);
+            }
+        } else {
+            Json2QuteCommon json2qute = json2qute(nodeType, jsonSource);
+            QuteSource converted = build(key, nodeType, json2qute::build);
+            if (converted != null) {
+                sources.add(converted);
+            }
+        }
+        return sources;
+    }
+
+    /** Build, and record a flight recorder event for the entry (if recording) */
+    private <T> T build(String key, IndexType type, Supplier<T> build) {
+        FlightEvents.Convert event = FlightEvents.convert();
+        T result = build.get();
+        if (event != null && event.shouldCommit()) {
+            event.key = key;
+            event.type = type.name();
+            event.commit();
+        }
+        return result;
+    }
+
+    private Json2QuteCommon json2qute(IndexType type, JsonNode jsonSource) {
         switch (type) {
             case background:
-                return new Json2QuteBackground(index, type, jsonSource).build();
+                return new Json2QuteBackground(index, type, jsonSource);
             case deity:
-                return new Json2QuteDeity(index, type, jsonSource).build();
+                return new Json2QuteDeity(index, type, jsonSource);
             case feat:
-                return new Json2QuteFeat(index, type, jsonSource).build();
+                return new Json2QuteFeat(index, type, jsonSource);
             case item:
-                return new Json2QuteItem(index, type, jsonSource).build();
+                return new Json2QuteItem(index, type, jsonSource);
             case monster:
-                return new Json2QuteMonster(index, type, jsonSource).build();
+                return new Json2QuteMonster(index, type, jsonSource);
             case spell:
-                return new Json2QuteSpell(index, type, jsonSource).build();
+                return new Json2QuteSpell(index, type, jsonSource);
             default:
                 throw new IllegalArgumentException("Unsupported type " + type);
         }
@@ -112,6 +271,7 @@ public class Json2MarkdownConverter {
         List<QuteNote> tables = new ArrayList<>();
         List<QuteNote> variants = new ArrayList<>();
 
+        RunMetrics.Timer timer = index.tui().metrics().start(RunMetrics.CONVERT, "notes");
         for (Entry<String, JsonNode> entry : index.getRules().entrySet()) {
             String key = entry.getKey();
             JsonNode node = entry.getValue();
@@ -179,10 +339,11 @@ public class Json2MarkdownConverter {
         Path rulesPath = index.rulesPath();
         Path compendiumPath = index.compendiumPath();
 
-        if (!Json2QuteBackground.traits.isEmpty()) {
+        if (!index.backgroundTraits.isEmpty()) {
             List<QuteNote> notes = new BackgroundTraits2Note(index).buildNotes();
             tables.addAll(notes);
         }
+        timer.stop(adventures.size() + books.size() + names.size() + rules.size() + tables.size() + variants.size(), 0);
         if (!names.isEmpty()) {
             writer.writeNames(compendiumPath.resolve("tables/"), names);
         }
@@ -235,9 +396,11 @@ public class Json2MarkdownConverter {
             index.tui().errorf("Unable to find metadata for %s", indexKey);
             return;
         }
+        EntryProfiler.Sample sample = index.tui().profiler().start(indexKey, EntryProfiler.CONVERT);
         String title = index.replaceText(metadata.get("name").asText());
         Map<String, QuteNote> contents = new Sourceless2QuteNote(index, metadata, title).buildReference(element.get("data"));
         notes.putAll(contents);
+        sample.stop();
     }
 
     private void addNames(List<QuteName> names, String key, JsonNode element) {
@@ -1,9 +1,7 @@
 package dev.ebullient.json5e.tools5e;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
@@ -12,11 +10,6 @@ import dev.ebullient.json5e.qute.QuteSource;
 
 public class Json2QuteBackground extends Json2QuteCommon {
 
-    public static final Set<String> traits = new HashSet<>();
-    public static final Set<String> ideals = new HashSet<>();
-    public static final Set<String> bonds = new HashSet<>();
-    public static final Set<String> flaws = new HashSet<>();
-
     final String backgroundName;
 
     Json2QuteBackground(JsonIndex index, IndexType type, JsonNode jsonNode) {
@@ -153,7 +153,7 @@ public class Json2QuteClass extends Json2QuteCommon {
         if (!node.has(field)) {
             return;
         }
-        ArrayNode classTableGroups = node.withArray(field);
+        ArrayNode classTableGroups = arrayOf(node, field);
 
         List<List<String>> row_levels = new ArrayList<>(21);
         for (int i = 0; i < 21; i++) {
@@ -167,7 +167,7 @@ public class Json2QuteClass extends Json2QuteCommon {
 
         classTableGroups.forEach(table -> {
             // Headings
-            table.withArray("colLabels").forEach(c -> {
+            arrayOf(table, "colLabels").forEach(c -> {
                 String label = c.asText();
                 if (label.contains("|spells|")) {
                     row_levels.get(0).add(
@@ -178,13 +178,13 @@ public class Json2QuteClass extends Json2QuteCommon {
             });
             // Values
             if (table.has("rows")) {
-                ArrayNode rows = table.withArray("rows");
+                ArrayNode rows = arrayOf(table, "rows");
                 for (int i = 0; i < rows.size(); i++) {
                     int level = i + 1;
                     rows.get(i).forEach(c -> row_levels.get(level).add(columnValue(c)));
                 }
             } else if (table.has("rowsSpellProgression")) {
-                ArrayNode rows = table.withArray("rowsSpellProgression");
+                ArrayNode rows = arrayOf(table, "rowsSpellProgression");
                 for (int i = 0; i < rows.size(); i++) {
                     int level = i + 1;
                     rows.get(i).forEach(c -> row_levels.get(level).add(columnValue(c)));
@@ -267,7 +267,7 @@ public class Json2QuteClass extends Json2QuteCommon {
         startMulticlass.add(String.format("To multiclass as a %s, you must meet the following prerequisites:", getName()));
 
         maybeAddBlankLine(startMulticlass);
-        JsonNode requirements = multiclassing.with("requirements");
+        JsonNode requirements = multiclassing.path("requirements");
         if (requirements.has("or")) {
             List<String> options = new ArrayList<>();
             requirements.get("or").get(0).fields().forEachRemaining(ability -> options.add(String.format("%s %s",
@@ -337,7 +337,7 @@ public class Json2QuteClass extends Json2QuteCommon {
             sc.name = sc.sources.getName();
 
             // Subclass features
-            s.withArray("subclassFeatures").forEach(f -> {
+            arrayOf(s, "subclassFeatures").forEach(f -> {
                 ClassFeature scf = lookupSubclassFeature(f.asText(),
                         sc.sources.primarySource());
                 if (scf != null) {
@@ -354,7 +354,7 @@ public class Json2QuteClass extends Json2QuteCommon {
     }
 
     void findClassFeatures() {
-        for (Iterator<JsonNode> i = node.withArray("classFeatures").elements(); i.hasNext();) {
+        for (Iterator<JsonNode> i = arrayOf(node, "classFeatures").elements(); i.hasNext();) {
             JsonNode f = i.next();
             if (f.isTextual()) {
                 lookupClassFeature(f.asText());
@@ -395,7 +395,7 @@ public class Json2QuteClass extends Json2QuteCommon {
     public void findClassProficiencies() {
         if (node.has("proficiency")) {
             List<String> savingThrows = new ArrayList<>();
-            node.withArray("proficiency").forEach(n -> savingThrows.add(asAbilityEnum(n)));
+            arrayOf(node, "proficiency").forEach(n -> savingThrows.add(asAbilityEnum(n)));
             put("saves", savingThrows);
         }
 
@@ -426,7 +426,7 @@ public class Json2QuteClass extends Json2QuteCommon {
     }
 
     void sidekickProficiencies(JsonNode sidekickClassFeature) {
-        sidekickClassFeature.withArray("entries").forEach(e -> {
+        arrayOf(sidekickClassFeature, "entries").forEach(e -> {
             String line = e.asText();
             if (line.contains("saving throw")) {
                 //"The sidekick gains proficiency in one saving throw of your choice: Dexterity, Intelligence, or Charisma.",
@@ -486,7 +486,7 @@ public class Json2QuteClass extends Json2QuteCommon {
     }
 
     int classSkills(JsonNode source, Collection<String> list, CompendiumSources sources) {
-        ArrayNode skillNode = source.withArray("skills");
+        ArrayNode skillNode = arrayOf(source, "skills");
         if (skillNode.size() > 1) {
             tui().errorf("Multivalue skill array in %s: %s", sources, source.toPrettyString());
         }
@@ -512,14 +512,14 @@ public class Json2QuteClass extends Json2QuteCommon {
                 ? choose.get("count").asInt()
                 : 1;
 
-        ArrayNode from = choose.withArray("from");
+        ArrayNode from = arrayOf(choose, "from");
         from.forEach(s -> skillList.add(s.asText()));
         return count;
     }
 
     List<String> defaultEquipment(JsonNode equipment) {
         List<String> text = new ArrayList<>();
-        appendList(text, equipment.withArray("default"));
+        appendList(text, arrayOf(equipment, "default"));
         return text;
     }
 
@@ -589,7 +589,7 @@ public class Json2QuteClass extends Json2QuteCommon {
         public ClassFeature(String lookup, JsonNode featureJson, IndexType type, String heading, String parentSource) {
             String level = lookup.replaceAll(".*\\|(\\d+)\\|?.*", "$1");
 
-            CompendiumSources featureSources = new CompendiumSources(type, lookup, featureJson);
+            CompendiumSources featureSources = new CompendiumSources(index().sourceIds(), type, lookup, featureJson);
             String name = decoratedFeatureTypeName(featureSources, featureJson);
             if (!featureNames.add(name)) {
                 // A class feature already uses this name. Add the level.
@@ -681,7 +681,7 @@ public class Json2QuteClass extends Json2QuteCommon {
 
                         // Recurse...
                         ArrayNode replaceEntries = (ArrayNode) copyNode(refJson.get("entries"));
-                        replaceNodes(refJson.withArray("entries"), replaceEntries, refSource, refKey);
+                        replaceNodes(arrayOf(refJson, "entries"), replaceEntries, refSource, refKey);
 
                         ObjectNode replace = (ObjectNode) copyNode(copy.get(i));
                         replace.remove(refField);
@@ -697,14 +697,14 @@ public class Json2QuteClass extends Json2QuteCommon {
                         copy.set(i, replace);
                     } else if (typeField.equals("options") || typeField.equals("entries")) {
                         ArrayNode replaceEntries = (ArrayNode) copyNode(copy.get(i).get("entries"));
-                        replaceNodes(copy.get(i).withArray("entries"), replaceEntries, parentSource, parentKey);
+                        replaceNodes(arrayOf(copy.get(i), "entries"), replaceEntries, parentSource, parentKey);
 
                         ObjectNode replace = (ObjectNode) copyNode(copy.get(i));
                         replace.set("entries", replaceEntries);
                         copy.set(i, replace);
                     } else if (typeField.equals("list")) {
                         ArrayNode replaceEntries = (ArrayNode) copyNode(copy.get(i).get("items"));
-                        replaceNodes(copy.get(i).withArray("items"), replaceEntries, parentSource, parentKey);
+                        replaceNodes(arrayOf(copy.get(i), "items"), replaceEntries, parentSource, parentKey);
 
                         ObjectNode replace = (ObjectNode) copyNode(copy.get(i));
                         replace.set("items", replaceEntries);
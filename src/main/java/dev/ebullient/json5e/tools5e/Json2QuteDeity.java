@@ -30,7 +30,7 @@ public class Json2QuteDeity extends Json2QuteCommon {
 
         List<String> domains = new ArrayList<>();
         if (node.has("domains")) {
-            node.withArray("domains").forEach(d -> {
+            arrayOf(node, "domains").forEach(d -> {
                 String domain = d.asText();
                 tags.add("domain/" + slugify(domain));
                 domains.add(domain);
@@ -54,7 +54,7 @@ public class Json2QuteDeity extends Json2QuteCommon {
     }
 
     String dietyAlignment() {
-        ArrayNode a1 = node.withArray("alignment");
+        ArrayNode a1 = arrayOf(node, "alignment");
         if (a1.size() == 0) {
             return "Unaligned";
         }
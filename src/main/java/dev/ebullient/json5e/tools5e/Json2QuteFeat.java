@@ -35,14 +35,14 @@ public class Json2QuteFeat extends Json2QuteCommon {
     String listPrerequisites() {
         List<String> prereqs = new ArrayList<>();
         JsonIndex index = index();
-        node.withArray("prerequisite").forEach(entry -> {
+        arrayOf(node, "prerequisite").forEach(entry -> {
             if (entry.has("level")) {
                 prereqs.add(levelToText(entry.get("level")));
             }
-            entry.withArray("race").forEach(r -> prereqs.add(index.lookupName(IndexType.race, raceToText(r))));
+            arrayOf(entry, "race").forEach(r -> prereqs.add(index.lookupName(IndexType.race, raceToText(r))));
 
             Map<String, List<String>> abilityScores = new HashMap<>();
-            entry.withArray("ability").forEach(a -> a.fields().forEachRemaining(score -> abilityScores.computeIfAbsent(
+            arrayOf(entry, "ability").forEach(a -> a.fields().forEachRemaining(score -> abilityScores.computeIfAbsent(
                     score.getValue().asText(),
                     k -> new ArrayList<>()).add(SkillOrAbility.format(score.getKey()))));
             abilityScores.forEach(
@@ -57,26 +57,26 @@ public class Json2QuteFeat extends Json2QuteCommon {
             if (entry.has("patron")) {
                 prereqs.add(entry.get("patron").asText() + " Patron");
             }
-            entry.withArray("spell").forEach(s -> {
+            arrayOf(entry, "spell").forEach(s -> {
                 String text = s.asText().replaceAll("#c", "");
                 prereqs.add(index.lookupName(IndexType.spell, text));
             });
-            entry.withArray("feat").forEach(f -> prereqs
+            arrayOf(entry, "feat").forEach(f -> prereqs
                     .add(featPattern.matcher(f.asText())
                             .replaceAll(m -> index.lookupName(IndexType.feat, m.group(1)))));
-            entry.withArray("feature").forEach(f -> prereqs.add(featPattern.matcher(f.asText())
+            arrayOf(entry, "feature").forEach(f -> prereqs.add(featPattern.matcher(f.asText())
                     .replaceAll(m -> index.lookupName(IndexType.optionalfeature, m.group(1)))));
-            entry.withArray("background")
+            arrayOf(entry, "background")
                     .forEach(f -> prereqs
                             .add(index.lookupName(IndexType.background, f.get("name").asText()) + " background"));
-            entry.withArray("item").forEach(i -> prereqs.add(index.lookupName(IndexType.item, i.asText())));
+            arrayOf(entry, "item").forEach(i -> prereqs.add(index.lookupName(IndexType.item, i.asText())));
 
             if (entry.has("psionics")) {
                 prereqs.add("Psionics");
             }
 
             List<String> profs = new ArrayList<>();
-            entry.withArray("proficiency").forEach(f -> f.fields().forEachRemaining(field -> {
+            arrayOf(entry, "proficiency").forEach(f -> f.fields().forEachRemaining(field -> {
                 String key = field.getKey();
                 if ("weapon".equals(key)) {
                     key += "s";
@@ -100,7 +100,7 @@ public class Json2QuteItem extends Json2QuteCommon {
         List<String> text = new ArrayList<>(getFluff(IndexType.itemfluff, "##"));
         if (node.has("entries")) {
             maybeAddBlankLine(text);
-            node.withArray("entries").forEach(entry -> {
+            arrayOf(node, "entries").forEach(entry -> {
                 if (entry.isTextual()) {
                     String input = entry.asText();
                     if (input.startsWith("{#itemEntry ")) {
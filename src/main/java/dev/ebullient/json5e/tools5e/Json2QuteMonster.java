@@ -106,7 +106,7 @@ public class Json2QuteMonster extends Json2QuteCommon {
                 monsterSpellcasting(),
                 getFluffDescription(IndexType.monsterfluff, null),
                 environment,
-                new ArrayList<>(sources.bookSources),
+                sources.getBookSources(),
                 getToken(),
                 tags);
     }
@@ -125,7 +125,7 @@ public class Json2QuteMonster extends Json2QuteCommon {
         // We have an object: type + tags
         type = typeNode.get("type").asText();
         List<String> tags = new ArrayList<>();
-        typeNode.withArray("tags").forEach(tag -> {
+        arrayOf(typeNode, "tags").forEach(tag -> {
             if (tag.isTextual()) {
                 tags.add(tag.asText());
             } else {
@@ -156,14 +156,14 @@ public class Json2QuteMonster extends Json2QuteCommon {
                         if (acValue.has("special")) {
                             details.add(acValue.get("special").asText());
                         } else if (acValue.has("from")) {
-                            details.add(joinAndReplace(acValue.withArray("from")));
+                            details.add(joinAndReplace(arrayOf(acValue, "from")));
                         }
                     }
                 } else { // nth time: conditional AC. Append to acText
                     StringBuilder value = new StringBuilder();
                     value.append(acValue.get("ac").asText());
                     if (acValue.has("from")) {
-                        value.append(" from ").append(joinAndReplace(acValue.withArray("from")));
+                        value.append(" from ").append(joinAndReplace(arrayOf(acValue, "from")));
                     }
                     if (acValue.has("condition")) {
                         value.append(" ").append(acValue.get("condition").asText());
@@ -292,7 +292,7 @@ public class Json2QuteMonster extends Json2QuteCommon {
         if (node.has(field) && node.get(field).isArray()) {
             List<String> immunities = new ArrayList<>();
             StringBuilder separator = new StringBuilder();
-            node.withArray(field).forEach(immunity -> {
+            arrayOf(node, field).forEach(immunity -> {
                 if (immunity.isTextual()) {
                     immunities.add(immunity.asText());
                 } else {
@@ -318,7 +318,7 @@ public class Json2QuteMonster extends Json2QuteCommon {
     }
 
     String monsterAlignment() {
-        ArrayNode a1 = node.withArray("alignment");
+        ArrayNode a1 = arrayOf(node, "alignment");
         if (a1.size() == 0) {
             return "Unaligned";
         }
@@ -372,12 +372,12 @@ public class Json2QuteMonster extends Json2QuteCommon {
             }
             if (scNode.has("daily")) {
                 spellcasting.daily = new TreeMap<>();
-                scNode.with("daily").fields()
+                scNode.get("daily").fields()
                         .forEachRemaining(f -> spellcasting.daily.put(f.getKey(), getSpells(f.getValue())));
             }
             if (scNode.has("spells")) {
                 spellcasting.spells = new TreeMap<>();
-                scNode.with("spells").fields().forEachRemaining(f -> {
+                scNode.get("spells").fields().forEachRemaining(f -> {
                     JsonNode spellNode = f.getValue();
                     Spells spells = new Spells();
                     if (spellNode.isArray()) {
@@ -447,7 +447,7 @@ public class Json2QuteMonster extends Json2QuteCommon {
         }
 
         List<Trait> traits = new ArrayList<>();
-        node.withArray(field).forEach(e -> {
+        arrayOf(node, field).forEach(e -> {
             String name = null;
             if (e.has("name")) {
                 name = replaceText(e.get("name").asText()).replaceAll(":$", "");
@@ -41,7 +41,7 @@ public class Json2QuteRace extends Json2QuteCommon {
 
     String creatureTypes() {
         List<String> types = new ArrayList<>();
-        node.withArray("creatureTypes").elements()
+        arrayOf(node, "creatureTypes").elements()
                 .forEachRemaining(x -> types.add(x.asText()));
         return types.isEmpty()
                 ? null
@@ -55,7 +55,7 @@ public class Json2QuteRace extends Json2QuteCommon {
                 JsonNode ability = spells.get("ability");
                 if (ability.has("choose")) {
                     List<String> abilities = new ArrayList<>();
-                    ability.withArray("choose")
+                    arrayOf(ability, "choose")
                             .forEach(x -> abilities.add(SkillOrAbility.format(x.asText())));
                     return "Choose one of " + String.join(", ", abilities);
                 } else {
@@ -73,7 +73,7 @@ public class Json2QuteRace extends Json2QuteCommon {
                 return "Choose one of: (a) Choose any +2, choose any other +1; (b) Choose any +1, choose any other +1, choose any other +1";
             }
         }
-        JsonNode ability = node.withArray("ability");
+        JsonNode ability = arrayOf(node, "ability");
         if (ability.isEmpty()) {
             return "None";
         }
@@ -100,7 +100,7 @@ public class Json2QuteRace extends Json2QuteCommon {
         int amount = skillBonus.has("amount")
                 ? skillBonus.get("amount").asInt()
                 : 1;
-        ArrayNode from = skillBonus.withArray("from");
+        ArrayNode from = arrayOf(skillBonus, "from");
         List<String> choices = new ArrayList<>();
         from.forEach(s -> choices.add(SkillOrAbility.format(s.asText())));
         return String.format("Apply %s to %s of %s",
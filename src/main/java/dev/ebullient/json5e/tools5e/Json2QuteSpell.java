@@ -98,7 +98,7 @@ public class Json2QuteSpell extends Json2QuteCommon {
 
     String spellDuration() {
         StringBuilder result = new StringBuilder();
-        JsonNode durations = node.withArray("duration");
+        JsonNode durations = arrayOf(node, "duration");
         if (durations.size() > 0) {
             addDuration(durations.get(0), result);
         }
@@ -121,7 +121,7 @@ public class Json2QuteSpell extends Json2QuteCommon {
                 break;
             case "permanent":
                 result.append("Until dispelled");
-                if (element.withArray("ends").size() > 1) {
+                if (arrayOf(element, "ends").size() > 1) {
                     result.append(" or triggered");
                 }
                 break;
@@ -194,7 +194,7 @@ public class Json2QuteSpell extends Json2QuteCommon {
     }
 
     String spellCastingTime() {
-        JsonNode time = node.withArray("time").get(0);
+        JsonNode time = arrayOf(node, "time").get(0);
         return String.format("%s %s",
                 time.get("number").asText(),
                 time.get("unit").asText());
@@ -206,14 +206,14 @@ public class Json2QuteSpell extends Json2QuteCommon {
             return List.of();
         }
         Set<String> classes = new TreeSet<>();
-        classesNode.withArray("fromClassList").forEach(c -> {
+        arrayOf(classesNode, "fromClassList").forEach(c -> {
             String className = c.get("name").asText();
             String classSource = c.get("source").asText();
             if (includeClass(className, classSource)) {
                 classes.add(className);
             }
         });
-        classesNode.withArray("fromClassListVariant").forEach(c -> {
+        arrayOf(classesNode, "fromClassListVariant").forEach(c -> {
             String definedInSource = c.get("definedInSource").asText();
             String className = c.get("name").asText();
             String classSource = c.get("source").asText();
@@ -221,7 +221,7 @@ public class Json2QuteSpell extends Json2QuteCommon {
                 classes.add(className);
             }
         });
-        classesNode.withArray("fromSubclass").forEach(s -> {
+        arrayOf(classesNode, "fromSubclass").forEach(s -> {
             String className = s.get("class").get("name").asText().trim();
             if (classes.contains(className)) {
                 return;
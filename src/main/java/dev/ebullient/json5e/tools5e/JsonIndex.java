@@ -4,14 +4,22 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -19,10 +27,11 @@ import java.util.stream.Stream;
 import com.fasterxml.jackson.core.util.DefaultIndenter;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.io.RunMetrics;
 
 public class JsonIndex implements JsonSource {
     private static final Path CWD = Path.of(".");
@@ -44,22 +53,41 @@ public class JsonIndex implements JsonSource {
     private final boolean allSources;
     private final Map<String, JsonNode> rules = new HashMap<>();
     private final Set<String> allowedSources = new HashSet<>();
-    private final Set<String> includedKeys = new HashSet<>();
-    private final Set<String> excludedKeys = new HashSet<>();
-    private final Set<Pattern> excludedPatterns = new HashSet<>();
+    private final KeyMatcher keyRules = new KeyMatcher();
 
     private final Map<String, JsonNode> nodeIndex = new HashMap<>();
     private final Map<String, String> aliases = new HashMap<>();
     private final Map<String, String> classRoot = new HashMap<>();
     private Map<String, JsonNode> variantIndex = null;
     private Map<String, JsonNode> filteredIndex = null;
+    private DependencyGraph graph = null;
+
+    // Secondary indexes (lists of keys, in index order), built when the index is prepared
+    // origin keys by type
+    private Map<IndexType, List<String>> typeIndex = null;
+    // origin keys of subraces by race: race name|race source
+    private Map<String, List<String>> subraceIndex = null;
+    // included keys by class: type|class name|class source
+    private Map<String, List<String>> classIndex = null;
+    // included keys by name: type|name
+    private Map<String, List<String>> nameIndex = null;
+    // aliases by target key
+    private Map<String, List<String>> reverseAliases = null;
 
     private final Set<String> srdKeys = new HashSet<>();
     private final Set<String> familiarKeys = new HashSet<>();
     private final Set<String> includeGroups = new HashSet<>();
-    private final Set<String> missingSourceName = new HashSet<>();
+    private final Set<String> missingSourceName = ConcurrentHashMap.newKeySet();
 
-    private final Map<JsonNode, CompendiumSources> nodeToSources = new HashMap<>();
+    // Sources are constructed on demand by (concurrent) converters
+    private final SourcesRegistry nodeToSources;
+
+    // Background tables, populated while converting backgrounds (possibly concurrently);
+    // sorted so the generated tables do not depend on conversion order
+    final Set<String> backgroundTraits = new ConcurrentSkipListSet<>();
+    final Set<String> backgroundIdeals = new ConcurrentSkipListSet<>();
+    final Set<String> backgroundBonds = new ConcurrentSkipListSet<>();
+    final Set<String> backgroundFlaws = new ConcurrentSkipListSet<>();
 
     private String rulesRoot = "/rules/";
     private Path rulesPath = Path.of("rules/");
@@ -67,7 +95,8 @@ public class JsonIndex implements JsonSource {
     private String compendiumRoot = "/compendium/";
     private Path compendiumPath = Path.of("compendium/");
 
-    final JsonSourceCopier copier = new JsonSourceCopier(this);
+    final JsonSourceCopier copier;
+    final LinkCache links = new LinkCache();
 
     Pattern classFeaturePattern;
     Pattern subclassFeaturePattern;
@@ -75,9 +104,26 @@ public class JsonIndex implements JsonSource {
     final BiConsumer<String, JsonNode> fileConsumer = this::importTree;
 
     public JsonIndex(List<String> sources, Json5eTui tui) {
+        this(sources, tui, null);
+    }
+
+    /**
+     * Create an index to import input files again (watch mode).
+     * <p>
+     * Files that have not changed should be imported as the same (parsed) trees: what was
+     * derived from their nodes by the previous index is reused. Sources are kept by node,
+     * and a resolved copy is reused if the nodes it was merged from have not changed.
+     *
+     * @param sources Sources to include
+     * @param tui Json5eTui
+     * @param previous Previous index (prepared from an earlier version of the input files), or null
+     */
+    public JsonIndex(List<String> sources, Json5eTui tui, JsonIndex previous) {
         staticInstance = this;
 
         this.tui = tui;
+        this.nodeToSources = previous == null ? new SourcesRegistry() : previous.nodeToSources;
+        this.copier = new JsonSourceCopier(this, previous == null ? null : previous.copier);
 
         this.allowedSources.addAll(sources.stream().map(String::toLowerCase).collect(Collectors.toList()));
         this.allSources = allowedSources.contains("*");
@@ -112,41 +158,41 @@ public class JsonIndex implements JsonSource {
         addRulesIfPresent(node, "variantrule");
 
         // Reference/Internal Types
-        node.withArray("backgroundFluff").forEach(x -> addToIndex(IndexType.backgroundfluff, x));
-        node.withArray("itemEntry").forEach(x -> addToIndex(IndexType.itementry, x));
-        node.withArray("itemFluff").forEach(x -> addToIndex(IndexType.itemfluff, x));
-        node.withArray("monsterFluff").forEach(x -> addToIndex(IndexType.monsterfluff, x));
-        node.withArray("raceFluff").forEach(x -> addToIndex(IndexType.racefluff, x));
-        node.withArray("spellFluff").forEach(x -> addToIndex(IndexType.spellfluff, x));
-        node.withArray("subrace").forEach(x -> addToIndex(IndexType.subrace, x));
-        node.withArray("trait").forEach(x -> addToIndex(IndexType.trait, x));
-        node.withArray("legendaryGroup").forEach(x -> addToIndex(IndexType.legendarygroup, x));
-        node.withArray("subclass").forEach(x -> addToIndex(IndexType.subclass, x));
-        node.withArray("classFeature").forEach(x -> addToIndex(IndexType.classfeature, x));
-        node.withArray("optionalfeature").forEach(x -> addToIndex(IndexType.optionalfeature, x));
-        node.withArray("subclassFeature").forEach(x -> addToIndex(IndexType.subclassfeature, x));
-        // TODO: node.withArray("variant").forEach(x -> addToIndex(IndexType.itemvariant, x));
+        node.path("backgroundFluff").forEach(x -> addToIndex(IndexType.backgroundfluff, x));
+        node.path("itemEntry").forEach(x -> addToIndex(IndexType.itementry, x));
+        node.path("itemFluff").forEach(x -> addToIndex(IndexType.itemfluff, x));
+        node.path("monsterFluff").forEach(x -> addToIndex(IndexType.monsterfluff, x));
+        node.path("raceFluff").forEach(x -> addToIndex(IndexType.racefluff, x));
+        node.path("spellFluff").forEach(x -> addToIndex(IndexType.spellfluff, x));
+        node.path("subrace").forEach(x -> addToIndex(IndexType.subrace, x));
+        node.path("trait").forEach(x -> addToIndex(IndexType.trait, x));
+        node.path("legendaryGroup").forEach(x -> addToIndex(IndexType.legendarygroup, x));
+        node.path("subclass").forEach(x -> addToIndex(IndexType.subclass, x));
+        node.path("classFeature").forEach(x -> addToIndex(IndexType.classfeature, x));
+        node.path("optionalfeature").forEach(x -> addToIndex(IndexType.optionalfeature, x));
+        node.path("subclassFeature").forEach(x -> addToIndex(IndexType.subclassfeature, x));
+        // TODO: node.path("variant").forEach(x -> addToIndex(IndexType.itemvariant, x));
 
         // Output Types
-        node.withArray("background").forEach(x -> addToIndex(IndexType.background, x));
-        node.withArray("class").forEach(x -> addToIndex(IndexType.classtype, x));
-        node.withArray("deity").forEach(x -> addToIndex(IndexType.deity, x));
-        node.withArray("feat").forEach(x -> addToIndex(IndexType.feat, x));
-        node.withArray("baseitem").forEach(x -> addToIndex(IndexType.item, x));
-        node.withArray("item").forEach(x -> addToIndex(IndexType.item, x));
-        node.withArray("monster").forEach(x -> addToIndex(IndexType.monster, x));
-        node.withArray("race").forEach(x -> addToIndex(IndexType.race, x));
-        node.withArray("spell").forEach(x -> addToIndex(IndexType.spell, x));
+        node.path("background").forEach(x -> addToIndex(IndexType.background, x));
+        node.path("class").forEach(x -> addToIndex(IndexType.classtype, x));
+        node.path("deity").forEach(x -> addToIndex(IndexType.deity, x));
+        node.path("feat").forEach(x -> addToIndex(IndexType.feat, x));
+        node.path("baseitem").forEach(x -> addToIndex(IndexType.item, x));
+        node.path("item").forEach(x -> addToIndex(IndexType.item, x));
+        node.path("monster").forEach(x -> addToIndex(IndexType.monster, x));
+        node.path("race").forEach(x -> addToIndex(IndexType.race, x));
+        node.path("spell").forEach(x -> addToIndex(IndexType.spell, x));
 
         if (node.has("name") && node.get("name").isArray()) {
-            ArrayNode names = node.withArray("name");
+            JsonNode names = node.get("name");
             if (names.get(0).isObject() && names.get(0).has("tables")) {
                 names.forEach(nt -> rules.put("names-" + slugify(nt.get("name").asText()), nt));
             }
         }
 
-        node.withArray("adventure").forEach(x -> addReferenceToIndex(x, "adventure"));
-        node.withArray("book").forEach(x -> addReferenceToIndex(x, "book"));
+        node.path("adventure").forEach(x -> addReferenceToIndex(x, "adventure"));
+        node.path("book").forEach(x -> addReferenceToIndex(x, "book"));
         if (node.has("data") && !filename.isEmpty()) {
             int slash = filename.indexOf('/');
             int dot = filename.indexOf('.');
@@ -172,16 +218,17 @@ public class JsonIndex implements JsonSource {
         }
         if (type == IndexType.subrace) {
             // {@race Aasimar (Fallen)|VGM}
-            String[] parts = key.split("\\|");
-            String lookupKey = String.format("race|%s (%s)|%s",
-                    parts[2], parts[1], parts[3]).toLowerCase();
+            IndexKey k = IndexKey.of(key);
+            String lookupKey = IndexKey.create(IndexType.race,
+                    k.field(2) + " (" + k.field(1) + ")", k.field(3));
             addAlias(lookupKey, key);
         }
         if (type == IndexType.classtype
                 && !booleanOrDefault(node, "isReprinted", false)) {
-            String[] parts = key.split("\\|");
-            if (!parts[2].contains("ua")) {
-                String lookupKey = String.format("%s|%s|", parts[0], parts[1]);
+            IndexKey k = IndexKey.of(key);
+            // classtype|name|source
+            if (!k.field(2).contains("ua")) {
+                String lookupKey = IndexKey.create(k.type(), k.name(), "");
                 classRoot.put(lookupKey, key);
             }
         }
@@ -194,58 +241,58 @@ public class JsonIndex implements JsonSource {
         }
     }
 
-    void addExcludePattern(String value) {
-        String[] split = value.split("\\|");
-        if (split.length > 1) {
-            for (int i = 0; i < split.length - 1; i++) {
-                if (!split[i].endsWith("\\")) {
-                    split[i] += "\\";
-                }
-            }
-        }
-        excludedPatterns.add(Pattern.compile(String.join("|", split)));
-    }
-
     void addConfigIfPresent(JsonNode node) {
-        node.withArray("from").forEach(x -> updateSources(x.asText().toLowerCase()));
-        node.withArray("include").forEach(x -> includedKeys.add(x.asText()));
-        node.withArray("includeGroups").forEach(x -> includeGroups.add(x.asText()));
-        node.withArray("exclude").forEach(x -> excludedKeys.add(x.asText().toLowerCase()));
-        node.withArray("excludePattern").forEach(x -> addExcludePattern(x.asText().toLowerCase()));
+        node.path("from").forEach(x -> updateSources(x.asText().toLowerCase()));
+        node.path("include").forEach(x -> keyRules.include(x.asText()));
+        node.path("includeGroups").forEach(x -> includeGroups.add(x.asText()));
+        node.path("exclude").forEach(x -> keyRules.exclude(x.asText().toLowerCase()));
+        node.path("excludePattern").forEach(x -> keyRules.excludePattern(x.asText().toLowerCase()));
 
         if (node.has("paths")) {
             node.get("paths").fields().forEachRemaining(e -> {
                 switch (e.getKey()) {
                     case "rules":
-                        rulesRoot = ('/' + e.getValue().asText() + '/')
-                                .replace('\\', '/')
-                                .replaceAll("/+", "/");
-                        if (rulesRoot.equals("/")) {
-                            rulesPath = CWD;
-                        } else {
-                            rulesPath = Path.of(rulesRoot.substring(1));
-                        }
+                        setRulesRoot(e.getValue().asText());
                         break;
                     case "compendium":
-                        compendiumRoot = ('/' + e.getValue().asText() + '/')
-                                .replace('\\', '/')
-                                .replaceAll("/+", "/");
-
-                        if (compendiumRoot.equals("/")) {
-                            compendiumPath = CWD;
-                        } else {
-                            compendiumPath = Path.of(compendiumRoot.substring(1));
-                        }
+                        setCompendiumRoot(e.getValue().asText());
                         break;
                 }
             });
         }
     }
 
+    private void setRulesRoot(String root) {
+        rulesRoot = ('/' + root + '/')
+                .replace('\\', '/')
+                .replaceAll("/+", "/");
+        if (rulesRoot.equals("/")) {
+            rulesPath = CWD;
+        } else {
+            rulesPath = Path.of(rulesRoot.substring(1));
+        }
+    }
+
+    private void setCompendiumRoot(String root) {
+        compendiumRoot = ('/' + root + '/')
+                .replace('\\', '/')
+                .replaceAll("/+", "/");
+
+        if (compendiumRoot.equals("/")) {
+            compendiumPath = CWD;
+        } else {
+            compendiumPath = Path.of(compendiumRoot.substring(1));
+        }
+    }
+
     void addAlias(String key, String alias) {
         if (key.equals(alias)) {
             return;
         }
+        if (filteredIndex != null) {
+            // aliases are read without synchronization once the index is prepared
+            throw new IllegalStateException("Unable to add alias " + key + " after the index has been prepared");
+        }
         String old = aliases.put(key, alias);
         if (old != null && !alias.equals(old)) {
             tui().errorf("Oops! Duplicate simple key: %s -> %s", key, alias);
@@ -253,10 +300,11 @@ public class JsonIndex implements JsonSource {
     }
 
     List<String> getAliasesTo(String targetKey) {
-        return aliases.entrySet().stream()
-                .filter(e -> e.getValue().equals(targetKey))
-                .map(Entry::getKey)
-                .collect(Collectors.toList());
+        if (notPrepared()) {
+            throw new IllegalStateException("Index must be prepared before looking up aliases");
+        }
+        dependsOn("aliases", targetKey);
+        return reverseAliases.getOrDefault(targetKey, List.of());
     }
 
     void addRulesIfPresent(JsonNode node, String rule) {
@@ -281,7 +329,10 @@ public class JsonIndex implements JsonSource {
         if (variantIndex != null || filteredIndex != null) {
             return;
         }
+        RunMetrics.Timer timer = tui.metrics().start(RunMetrics.PREPARE);
         variantIndex = new HashMap<>();
+        keyRules.compile();
+        indexOrigins();
 
         nodeIndex.forEach((key, node) -> {
             // check for / manage copies first.
@@ -312,9 +363,8 @@ public class JsonIndex implements JsonSource {
         });
 
         // Find/Merge deities (this will also exclude based on sources)
-        List<Tuple> deities = findDeities(nodeIndex.entrySet().stream()
-                .filter(e -> IndexType.getTypeFromKey(e.getKey()) == IndexType.deity)
-                .map(e -> new Tuple(e.getKey(), e.getValue()))
+        List<Tuple> deities = findDeities(typeIndex.getOrDefault(IndexType.deity, List.of()).stream()
+                .map(k -> new Tuple(k, nodeIndex.get(k)))
                 .collect(Collectors.toList()));
         deities.forEach(v -> {
             JsonNode old = variantIndex.put(v.key, v.node);
@@ -327,7 +377,45 @@ public class JsonIndex implements JsonSource {
         filteredIndex = variantIndex.entrySet().stream()
                 .filter(e -> !isReprinted(e.getKey(), e.getValue()))
                 .filter(e -> keyIsIncluded(e.getKey(), e.getValue()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
+                        (a, b) -> a, LinkedHashMap::new));
+        indexIncluded();
+        timer.stop(filteredIndex.size(), 0);
+    }
+
+    /** Index origin keys by type, and subraces by race (used to find race variants) */
+    private void indexOrigins() {
+        typeIndex = new EnumMap<>(IndexType.class);
+        subraceIndex = new HashMap<>();
+        nodeIndex.keySet().forEach(key -> {
+            typeIndex.computeIfAbsent(IndexType.getTypeFromKey(key), t -> new ArrayList<>()).add(key);
+        });
+        typeIndex.getOrDefault(IndexType.subrace, List.of()).forEach(key -> {
+            // subrace|name|race name|race source
+            IndexKey k = IndexKey.of(key);
+            if (k.size() == 4 && !k.name().isEmpty()) {
+                subraceIndex.computeIfAbsent(k.field(2) + "|" + k.field(3), x -> new ArrayList<>()).add(key);
+            }
+        });
+    }
+
+    /** Index included keys by class and by name, and aliases by target (once all aliases are known) */
+    private void indexIncluded() {
+        classIndex = new HashMap<>();
+        nameIndex = new HashMap<>();
+        filteredIndex.keySet().forEach(key -> {
+            IndexKey k = IndexKey.of(key);
+            if (k.size() >= 3) {
+                nameIndex.computeIfAbsent(IndexKey.create(k.type(), k.name()), x -> new ArrayList<>()).add(key);
+            }
+            // type|name|class name|class source|...
+            if (k.size() >= 5 && !k.name().isEmpty()) {
+                classIndex.computeIfAbsent(IndexKey.create(k.type(), k.field(2), k.field(3)), x -> new ArrayList<>())
+                        .add(key);
+            }
+        });
+        reverseAliases = new HashMap<>();
+        aliases.forEach((k, v) -> reverseAliases.computeIfAbsent(v, x -> new ArrayList<>()).add(k));
     }
 
     private List<Tuple> findDeities(List<Tuple> allDeities) {
@@ -396,17 +484,18 @@ public class JsonIndex implements JsonSource {
         if (jsonSource.has("reprintedAs")) {
             // "reprintedAs": [ "Deep Gnome|MPMM" ]
             // If any reprinted source is included, skip this in favor of the reprint
-            for (Iterator<JsonNode> i = jsonSource.withArray("reprintedAs").elements(); i.hasNext();) {
+            for (Iterator<JsonNode> i = arrayOf(jsonSource, "reprintedAs").elements(); i.hasNext();) {
                 String reprint = i.next().asText();
-                String[] ra = reprint.split("\\|");
-                if (sourceIncluded(ra[1])) {
+                int pipe = reprint.indexOf('|');
+                String reprintSource = pipe < 0 ? "" : reprint.substring(pipe + 1);
+                if (sourceIncluded(reprintSource)) {
                     IndexType type = IndexType.getTypeFromKey(finalKey);
                     String primarySource = jsonSource.get("source").asText().toLowerCase();
                     String reprintKey = type + "|" + reprint.toLowerCase();
                     if (type == IndexType.subrace && !variantIndex.containsKey(reprintKey)) {
                         reprintKey = IndexType.race + "|" + reprint.toLowerCase();
                         if (!variantIndex.containsKey(reprintKey)) {
-                            reprintKey = finalKey.replace(primarySource, ra[1]).toLowerCase();
+                            reprintKey = finalKey.replace(primarySource, reprintSource).toLowerCase();
                         }
                     }
                     if (!variantIndex.containsKey(reprintKey)) {
@@ -428,11 +517,11 @@ public class JsonIndex implements JsonSource {
         if (booleanOrDefault(jsonSource, "isReprinted", false)) {
             tui().debugf("Skipping %s (has been reprinted)", finalKey);
             if (finalKey.startsWith("classtype")) {
-                String[] parts = finalKey.split("\\|");
-                String lookupKey = String.format("%s|%s|", parts[0], parts[1]);
+                IndexKey k = IndexKey.of(finalKey);
+                String lookupKey = IndexKey.create(k.type(), k.name(), "");
                 String reprintKey = classRoot.get(lookupKey);
                 if (reprintKey == null) {
-                    lookupKey = String.format("%s|%s|", parts[0], parts[1].replaceAll("\\s*\\(.*", ""));
+                    lookupKey = IndexKey.create(k.type(), k.name().replaceAll("\\s*\\(.*", ""), "");
                     reprintKey = classRoot.get(lookupKey);
                 }
                 if (reprintKey != null) {
@@ -449,35 +538,37 @@ public class JsonIndex implements JsonSource {
     }
 
     public Stream<JsonNode> classElementsMatching(IndexType type, String className, String classSource) {
-        String pattern = String.format("%s\\|[^|]+\\|%s\\|%s\\|.*", type, className, classSource)
-                .toLowerCase();
-        return filteredIndex.entrySet().stream()
-                .filter(e -> e.getKey().matches(pattern))
-                .map(Entry::getValue);
+        String classKey = IndexKey.create(type, className, classSource);
+        dependsOn("match", classKey);
+        return classIndex.getOrDefault(classKey, List.of()).stream()
+                .map(filteredIndex::get);
     }
 
     public String getClassKey(String className, String classSource) {
-        return String.format("%s|%s|%s",
-                IndexType.classtype, className, classSource).toLowerCase();
+        return IndexKey.create(IndexType.classtype, className, classSource);
     }
 
     public String getSubclassKey(String name, String className, String classSource) {
-        return String.format("%s|%s|%s|%s|",
-                IndexType.subclass, name, className, classSource).toLowerCase();
+        return IndexKey.create(IndexType.subclass, name, className, classSource, "");
     }
 
     public CompendiumSources constructSources(IndexType type, JsonNode x) {
         return constructSources(type, null, x);
     }
 
+    /** @return interned sources of this index (shared with the previous index in watch mode) */
+    SourceIds sourceIds() {
+        return nodeToSources.ids;
+    }
+
     public CompendiumSources constructSources(IndexType type, String indexKey, JsonNode x) {
         if (x == null) {
             throw new IllegalStateException("Unable to look up a null element: " + indexKey);
         }
 
-        return nodeToSources.computeIfAbsent(x, y -> {
+        return nodeToSources.get(x, y -> {
             String key = indexKey == null ? getKey(type, x) : indexKey;
-            CompendiumSources s = new CompendiumSources(type, key, x);
+            CompendiumSources s = new CompendiumSources(nodeToSources.ids, type, key, x);
             s.checkKnown(tui, missingSourceName);
             return s;
         });
@@ -486,60 +577,50 @@ public class JsonIndex implements JsonSource {
     public String getKey(IndexType type, JsonNode x) {
         switch (type) {
             case subclass:
-                return String.format("%s|%s|%s|%s|",
-                        type,
+                return IndexKey.create(type,
                         getTextOrEmpty(x, "name"),
                         getTextOrEmpty(x, "className"),
-                        getTextOrEmpty(x, "classSource"))
-                        .toLowerCase();
+                        getTextOrEmpty(x, "classSource"),
+                        "");
             case subrace:
-                return String.format("%s|%s|%s|%s",
-                        type,
+                return IndexKey.create(type,
                         getTextOrEmpty(x, "name"),
                         getTextOrEmpty(x, "raceName"),
-                        getTextOrEmpty(x, "raceSource"))
-                        .toLowerCase();
+                        getTextOrEmpty(x, "raceSource"));
             case classfeature: {
                 String featureSource = getOrEmptyIfEqual(x, "source",
                         getTextOrDefault(x, "classSource", "PHB"));
-                return String.format("%s|%s|%s|%s|%s%s",
-                        type,
-                        getTextOrEmpty(x, "name"),
-                        getTextOrEmpty(x, "className"),
-                        getOrEmptyIfEqual(x, "classSource", "PHB"),
-                        getTextOrEmpty(x, "level"),
-                        featureSource.isBlank() ? "" : "|" + featureSource)
-                        .toLowerCase();
+                String name = getTextOrEmpty(x, "name");
+                String className = getTextOrEmpty(x, "className");
+                String classSource = getOrEmptyIfEqual(x, "classSource", "PHB");
+                String level = getTextOrEmpty(x, "level");
+                return featureSource.isBlank()
+                        ? IndexKey.create(type, name, className, classSource, level)
+                        : IndexKey.create(type, name, className, classSource, level, featureSource);
             }
             case subclassfeature: {
                 String scSource = getOrEmptyIfEqual(x, "subclassSource", "PHB");
                 String scFeatureSource = getOrEmptyIfEqual(x, "source", "PHB");
-                return String.format("%s|%s|%s|%s|%s|%s|%s%s",
-                        type,
-                        getTextOrEmpty(x, "name"),
-                        getTextOrEmpty(x, "className"),
-                        getOrEmptyIfEqual(x, "classSource", "PHB"),
-                        getTextOrEmpty(x, "subclassShortName"),
-                        scSource,
-                        getTextOrEmpty(x, "level"),
-                        scFeatureSource.equals(scSource) ? "" : "|" + scFeatureSource)
-                        .toLowerCase();
+                String name = getTextOrEmpty(x, "name");
+                String className = getTextOrEmpty(x, "className");
+                String classSource = getOrEmptyIfEqual(x, "classSource", "PHB");
+                String scShortName = getTextOrEmpty(x, "subclassShortName");
+                String level = getTextOrEmpty(x, "level");
+                return scFeatureSource.equals(scSource)
+                        ? IndexKey.create(type, name, className, classSource, scShortName, scSource, level)
+                        : IndexKey.create(type, name, className, classSource, scShortName, scSource, level, scFeatureSource);
             }
             case itementry: {
                 String itEntrySource = getOrEmptyIfEqual(x, "source", "DMG");
-                return String.format("%s|%s%s",
-                        type,
-                        getTextOrEmpty(x, "name"),
-                        itEntrySource.isBlank() ? "" : "|" + itEntrySource)
-                        .toLowerCase();
+                return itEntrySource.isBlank()
+                        ? IndexKey.create(type, getTextOrEmpty(x, "name"))
+                        : IndexKey.create(type, getTextOrEmpty(x, "name"), itEntrySource);
             }
             case optionalfeature: {
                 String opFeatureSource = getOrEmptyIfEqual(x, "source", "PHB");
-                return String.format("%s|%s%s",
-                        type,
-                        getTextOrEmpty(x, "name"),
-                        opFeatureSource.isBlank() ? "" : "|" + opFeatureSource)
-                        .toLowerCase();
+                return opFeatureSource.isBlank()
+                        ? IndexKey.create(type, getTextOrEmpty(x, "name"))
+                        : IndexKey.create(type, getTextOrEmpty(x, "name"), opFeatureSource);
             }
             default:
                 String name = x.get("name").asText();
@@ -549,32 +630,31 @@ public class JsonIndex implements JsonSource {
     }
 
     public String createSimpleKey(IndexType type, String name, String source) {
-        return String.format("%s|%s|%s", type, name, source).toLowerCase();
+        return IndexKey.create(type, name, source);
     }
 
     public String getRefKey(IndexType type, String crossRef) {
-        return String.format("%s|%s", type, crossRef).toLowerCase()
+        return IndexKey.create(type, crossRef)
                 // NOTE: correct reference inconsistencies in the original data
-                .replaceAll("\\|phb\\|", "||")
-                .replaceAll("\\|tce\\|8\\|tce", "|tce|8");
+                .replace("|phb|", "||")
+                .replace("|tce|8|tce", "|tce|8");
     }
 
     public String getDataKey(String value) {
-        return String.format("%s|%s", IndexType.reference, value)
-                .toLowerCase();
+        return IndexKey.create(IndexType.reference, value);
     }
 
     public String getDataKey(String type, String id) {
-        return String.format("%s|%s-%s",
-                IndexType.reference, type, id)
-                .toLowerCase();
+        return IndexKey.create(IndexType.reference, type + "-" + id);
     }
 
     public String getAlias(String key) {
+        dependsOn("alias", key);
         return aliases.get(key);
     }
 
     public String getAliasOrDefault(String key) {
+        dependsOn("alias", key);
         return aliases.getOrDefault(key, key);
     }
 
@@ -590,16 +670,18 @@ public class JsonIndex implements JsonSource {
         if (finalKey == null) {
             return null;
         }
+        dependsOn("node", finalKey);
         return filteredIndex.get(finalKey);
     }
 
     public JsonNode getOrigin(String finalKey) {
+        dependsOn("origin", finalKey);
         return nodeIndex.get(finalKey);
     }
 
     public JsonNode getOrigin(IndexType type, String name, String source) {
-        String key = String.format("%s|%s|%s", type, name, source)
-                .toLowerCase();
+        String key = IndexKey.create(type, name, source);
+        dependsOn("origin", key);
         return nodeIndex.get(key);
     }
 
@@ -616,29 +698,54 @@ public class JsonIndex implements JsonSource {
         if (x == null) {
             return null;
         }
-        return filteredIndex.get(getKey(type, x));
+        return getNode(getKey(type, x));
     }
 
     public JsonNode getOrigin(IndexType type, JsonNode x) {
         if (x == null) {
             return null;
         }
-        return nodeIndex.get(getKey(type, x));
+        return getOrigin(getKey(type, x));
     }
 
     public Stream<JsonNode> originSubraces(CompendiumSources sources) {
-        String raceName = sources.getName();
-        String raceSource = String.join("|", sources.bookSources);
-        String pattern = String.format("%s\\|[^|]+\\|%s\\|(%s)", IndexType.subrace, raceName, raceSource)
-                .toLowerCase();
-        return nodeIndex.entrySet().stream()
-                .filter(e -> e.getKey().matches(pattern))
-                .map(Entry::getValue);
+        StringBuilder sb = new StringBuilder(sources.getName());
+        for (String book : sources.getBookSources()) {
+            sb.append('|').append(book);
+        }
+        String raceKey = sb.toString().toLowerCase();
+        dependsOn("originMatch", raceKey);
+        return subraceKeys(raceKey).stream()
+                .map(nodeIndex::get);
+    }
+
+    /**
+     * @param raceKey race name followed by one or more race sources: name|source|source
+     * @return keys of subraces of the race (from any of its sources)
+     */
+    private List<String> subraceKeys(String raceKey) {
+        int pipe = raceKey.indexOf('|');
+        if (raceKey.indexOf('|', pipe + 1) < 0) {
+            return subraceIndex.getOrDefault(raceKey, List.of());
+        }
+        String name = raceKey.substring(0, pipe + 1);
+        List<String> keys = new ArrayList<>();
+        int start = pipe + 1;
+        do {
+            pipe = raceKey.indexOf('|', start);
+            String source = pipe < 0 ? raceKey.substring(start) : raceKey.substring(start, pipe);
+            keys.addAll(subraceIndex.getOrDefault(name + source, List.of()));
+            start = pipe + 1;
+        } while (pipe >= 0);
+        return keys;
     }
 
     public String lookupName(IndexType type, String name) {
-        String prefix = String.format("%s|%s|", type, name).toLowerCase();
-        List<String> target = filteredIndex.keySet().stream()
+        dependsOn("name", type + "|" + name);
+        String prefix = IndexKey.create(type, name, "");
+        // the name is the second segment of the key (it should not contain '|', but may)
+        String nameKey = prefix.substring(0, prefix.indexOf('|', prefix.indexOf('|') + 1));
+        List<String> target = nameIndex.getOrDefault(nameKey, List.of()).stream()
                 .filter(k -> k.startsWith(prefix))
                 .collect(Collectors.toList());
 
@@ -684,12 +791,9 @@ public class JsonIndex implements JsonSource {
     }
 
     private boolean keyIsIncluded(String key, JsonNode node) {
-        if (includedKeys.contains(key)) {
-            return true;
-        }
-        if (excludedKeys.contains(key) ||
-                excludedPatterns.stream().anyMatch(x -> x.matcher(key).matches())) {
-            return false;
+        KeyMatcher.Rule rule = keyRules.match(key);
+        if (rule != null) {
+            return rule.included();
         }
         if (allSources) {
             return true;
@@ -707,8 +811,8 @@ public class JsonIndex implements JsonSource {
             return true;
         }
         CompendiumSources sources = constructSources(IndexType.getTypeFromKey(key), key, node);
-        for (String s : sources.bookSources) {
-            if (allowedSources.contains(s.toLowerCase())) {
+        for (int id : sources.bookSources) {
+            if (allowedSources.contains(sources.sourceKey(id))) {
                 return true;
             }
         }
@@ -716,7 +820,8 @@ public class JsonIndex implements JsonSource {
     }
 
     boolean isIncluded(String key) {
-        String alias = getAlias(key);
+        dependsOn("included", key);
+        String alias = aliases.get(key);
         return filteredIndex.containsKey(key) || (alias != null && filteredIndex.containsKey(alias));
     }
 
@@ -731,6 +836,179 @@ public class JsonIndex implements JsonSource {
         return filteredIndex.entrySet();
     }
 
+    /**
+     * Links are resolved once: later links to the same target (with the same text) reuse the result.
+     * When recording dependencies, the link is recorded as a single dependency.
+     *
+     * @param tag Tag name (spell, creature, ...)
+     * @param match Text of the tag
+     * @param resolve Creates the link (or text)
+     * @return markdown link or text
+     */
+    String cachedLink(String tag, String match, Supplier<String> resolve) {
+        dependsOn("link", tag + "|" + match);
+        DependencyGraph g = graph;
+        return links.get(tag, match, g == null ? resolve : () -> g.untracked(resolve));
+    }
+
+    public LinkCache linkCache() {
+        return links;
+    }
+
+    /** @return copier used to resolve (and keep) copies of other entries */
+    public JsonSourceCopier copier() {
+        return copier;
+    }
+
+    void setDependencyGraph(DependencyGraph graph) {
+        this.graph = graph;
+    }
+
+    /** Record a lookup made while converting an entry (incremental conversion) */
+    private void dependsOn(String kind, String key) {
+        DependencyGraph g = graph;
+        if (g != null) {
+            g.record(kind + ":" + key);
+        }
+    }
+
+    /**
+     * Evaluate a dependency recorded by {@link #dependsOn}: the value changes
+     * when the result of the original lookup would change.
+     *
+     * @param dependency kind and key of the lookup (kind:key)
+     * @return current value of the dependency
+     */
+    String dependencyValue(String dependency) {
+        int pos = dependency.indexOf(':');
+        String key = dependency.substring(pos + 1);
+        switch (dependency.substring(0, pos)) {
+            case "node":
+                return graph.hash(filteredIndex.get(key));
+            case "origin":
+                return graph.hash(nodeIndex.get(key));
+            case "included":
+                return String.valueOf(isIncluded(key));
+            case "alias":
+                return String.valueOf(aliases.get(key));
+            case "aliases":
+                return String.join(",", getAliasesTo(key));
+            case "match":
+                return hashAll(filteredIndex, classIndex.getOrDefault(key, List.of()));
+            case "originMatch":
+                return hashAll(nodeIndex, subraceKeys(key));
+            case "link": {
+                int split = key.indexOf('|');
+                return linkify(key.substring(0, split), key.substring(split + 1));
+            }
+            case "name": {
+                int split = key.indexOf('|');
+                return lookupName(IndexType.valueOf(key.substring(0, split)), key.substring(split + 1));
+            }
+            case "template":
+                return graph.manifest.templateHash(key);
+            default:
+                throw new IllegalArgumentException("Unknown dependency " + dependency);
+        }
+    }
+
+    private String hashAll(Map<String, JsonNode> index, List<String> keys) {
+        return keys.stream()
+                .map(k -> k + "=" + graph.hash(index.get(k)))
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    /** @return all indexed nodes (each node once) */
+    List<JsonNode> indexedNodes() {
+        Set<JsonNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        nodes.addAll(nodeIndex.values());
+        nodes.addAll(filteredIndex.values());
+        return new ArrayList<>(nodes);
+    }
+
+    /**
+     * @return description of the settings that affect which entries are included, and how
+     */
+    String sourceFingerprint() {
+        return String.format("%s|%s|%s", allSources,
+                new TreeSet<>(allowedSources), new TreeSet<>(includeGroups));
+    }
+
+    /**
+     * Capture the state of the prepared index: enough to convert entries
+     * without reading input files or preparing the index again.
+     *
+     * @return tree describing the prepared index
+     * @see #restore(JsonNode)
+     */
+    ObjectNode snapshot() {
+        if (notPrepared()) {
+            throw new IllegalStateException("Index must be prepared before it is saved");
+        }
+        ObjectNode node = Json5eTui.MAPPER.createObjectNode();
+        node.set("allowedSources", Json5eTui.MAPPER.valueToTree(new TreeSet<>(allowedSources)));
+        node.set("includeGroups", Json5eTui.MAPPER.valueToTree(new TreeSet<>(includeGroups)));
+        node.put("rulesRoot", rulesRoot);
+        node.put("compendiumRoot", compendiumRoot);
+        node.set("aliases", Json5eTui.MAPPER.valueToTree(aliases));
+        node.set("classRoot", Json5eTui.MAPPER.valueToTree(classRoot));
+        node.set("srdKeys", Json5eTui.MAPPER.valueToTree(new TreeSet<>(srdKeys)));
+        node.set("familiarKeys", Json5eTui.MAPPER.valueToTree(new TreeSet<>(familiarKeys)));
+        ObjectNode keyRulesNode = node.putObject("keyRules");
+        keyRules.rules().forEach(r -> keyRulesNode.withArray(r.kind().name()).add(r.text()));
+
+        ObjectNode rulesNode = node.putObject("rules");
+        rules.forEach(rulesNode::set);
+        ObjectNode nodes = node.putObject("nodes");
+        nodeIndex.forEach(nodes::set);
+
+        // Most variants are the original node (null); others are variants or resolved copies.
+        ObjectNode variants = node.putObject("variants");
+        variantIndex.forEach((k, v) -> variants.set(k, v == nodeIndex.get(k) ? NullNode.getInstance() : v));
+        // Filtered keys are saved in iteration order (the order entries are converted in), and restored in that order.
+        node.set("filtered", Json5eTui.MAPPER.valueToTree(filteredIndex.keySet()));
+        return node;
+    }
+
+    /**
+     * Restore the state of a prepared index.
+     *
+     * @param snapshot tree created by {@link #snapshot()}
+     */
+    void restore(JsonNode snapshot) {
+        if (variantIndex != null || filteredIndex != null) {
+            throw new IllegalStateException("Index has already been prepared");
+        }
+        snapshot.get("allowedSources").forEach(x -> allowedSources.add(x.asText()));
+        snapshot.get("includeGroups").forEach(x -> includeGroups.add(x.asText()));
+        setClassFeaturePatterns();
+        setRulesRoot(snapshot.get("rulesRoot").asText());
+        setCompendiumRoot(snapshot.get("compendiumRoot").asText());
+        snapshot.get("aliases").fields().forEachRemaining(e -> aliases.put(e.getKey(), e.getValue().asText()));
+        snapshot.get("classRoot").fields().forEachRemaining(e -> classRoot.put(e.getKey(), e.getValue().asText()));
+        snapshot.get("srdKeys").forEach(x -> srdKeys.add(x.asText()));
+        snapshot.get("familiarKeys").forEach(x -> familiarKeys.add(x.asText()));
+        JsonNode keyRulesNode = snapshot.get("keyRules");
+        keyRulesNode.path("include").forEach(x -> keyRules.include(x.asText()));
+        keyRulesNode.path("exclude").forEach(x -> keyRules.exclude(x.asText()));
+        keyRulesNode.path("excludePattern").forEach(x -> keyRules.excludePattern(x.asText()));
+
+        snapshot.get("rules").fields().forEachRemaining(e -> rules.put(e.getKey(), e.getValue()));
+        snapshot.get("nodes").fields().forEachRemaining(e -> nodeIndex.put(e.getKey(), e.getValue()));
+
+        Map<String, JsonNode> variants = new HashMap<>();
+        snapshot.get("variants").fields().forEachRemaining(e -> variants.put(e.getKey(),
+                e.getValue().isNull() ? nodeIndex.get(e.getKey()) : e.getValue()));
+        Map<String, JsonNode> filtered = new LinkedHashMap<>();
+        snapshot.get("filtered").forEach(k -> filtered.put(k.asText(), variants.get(k.asText())));
+
+        variantIndex = variants;
+        filteredIndex = filtered;
+        indexOrigins();
+        indexIncluded();
+    }
+
     public JsonNode resolveClassFeatureNode(String finalKey, String originClassKey) {
         JsonNode featureNode = getNode(finalKey);
         if (featureNode == null) {
@@ -773,6 +1051,23 @@ public class JsonIndex implements JsonSource {
         Collections.sort(keys);
         allKeys.put("keys", keys);
         allKeys.put("mapping", aliases);
+
+        // Report the include/exclude rule that applies to each key
+        Map<String, String> matched = new TreeMap<>();
+        Set<KeyMatcher.Rule> used = new HashSet<>();
+        keys.forEach(k -> {
+            KeyMatcher.Rule rule = keyRules.match(k);
+            if (rule != null) {
+                matched.put(k, rule.toString());
+                used.add(rule);
+            }
+        });
+        if (!matched.isEmpty()) {
+            allKeys.put("rules", matched);
+        }
+        keyRules.rules().stream()
+                .filter(r -> !used.contains(r))
+                .forEach(r -> tui.verbosef("No keys match %s", r));
         writeFile(outputFile, allKeys);
     }
 
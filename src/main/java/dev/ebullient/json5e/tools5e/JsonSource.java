@@ -4,41 +4,29 @@ import static java.util.Map.entry;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 
 import dev.ebullient.json5e.io.Json5eTui;
 import dev.ebullient.json5e.qute.QuteSource;
 
 public interface JsonSource {
-    Pattern backgroundPattern = Pattern.compile("\\{@(background) ([^}]+)}");
-    Pattern classPattern1 = Pattern.compile("\\{@(class) ([^}]+)}");
-    Pattern deityPattern = Pattern.compile("\\{@(deity) ([^}]+)}");
-    Pattern featPattern = Pattern.compile("\\{@(feat) ([^}]+)}");
-    Pattern itemPattern = Pattern.compile("\\{@(item) ([^}]+)}");
-    Pattern racePattern = Pattern.compile("\\{@(race) ([^}]+)}");
-    Pattern spellPattern = Pattern.compile("\\{@(spell) ([^}]+)}");
-    Pattern creaturePattern = Pattern.compile("\\{@(creature) ([^}]+)}");
-    Pattern dicePattern = Pattern.compile("\\{@(dice|damage) ([^|}]+)[^}]*}");
-    Pattern chancePattern = Pattern.compile("\\{@chance ([^}]+)}");
-    Pattern quickRefPattern = Pattern.compile("\\{@quickref ([^}]+)}");
-    Pattern notePattern = Pattern.compile("\\{@note (\\*|Note:)?\\s?([^}]+)}");
-    Pattern condPattern = Pattern.compile("\\{@condition ([^|}]+)\\|?[^}]*}");
-    Pattern diseasePattern = Pattern.compile("\\{@disease ([^|}]+)\\|?[^}]*}");
-    Pattern skillPattern = Pattern.compile("\\{@skill ([^}]+)}");
-    Pattern sensePattern = Pattern.compile("\\{@sense ([^}]+)}");
     int CR_UNKNOWN = 100001;
     int CR_CUSTOM = 100000;
 
@@ -58,6 +46,19 @@ public interface JsonSource {
         return index().tui.slugify(s);
     }
 
+    /**
+     * Read-only alternative to <code>withArray</code>, which adds a missing field
+     * to a node that other converters may be reading.
+     *
+     * @return the array in field, or an empty array
+     */
+    default ArrayNode arrayOf(JsonNode source, String field) {
+        JsonNode node = source.get(field);
+        return node != null && node.isArray()
+                ? (ArrayNode) node
+                : mapper().createArrayNode();
+    }
+
     default Stream<JsonNode> streamOf(ArrayNode array) {
         return StreamSupport.stream(array.spliterator(), false);
     }
@@ -77,7 +78,7 @@ public interface JsonSource {
                     String.format("Unexpected object node (expected array): %s (referenced from %s)", node,
                             getSources()));
         }
-        return streamOf(jsonSource.withArray(field))
+        return streamOf(arrayOf(jsonSource, field))
                 .map(x -> replaceText(x.asText()).trim())
                 .map(replacement)
                 .filter(x -> !x.isBlank())
@@ -136,23 +137,73 @@ public interface JsonSource {
         return result == null ? value : result.asInt();
     }
 
+    /**
+     * Structural deep copy: object and array nodes are cloned, immutable
+     * value nodes (text, numbers, booleans) are shared with the source.
+     */
     default JsonNode copyNode(JsonNode sourceNode) {
-        try {
-            return mapper().readTree(sourceNode.toString());
-        } catch (JsonProcessingException ex) {
-            tui().errorf(ex, "Unable to copy %s", sourceNode.toString());
-            throw new IllegalStateException("JsonProcessingException processing " + sourceNode);
-        }
+        return sourceNode.deepCopy();
     }
 
+    /**
+     * Apply the pattern to each text value (as 5etools does).
+     * Each value is matched on its own: a match can not span several values, and
+     * field names are not replaced (unlike a pass over the serialized node).
+     * Text values and containers that do not change are shared with the source.
+     */
     default JsonNode copyReplaceNode(JsonNode sourceNode, Pattern replace, String with) {
-        try {
-            String modified = replace.matcher(sourceNode.toString()).replaceAll(with);
-            return mapper().readTree(modified);
-        } catch (JsonProcessingException ex) {
-            tui().errorf(ex, "Unable to copy %s", sourceNode.toString());
-            throw new IllegalStateException("JsonProcessingException processing " + sourceNode);
+        return mapText(sourceNode, text -> {
+            Matcher m = replace.matcher(text);
+            return m.find() ? m.replaceAll(with) : text;
+        });
+    }
+
+    /**
+     * Copy-on-write replacement of text values: the source is not modified.
+     * Only containers on the path to a changed text value are copied;
+     * everything else is shared with the source.
+     *
+     * @param sourceNode Node to walk
+     * @param replace Returns the replacement text (the same String if the text does not change)
+     * @return the source node if no text changed, or a copy with replaced text values
+     */
+    default JsonNode mapText(JsonNode sourceNode, UnaryOperator<String> replace) {
+        if (sourceNode.isTextual()) {
+            String text = sourceNode.asText();
+            String result = replace.apply(text);
+            return result.equals(text) ? sourceNode : new TextNode(result);
+        } else if (sourceNode.isArray()) {
+            ArrayNode copy = null;
+            for (int i = 0; i < sourceNode.size(); i++) {
+                JsonNode value = sourceNode.get(i);
+                JsonNode result = mapText(value, replace);
+                if (copy == null && result != value) {
+                    copy = mapper().createArrayNode();
+                    for (int j = 0; j < i; j++) {
+                        copy.add(sourceNode.get(j));
+                    }
+                }
+                if (copy != null) {
+                    copy.add(result);
+                }
+            }
+            return copy == null ? sourceNode : copy;
+        } else if (sourceNode.isObject()) {
+            ObjectNode copy = null;
+            for (Iterator<Map.Entry<String, JsonNode>> it = sourceNode.fields(); it.hasNext();) {
+                Map.Entry<String, JsonNode> e = it.next();
+                JsonNode result = mapText(e.getValue(), replace);
+                if (copy == null && result != e.getValue()) {
+                    copy = mapper().createObjectNode();
+                    copy.setAll((ObjectNode) sourceNode);
+                }
+                if (copy != null && result != e.getValue()) {
+                    copy.set(e.getKey(), result);
+                }
+            }
+            return copy == null ? sourceNode : copy;
         }
+        return sourceNode;
     }
 
     default int levelToPb(int level) {
@@ -432,12 +483,12 @@ public interface JsonSource {
                     break;
                 }
                 case "list": {
-                    appendList(text, node.withArray("items"));
+                    appendList(text, arrayOf(node, "items"));
                     break;
                 }
                 case "abilityGeneric": {
                     List<String> abilities = new ArrayList<>();
-                    node.withArray("attributes").forEach(x -> abilities.add(asAbilityEnum(x)));
+                    arrayOf(node, "attributes").forEach(x -> abilities.add(asAbilityEnum(x)));
 
                     List<String> inner = new ArrayList<>();
                     appendUnlessEmpty(inner, node, "name");
@@ -477,11 +528,11 @@ public interface JsonSource {
                 }
                 case "abilityDc":
                     text.add(String.format("**Spell save DC**: 8 + your proficiency bonus + your %s modifier",
-                            asAbilityEnum(node.withArray("attributes").get(0))));
+                            asAbilityEnum(arrayOf(node, "attributes").get(0))));
                     break;
                 case "abilityAttackMod":
                     text.add(String.format("**Spell attack modifier**: your proficiency bonus + your %s modifier",
-                            asAbilityEnum(node.withArray("attributes").get(0))));
+                            asAbilityEnum(arrayOf(node, "attributes").get(0))));
                     break;
                 case "inline":
                 case "inlineBlock": {
@@ -511,7 +562,7 @@ public interface JsonSource {
 
         if (node.has("additionalEntries")) {
             String altSource = getSources().alternateSource();
-            node.withArray("additionalEntries").forEach(entry -> {
+            arrayOf(node, "additionalEntries").forEach(entry -> {
                 if (entry.has("source") && !index().sourceIncluded(entry.get("source").asText())) {
                     return;
                 } else if (!index().sourceIncluded(altSource)) {
@@ -580,7 +631,7 @@ public interface JsonSource {
         String caption = getTextOrEmpty(entry, "caption");
 
         if (entry.has("colLabels")) {
-            header = StreamSupport.stream(entry.withArray("colLabels").spliterator(), false)
+            header = StreamSupport.stream(arrayOf(entry, "colLabels").spliterator(), false)
                     .map(x -> replaceText(x.asText()))
                     .collect(Collectors.joining(" | "));
 
@@ -591,17 +642,17 @@ public interface JsonSource {
                         .trim());
             }
         } else if (entry.has("colStyles")) {
-            header = StreamSupport.stream(entry.withArray("colStyles").spliterator(), false)
+            header = StreamSupport.stream(arrayOf(entry, "colStyles").spliterator(), false)
                     .map(x -> "  ")
                     .collect(Collectors.joining(" | "));
         } else {
-            int length = entry.withArray("rows").size();
+            int length = arrayOf(entry, "rows").size();
             String[] array = new String[length];
             Arrays.fill(array, " ");
             header = "|" + String.join(" | ", array) + " |";
         }
 
-        entry.withArray("rows").forEach(r -> {
+        arrayOf(entry, "rows").forEach(r -> {
             String row = "| " +
                     StreamSupport.stream(r.spliterator(), false)
                             .map(x -> replaceText(x.asText()))
@@ -613,16 +664,16 @@ public interface JsonSource {
 
         switch (blockid) {
             case "personality-trait":
-                Json2QuteBackground.traits.addAll(table);
+                index().backgroundTraits.addAll(table);
                 break;
             case "ideal":
-                Json2QuteBackground.ideals.addAll(table);
+                index().backgroundIdeals.addAll(table);
                 break;
             case "bond":
-                Json2QuteBackground.bonds.addAll(table);
+                index().backgroundBonds.addAll(table);
                 break;
             case "flaw":
-                Json2QuteBackground.flaws.addAll(table);
+                index().backgroundFlaws.addAll(table);
                 break;
         }
 
@@ -645,7 +696,7 @@ public interface JsonSource {
 
     default void appendOptions(List<String> text, JsonNode entry) {
         List<String> list = new ArrayList<>();
-        entry.withArray("entries").forEach(e -> {
+        arrayOf(entry, "entries").forEach(e -> {
             List<String> item = new ArrayList<>();
             appendEntryToText(item, e, null);
             if (item.size() > 0) {
@@ -795,106 +846,7 @@ public interface JsonSource {
     }
 
     default String replaceText(String input) {
-        String result = input;
-
-        // "{@atk mw} {@hit 1} to hit, reach 5 ft., one target. {@h}1 ({@damage 1d4 ‒1})
-        // piercing damage."
-        // "{@atk mw} {@hit 4} to hit, reach 5 ft., one target. {@h}1 ({@damage 1d4+2})
-        // slashing damage."
-        // "{@atk mw} {@hit 14} to hit, one target. {@h}22 ({@damage 3d8}) piercing
-        // damage. Target must make a {@dc 19} Dexterity save, or be swallowed by the
-        // worm!"
-        try {
-            result = result
-                    .replace("#$prompt_number:title=Enter Alert Level$#", "Alert Level")
-                    .replace("#$prompt_number:title=Enter Charisma Modifier$#", "Charisma modifier")
-                    .replace("#$prompt_number:title=Enter Lifestyle Modifier$#", "Charisma modifier")
-                    .replace("#$prompt_number:title=Enter a Modifier$#", "Modifier")
-                    .replace("#$prompt_number:title=Enter a Modifier,default=10$#", "Modifier (default 10)");
-            result = dicePattern.matcher(result)
-                    .replaceAll((match) -> match.group(2));
-            result = chancePattern.matcher(result)
-                    .replaceAll((match) -> match.group(1) + "% chance");
-
-            result = backgroundPattern.matcher(result).replaceAll(this::linkify);
-            result = classPattern1.matcher(result).replaceAll(this::linkify);
-            result = creaturePattern.matcher(result).replaceAll(this::linkify);
-            result = deityPattern.matcher(result).replaceAll(this::linkify);
-            result = featPattern.matcher(result).replaceAll(this::linkify);
-            result = itemPattern.matcher(result).replaceAll(this::linkify);
-            result = racePattern.matcher(result).replaceAll(this::linkify);
-            result = spellPattern.matcher(result).replaceAll(this::linkify);
-
-            result = condPattern.matcher(result)
-                    .replaceAll((match) -> linkifyRules(match.group(1), "conditions"));
-
-            result = diseasePattern.matcher(result)
-                    .replaceAll((match) -> linkifyRules(match.group(1), "diseases"));
-
-            result = sensePattern.matcher(result)
-                    .replaceAll((match) -> linkifyRules(match.group(1), "senses"));
-
-            result = skillPattern.matcher(result)
-                    .replaceAll((match) -> linkifyRules(match.group(1), "skills"));
-
-            result = notePattern.matcher(result)
-                    .replaceAll((match) -> {
-                        List<String> text = new ArrayList<>();
-                        text.add("> [!note]");
-                        for (String line : match.group(2).split("\n")) {
-                            text.add("> " + line);
-                        }
-                        return String.join("\n", text);
-                    });
-
-            result = quickRefPattern.matcher(result)
-                    .replaceAll((match) -> {
-                        String[] parts = match.group(1).split("\\|");
-                        if (parts.length > 4) {
-                            return parts[4];
-                        }
-                        return parts[0];
-                    });
-            result = result
-                    .replace("{@hitYourSpellAttack}", "the summoner's spell attack modifier")
-                    .replaceAll("\\{@link ([^}|]+)\\|([^}]+)}", "$1 ($2)") // this must come first
-                    .replaceAll("\\{@5etools ([^}|]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@area ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@action ([^}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@hazard ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@reward ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@dc ([^}]+)}", "DC $1")
-                    .replaceAll("\\{@d20 ([^}]+?)}", "$1")
-                    .replaceAll("\\{@recharge ([^}]+?)}", "(Recharge $1-6)")
-                    .replaceAll("\\{@recharge}", "(Recharge 6)")
-                    .replaceAll("\\{@filter ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@classFeature ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@optfeature ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@cult ([^|}]+)\\|([^|}]+)\\|[^|}]*}", "$2")
-                    .replaceAll("\\{@cult ([^|}]+)\\|[^}]*}", "$1")
-                    .replaceAll("\\{@language ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@table ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@variantrule ([^|}]+)\\|?[^}]*}", "$1")
-                    .replaceAll("\\{@book ([^}|]+)\\|?[^}]*}", "\"$1\"")
-                    .replaceAll("\\{@hit ([^}<]+)}", "+$1")
-                    .replaceAll("\\{@h}", "Hit: ")
-                    .replaceAll("\\{@atk m}", "*Melee Attack:*")
-                    .replaceAll("\\{@atk mw}", "*Melee Weapon Attack:*")
-                    .replaceAll("\\{@atk rw}", "*Ranged Weapon Attack:*")
-                    .replaceAll("\\{@atk mw,rw}", "*Melee or Ranged Weapon Attack:*")
-                    .replaceAll("\\{@atk ms}", "*Melee Spell Attack:*")
-                    .replaceAll("\\{@atk rs}", "*Ranged Spell Attack:*")
-                    .replaceAll("\\{@atk ms,rs}", "*Melee or Ranged Spell Attack:*")
-                    .replaceAll("\\{@b ([^}]+?)}", "**$1**")
-                    .replaceAll("\\{@bold ([^}]+?)}", "**$1**")
-                    .replaceAll("\\{@i ([^}]+?)}", "_$1_")
-                    .replaceAll("\\{@italic ([^}]+)}", "_$1_");
-
-        } catch (Exception e) {
-            tui().errorf(e, "Unable to parse string from %s: %s", getSources().getKey(), input);
-        }
-        // after other replacements
-        return result.replaceAll("\\{@adventure ([^|}]+)\\|[^}]*}", "$1");
+        return JsonTextReplacer.replaceText(this, input);
     }
 
     default String linkifyRules(String text, String rules) {
@@ -905,36 +857,47 @@ public interface JsonSource {
     }
 
     default String linkify(MatchResult match) {
-        switch (match.group(1)) {
+        return linkify(match.group(1), match.group(2));
+    }
+
+    default String linkify(String tag, String match) {
+        return index().cachedLink(tag, match, () -> createLink(tag, match));
+    }
+
+    /**
+     * @see #linkify(String, String)
+     */
+    default String createLink(String tag, String match) {
+        switch (tag) {
             case "background":
                 // "Backgrounds:
                 // {@background Charlatan} assumes PHB by default,
                 // {@background Anthropologist|toa} can have sources added with a pipe,
                 // {@background Anthropologist|ToA|and optional link text added with another
                 // pipe}.",
-                return linkifyType(IndexType.background, match.group(2), QuteSource.BACKGROUND_PATH);
+                return linkifyType(IndexType.background, match, QuteSource.BACKGROUND_PATH);
             case "creature":
                 // "Creatures:
                 // {@creature goblin} assumes MM by default,
                 // {@creature cow|vgm} can have sources added with a pipe,
                 // {@creature cow|vgm|and optional link text added with another pipe}.",
-                return linkifyCreature(match.group(2));
+                return linkifyCreature(match);
             case "class":
-                return linkifyClass(match.group(2));
+                return linkifyClass(match);
             case "deity":
-                return linkifyDeity(match.group(2));
+                return linkifyDeity(match);
             case "feat":
                 // "Feats:
                 // {@feat Alert} assumes PHB by default,
                 // {@feat Elven Accuracy|xge} can have sources added with a pipe,
                 // {@feat Elven Accuracy|xge|and optional link text added with another pipe}.",
-                return linkifyType(IndexType.feat, match.group(2), QuteSource.FEATS_PATH);
+                return linkifyType(IndexType.feat, match, QuteSource.FEATS_PATH);
             case "item":
                 // "Items:
                 // {@item alchemy jug} assumes DMG by default,
                 // {@item longsword|phb} can have sources added with a pipe,
                 // {@item longsword|phb|and optional link text added with another pipe}.",
-                return linkifyType(IndexType.item, match.group(2), QuteSource.ITEMS_PATH, "dmg");
+                return linkifyType(IndexType.item, match, QuteSource.ITEMS_PATH, "dmg");
             case "race":
                 // "Races:
                 // {@race Human} assumes PHB by default,
@@ -942,15 +905,15 @@ public interface JsonSource {
                 // {@race Aarakocra|eepc} can have sources added with a pipe,
                 // {@race Aarakocra|eepc|and optional link text added with another pipe}.",
                 // {@race dwarf (hill)||Dwarf, hill}
-                return linkifyType(IndexType.race, match.group(2), QuteSource.RACES_PATH);
+                return linkifyType(IndexType.race, match, QuteSource.RACES_PATH);
             case "spell":
                 // "Spells:
                 // {@spell acid splash} assumes PHB by default,
                 // {@spell tiny servant|xge} can have sources added with a pipe,
                 // {@spell tiny servant|xge|and optional link text added with another pipe}.",
-                return linkifyType(IndexType.spell, match.group(2), QuteSource.SPELLS_PATH);
+                return linkifyType(IndexType.spell, match, QuteSource.SPELLS_PATH);
         }
-        throw new IllegalArgumentException("Unknown group to linkify: " + match.group(1));
+        throw new IllegalArgumentException("Unknown group to linkify: " + tag);
     }
 
     default String linkOrText(String linkText, String key, String dirName, String resourceName) {
@@ -1,18 +1,23 @@
 package dev.ebullient.json5e.tools5e;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.DoubleNode;
@@ -20,16 +25,45 @@ import com.fasterxml.jackson.databind.node.IntNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 
+import dev.ebullient.json5e.io.FlightEvents;
+import dev.ebullient.json5e.io.RunMetrics;
+
 public class JsonSourceCopier implements JsonSource {
     static final Pattern spell_dc_subst = Pattern.compile("<\\$spell_dc__([^$]+)\\$>");
     static final Pattern to_hit_subst = Pattern.compile("\\+?<\\$to_hit__([^$]+)\\$>");
     static final Pattern dmg_mod_subst = Pattern.compile("<\\$damage_mod__([^$]+)\\$>");
     static final Pattern dmg_avg_subst = Pattern.compile("<\\$damage_avg__([\\d.,]+)([+*-])([^$]+)\\$>");
 
+    /** Fields modified by a "*" _mod */
+    static final List<String> MOD_ANY_FIELDS = List.of("action", "bonus", "reaction", "trait", "legendary",
+            "mythic", "variant", "spellcasting", "legendaryHeader");
+    /** Fields modified by root-level ("_") _mod operations: addSenses, addSaves, addSkills, *Spells, maxSize */
+    static final List<String> MOD_ROOT_FIELDS = List.of("senses", "save", "skill", "spellcasting", "size");
+
+    // Patterns used by _mod definitions (replaceTxt, addSenses), compiled once
+    static final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
     final JsonIndex index;
 
+    // Resolved copies by origin key (while preparing the index, or converting entries: fluff)
+    final Map<String, Resolved> resolved = new ConcurrentHashMap<>();
+    // Copies resolved by the copier of a previous index (watch mode), or null
+    final Map<String, Resolved> previous;
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    // Keys of copies being resolved by this thread (to find copies of copies that copy themselves)
+    final ThreadLocal<Set<String>> resolving = ThreadLocal.withInitial(HashSet::new);
+    // Origin nodes read by the copies being resolved by this thread (innermost first)
+    final ThreadLocal<Deque<Map<String, JsonNode>>> origins = ThreadLocal.withInitial(ArrayDeque::new);
+
     JsonSourceCopier(JsonIndex index) {
+        this(index, null);
+    }
+
+    JsonSourceCopier(JsonIndex index, JsonSourceCopier previous) {
         this.index = index;
+        this.previous = previous == null ? null : previous.resolved;
     }
 
     @Override
@@ -42,62 +76,151 @@ public class JsonSourceCopier implements JsonSource {
         throw new IllegalStateException("Should not call getSources while copying source");
     }
 
+    /**
+     * Resolve {@code _copy} (and {@code _mod}): merge the node with the node it copies.
+     * <p>
+     * Each copy is resolved once: the result is kept (by origin key) and returned again
+     * for the same node. The node a copy is based on may itself be a copy (resolved first):
+     * a copy that (eventually) copies itself can not be resolved.
+     * <p>
+     * A copy resolved by the previous index is reused for the same node if the origin nodes
+     * it was merged from are still in the index.
+     *
+     * @param type Type of the node
+     * @param jsonSource Node from the index
+     * @return merged node, or the node itself if it is not a copy
+     */
     JsonNode handleCopy(IndexType type, JsonNode jsonSource) {
-        if (type == IndexType.race) {
-            return copyAndMergeRace(jsonSource);
-        }
-        if (type == IndexType.classtype) {
-            return copyAndMergeClass(jsonSource);
+        String originKey = copyKey(type, jsonSource);
+        if (originKey == null) {
+            return jsonSource;
         }
-        JsonNode _copy = jsonSource.get("_copy");
-        if (_copy != null) {
-            // Fix infinite loop: self-referencing copy
-            if (type == IndexType.monsterfluff
-                    && jsonSource.get("name").asText().equalsIgnoreCase("Derro Savant")
-                    && _copy.get("name").asText().equalsIgnoreCase("Derro Savant")) {
-                ((ObjectNode) _copy).set("name", new TextNode("Derro"));
+        // Another node may use the same key (e.g. a homebrew entry): only reuse a copy of the same node
+        Resolved previous = resolved.get(originKey);
+        if (previous == null && this.previous != null) {
+            Resolved carried = this.previous.get(originKey);
+            if (carried != null && carried.source == jsonSource && carried.isCurrent(index)) {
+                previous = resolved.putIfAbsent(originKey, carried);
+                previous = previous == null ? carried : previous;
             }
-            JsonNode baseNode = index().getOrigin(type, _copy);
-            if (baseNode != null) {
-                // is the copy a copy?
-                baseNode = handleCopy(type, baseNode);
-                try {
-                    String originKey = index().getKey(type, jsonSource);
-                    jsonSource = mergeNodes(originKey, baseNode, jsonSource);
-                } catch (IllegalStateException | StackOverflowError e) {
-                    throw new IllegalStateException("Unable to resolve copy " + _copy.toPrettyString());
-                }
+        }
+        if (previous != null && previous.source == jsonSource) {
+            hits.increment();
+            readOrigins(previous.origins);
+            return previous.node;
+        }
+        misses.increment();
+
+        Set<String> active = resolving.get();
+        if (!active.add(originKey)) {
+            throw new IllegalStateException("Unable to resolve copy: " + originKey + " copies itself");
+        }
+        Map<String, JsonNode> read = new HashMap<>();
+        origins.get().push(read);
+        try {
+            JsonNode node = resolveCopy(type, originKey, jsonSource);
+            if (previous == null) {
+                resolved.putIfAbsent(originKey, new Resolved(jsonSource, node, read));
             }
+            return node;
+        } finally {
+            origins.get().pop();
+            active.remove(originKey);
+            readOrigins(read);
         }
-        return jsonSource;
     }
 
-    JsonNode copyAndMergeRace(JsonNode jsonNode) {
-        if (jsonNode.has("raceName") || jsonNode.has("_copy")) {
-            CompendiumSources sources = index().constructSources(IndexType.race, jsonNode);
-            jsonNode = cloneOrCopy(sources.getKey(),
-                    jsonNode, IndexType.race,
-                    getTextOrDefault(jsonNode, "raceName", null),
-                    getTextOrDefault(jsonNode, "raceSource", null));
+    /** @return the origin node: recorded for the copies being resolved */
+    JsonNode origin(String key) {
+        JsonNode node = index.getOrigin(key);
+        Map<String, JsonNode> read = origins.get().peek();
+        if (read != null) {
+            read.put(key, node);
         }
-        return jsonNode;
+        return node;
     }
 
-    JsonNode copyAndMergeClass(JsonNode jsonSource) {
-        if (jsonSource.has("className") || jsonSource.has("_copy")) {
-            CompendiumSources sources = index().constructSources(IndexType.classtype, jsonSource);
-            jsonSource = cloneOrCopy(sources.getKey(),
+    /** A copy of a copy depends on the origin nodes of both */
+    private void readOrigins(Map<String, JsonNode> read) {
+        Map<String, JsonNode> enclosing = origins.get().peek();
+        if (enclosing != null) {
+            enclosing.putAll(read);
+        }
+    }
+
+    /** @return key used to cache the resolved copy, or null if the node does not copy another */
+    String copyKey(IndexType type, JsonNode jsonSource) {
+        if (type == IndexType.race) {
+            return jsonSource.has("raceName") || jsonSource.has("_copy")
+                    ? index().constructSources(IndexType.race, jsonSource).getKey()
+                    : null;
+        }
+        if (type == IndexType.classtype) {
+            return jsonSource.has("className") || jsonSource.has("_copy")
+                    ? index().constructSources(IndexType.classtype, jsonSource).getKey()
+                    : null;
+        }
+        return jsonSource.has("_copy") ? index().getKey(type, jsonSource) : null;
+    }
+
+    JsonNode resolveCopy(IndexType type, String originKey, JsonNode jsonSource) {
+        if (type == IndexType.race) {
+            return cloneOrCopy(originKey,
+                    jsonSource, IndexType.race,
+                    getTextOrDefault(jsonSource, "raceName", null),
+                    getTextOrDefault(jsonSource, "raceSource", null));
+        }
+        if (type == IndexType.classtype) {
+            return cloneOrCopy(originKey,
                     jsonSource, IndexType.classtype,
                     getTextOrDefault(jsonSource, "className", null),
                     getTextOrDefault(jsonSource, "classSource", null));
         }
+        JsonNode _copy = jsonSource.get("_copy");
+        // Fix infinite loop: self-referencing copy
+        if (type == IndexType.monsterfluff
+                && jsonSource.get("name").asText().equalsIgnoreCase("Derro Savant")
+                && _copy.get("name").asText().equalsIgnoreCase("Derro Savant")) {
+            ((ObjectNode) _copy).set("name", new TextNode("Derro"));
+        }
+        JsonNode baseNode = origin(index.getKey(type, _copy));
+        if (baseNode != null) {
+            // is the copy a copy?
+            baseNode = handleCopy(type, baseNode);
+            try {
+                jsonSource = mergeNodes(originKey, baseNode, jsonSource);
+            } catch (IllegalStateException | StackOverflowError e) {
+                throw new IllegalStateException("Unable to resolve copy " + _copy.toPrettyString());
+            }
+        }
         return jsonSource;
     }
 
+    /** @return compiled pattern, shared by all _mod definitions that use it */
+    static Pattern compile(String regex, int flags) {
+        return patterns.computeIfAbsent(flags + ":" + regex, k -> Pattern.compile(regex, flags));
+    }
+
+    /** @return number of copies resolved from cache */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /** @return number of copies resolved by merging nodes */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /** @return number of resolved copies */
+    public int size() {
+        return resolved.size();
+    }
+
     JsonNode cloneOrCopy(String originKey, JsonNode value, IndexType parentType, String parentName,
             String parentSource) {
-        JsonNode parentNode = parentName == null ? null : index().getOrigin(parentType, parentName, parentSource);
-        JsonNode copyNode = index().getOrigin(parentType, value.get("_copy"));
+        JsonNode parentNode = parentName == null ? null
+                : origin(IndexKey.create(parentType, parentName, parentSource));
+        JsonNode copyNode = value.has("_copy") ? origin(index.getKey(parentType, value.get("_copy"))) : null;
         if (parentNode == null && copyNode == null) {
             tui().errorf("both parent and requested copy are null? (from %s with _copy=%s)", originKey,
                     value.get("_copy").toPrettyString());
@@ -116,7 +239,31 @@ public class JsonSourceCopier implements JsonSource {
     }
 
     JsonNode mergeNodes(String originKey, JsonNode baseNode, JsonNode overlayNode) {
-        ObjectNode target = (ObjectNode) copyNode(baseNode);
+        RunMetrics.Timer timer = tui().metrics().start(RunMetrics.COPY);
+        FlightEvents.Copy event = FlightEvents.copy();
+        try {
+            return merge(originKey, baseNode, overlayNode);
+        } finally {
+            timer.stop();
+            if (event != null && event.shouldCommit()) {
+                event.originKey = originKey;
+                event.mods = countMods(overlayNode.path("_copy").path("_mod"));
+                event.commit();
+            }
+        }
+    }
+
+    /** @return number of modifications: each property of _mod is a modification, or an array of them */
+    static int countMods(JsonNode _mod) {
+        int mods = 0;
+        for (JsonNode mod : _mod) {
+            mods += mod.isArray() ? mod.size() : 1;
+        }
+        return mods;
+    }
+
+    JsonNode merge(String originKey, JsonNode baseNode, JsonNode overlayNode) {
+        ObjectNode target = overlayOf(baseNode);
         target.put("merged", true);
         target.remove("srd");
         target.remove("basicRules");
@@ -155,6 +302,7 @@ public class JsonSourceCopier implements JsonSource {
                             || !baseNode.has("ability")) {
                         target.set("ability", copyNode(overlayField));
                     } else {
+                        ownField(target, baseNode, "ability");
                         ArrayNode cpyAbility = target.withArray("ability");
                         if (cpyAbility.size() == 0) {
                             target.set("ability", copyNode(overlayField));
@@ -178,6 +326,7 @@ public class JsonSourceCopier implements JsonSource {
                     if (overlayNode.has("raceName")) {
                         target.set(f, copyNode(overlayField));
                     } else {
+                        ownField(target, baseNode, f);
                         ArrayNode cpyArray = target.withArray(f);
                         if ((overwrite != null && overwrite.has(f)) || cpyArray.isEmpty()) {
                             target.set(f, copyNode(overlayField));
@@ -192,6 +341,7 @@ public class JsonSourceCopier implements JsonSource {
                 }
                 case "entries":
                     if (_mod == null) {
+                        ownField(target, baseNode, "entries");
                         ArrayNode targetEntries = target.withArray("entries");
                         appendToArray(targetEntries, overlayField);
                     }
@@ -210,7 +360,7 @@ public class JsonSourceCopier implements JsonSource {
 
         if (_trait != null) {
             String key = index.getKey(IndexType.trait, _trait);
-            JsonNode trait = index.getOrigin(key);
+            JsonNode trait = origin(key);
             if (trait == null) {
                 tui().warn("Unable to find trait for " + key);
             } else {
@@ -220,36 +370,79 @@ public class JsonSourceCopier implements JsonSource {
                         apply.get("_root").fields()
                                 .forEachRemaining(field -> target.replace(field.getKey(), copyNode(field.getValue())));
                     }
+                    ownModifiedFields(target, baseNode, apply.get("_mod"));
                     handleMod(originKey, target, apply.get("_mod"));
                 }
             }
         }
 
+        ownModifiedFields(target, baseNode, _mod);
         handleMod(originKey, target, _mod);
 
-        String targetString = target.toString()
-                .replace("<$name$>", baseNode.get("name").asText())
-                .replace("<$title_short_name$>", getShortName(target, true))
-                .replace("<$short_name$>", getShortName(target, false));
+        String name = baseNode.get("name").asText();
+        return mapText(target, text -> replaceVariables(target, name, text));
+    }
 
-        targetString = spell_dc_subst.matcher(targetString)
+    /** Replace {@code <$...$>} variables (names, spell DC, to hit, damage) in text */
+    String replaceVariables(JsonNode target, String name, String text) {
+        if (!text.contains("<$")) {
+            return text;
+        }
+        text = text.replace("<$name$>", name);
+        if (text.contains("<$title_short_name$>")) {
+            text = text.replace("<$title_short_name$>", getShortName(target, true));
+        }
+        if (text.contains("<$short_name$>")) {
+            text = text.replace("<$short_name$>", getShortName(target, false));
+        }
+        if (!text.contains("<$")) {
+            return text;
+        }
+        text = spell_dc_subst.matcher(text)
                 .replaceAll((match) -> getSpellDc(target, match.group(1)));
-
-        targetString = to_hit_subst.matcher(targetString)
+        text = to_hit_subst.matcher(text)
                 .replaceAll((match) -> getToHitString(target, match.group(1)));
-
-        targetString = dmg_mod_subst.matcher(targetString)
+        text = dmg_mod_subst.matcher(text)
                 .replaceAll((match) -> getDamageMod(target, match.group(1)));
-
-        targetString = dmg_avg_subst.matcher(targetString)
+        return dmg_avg_subst.matcher(text)
                 .replaceAll((match) -> getDamageAvg(target, match.group(1), match.group(2), match.group(3)));
+    }
 
-        try {
-            return mapper().readTree(targetString);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return target;
+    /**
+     * Copy-on-write overlay of the base node: top-level fields are shared with
+     * the base until they are claimed with {@link #ownField}, so merging a copy
+     * with a few overrides does not clone the entire base.
+     */
+    ObjectNode overlayOf(JsonNode baseNode) {
+        ObjectNode target = mapper().createObjectNode();
+        target.setAll((ObjectNode) baseNode);
+        return target;
+    }
+
+    /**
+     * Replace a field still shared with the base node with a copy
+     * before it is modified in place.
+     */
+    void ownField(ObjectNode target, JsonNode baseNode, String field) {
+        JsonNode value = target.get(field);
+        if (value != null && value.isContainerNode() && value == baseNode.get(field)) {
+            target.set(field, copyNode(value));
+        }
+    }
+
+    void ownModifiedFields(ObjectNode target, JsonNode baseNode, JsonNode _mod) {
+        if (_mod == null) {
+            return;
         }
+        _mod.fieldNames().forEachRemaining(f -> {
+            if (f.equals("*")) {
+                MOD_ANY_FIELDS.forEach(x -> ownField(target, baseNode, x));
+            } else if (f.equals("_")) {
+                MOD_ROOT_FIELDS.forEach(x -> ownField(target, baseNode, x));
+            } else {
+                ownField(target, baseNode, f);
+            }
+        });
     }
 
     private String getSpellDc(JsonNode target, String ability) {
@@ -330,13 +523,11 @@ public class JsonSourceCopier implements JsonSource {
         if (_mod != null) {
             _mod.fields().forEachRemaining(field -> {
                 if (field.getKey().equals("*")) {
-                    List.of("action", "bonus", "reaction", "trait", "legendary",
-                            "mythic", "variant", "spellcasting",
-                            "legendaryHeader").forEach(x -> {
-                                if (target.has(x)) {
-                                    handleModifications(originKey, x, field.getValue(), target);
-                                }
-                            });
+                    MOD_ANY_FIELDS.forEach(x -> {
+                        if (target.has(x)) {
+                            handleModifications(originKey, x, field.getValue(), target);
+                        }
+                    });
                 } else if (field.getKey().equals("_")) {
                     handleModifications(originKey, null, field.getValue(), target);
                 } else {
@@ -447,14 +638,11 @@ public class JsonSourceCopier implements JsonSource {
             return;
         }
         int scalar = modItem.get("scalar").asInt();
-        String fullNode = dcPattern.matcher(target.get(modFieldName).toString())
-                .replaceAll((match) -> "{@dc " + (Integer.parseInt(match.group(1)) + scalar) + "}");
-
-        try {
-            ((ObjectNode) target).replace(modFieldName, mapper().readTree(fullNode));
-        } catch (JsonProcessingException e) {
-            throw new IllegalStateException("Unable to apply scalar to dc " + target.get(modFieldName).toString());
-        }
+        ((ObjectNode) target).replace(modFieldName, mapText(target.get(modFieldName),
+                text -> !text.contains("{@dc ")
+                        ? text
+                        : dcPattern.matcher(text)
+                                .replaceAll((match) -> "{@dc " + (Integer.parseInt(match.group(1)) + scalar) + "}")));
     }
 
     static final Pattern hitPattern = Pattern.compile("\\{@hit ([-+]?\\d+)}");
@@ -464,14 +652,11 @@ public class JsonSourceCopier implements JsonSource {
             return;
         }
         int scalar = modItem.get("scalar").asInt();
-        String fullNode = hitPattern.matcher(target.get(modFieldName).toString())
-                .replaceAll((match) -> "{@hit " + (Integer.parseInt(match.group(1)) + scalar) + "}");
-
-        try {
-            ((ObjectNode) target).replace(modFieldName, mapper().readTree(fullNode));
-        } catch (JsonProcessingException e) {
-            throw new IllegalStateException("Unable to apply scalar to hit " + target.get(modFieldName).toString());
-        }
+        ((ObjectNode) target).replace(modFieldName, mapText(target.get(modFieldName),
+                text -> !text.contains("{@hit ")
+                        ? text
+                        : hitPattern.matcher(text)
+                                .replaceAll((match) -> "{@hit " + (Integer.parseInt(match.group(1)) + scalar) + "}")));
     }
 
     private void doScalarMultXp(String originKey, JsonNode modItem, JsonNode target) {
@@ -748,10 +933,12 @@ public class JsonSourceCopier implements JsonSource {
             int range = sense.get("range").asInt();
             TextNode newValue = new TextNode(String.format("%s %s ft.", type, range));
 
+            Pattern pattern = compile(Pattern.quote(type) + " (\\d+)", Pattern.CASE_INSENSITIVE);
+
             boolean found = false;
             for (int i = 0; i < targetSenses.size(); i++) {
-                Matcher m = Pattern.compile(type + " (\\d+)", i).matcher(sense.asText());
-                if (m.matches()) {
+                Matcher m = pattern.matcher(targetSenses.get(i).asText());
+                if (m.find()) {
                     found = true;
                     if (Integer.parseInt(m.group(1)) < range) {
                         targetSenses.set(i, newValue);
@@ -835,16 +1022,8 @@ public class JsonSourceCopier implements JsonSource {
         String with = modItem.get("with").asText();
         JsonNode flags = modItem.get("flags");
 
-        final Pattern pattern;
-        if (flags != null) {
-            int pFlags = 0;
-            if (flags.asText().contains("i")) {
-                pFlags |= Pattern.CASE_INSENSITIVE;
-            }
-            pattern = Pattern.compile(replace, pFlags);
-        } else {
-            pattern = Pattern.compile(replace);
-        }
+        final Pattern pattern = compile(replace,
+                flags != null && flags.asText().contains("i") ? Pattern.CASE_INSENSITIVE : 0);
 
         JsonNode targetField = target.get(modFieldName);
         List<String> properties;
@@ -1064,4 +1243,23 @@ public class JsonSourceCopier implements JsonSource {
         }
         throw new IllegalArgumentException("Unknown skill: " + skill);
     }
+
+    static class Resolved {
+        final JsonNode source;
+        final JsonNode node;
+        // origin nodes (by key) the copy was merged from
+        final Map<String, JsonNode> origins;
+
+        Resolved(JsonNode source, JsonNode node, Map<String, JsonNode> origins) {
+            this.source = source;
+            this.node = node;
+            this.origins = origins;
+        }
+
+        /** @return true if the index contains the same origin nodes */
+        boolean isCurrent(JsonIndex index) {
+            return origins.entrySet().stream()
+                    .allMatch(e -> index.getOrigin(e.getKey()) == e.getValue());
+        }
+    }
 }
@@ -0,0 +1,268 @@
+package dev.ebullient.json5e.tools5e;
+
+import static java.util.Map.entry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces 5etools <code>{&#64;tag ...}</code> markup with markdown.
+ * <p>
+ * Text is scanned once, left to right, and each tag is dispatched to a handler
+ * by name. Tags can be nested (<code>{&#64;note see {&#64;spell fireball}}</code>):
+ * the body of a tag is converted before the tag itself.
+ */
+public class JsonTextReplacer {
+    /**
+     * Converts the body of a tag.
+     * The body is null for tags without one (<code>{&#64;h}</code>).
+     * Return null to leave the tag as-is.
+     */
+    @FunctionalInterface
+    interface TagHandler {
+        String apply(JsonSource source, String body);
+    }
+
+    static final Map<String, String> attackTypes = Map.of(
+            "m", "*Melee Attack:*",
+            "mw", "*Melee Weapon Attack:*",
+            "rw", "*Ranged Weapon Attack:*",
+            "mw,rw", "*Melee or Ranged Weapon Attack:*",
+            "ms", "*Melee Spell Attack:*",
+            "rs", "*Ranged Spell Attack:*",
+            "ms,rs", "*Melee or Ranged Spell Attack:*");
+
+    static final Map<String, TagHandler> handlers = Map.ofEntries(
+            entry("dice", (s, body) -> firstPart(body)),
+            entry("damage", (s, body) -> firstPart(body)),
+            entry("chance", (s, body) -> isEmpty(body) ? null : body + "% chance"),
+            entry("background", (s, body) -> isEmpty(body) ? null : s.linkify("background", body)),
+            entry("class", (s, body) -> isEmpty(body) ? null : s.linkify("class", body)),
+            entry("creature", (s, body) -> isEmpty(body) ? null : s.linkify("creature", body)),
+            entry("deity", (s, body) -> isEmpty(body) ? null : s.linkify("deity", body)),
+            entry("feat", (s, body) -> isEmpty(body) ? null : s.linkify("feat", body)),
+            entry("item", (s, body) -> isEmpty(body) ? null : s.linkify("item", body)),
+            entry("race", (s, body) -> isEmpty(body) ? null : s.linkify("race", body)),
+            entry("spell", (s, body) -> isEmpty(body) ? null : s.linkify("spell", body)),
+            entry("condition", (s, body) -> linkifyRules(s, firstPart(body), "conditions")),
+            entry("disease", (s, body) -> linkifyRules(s, firstPart(body), "diseases")),
+            entry("sense", (s, body) -> linkifyRules(s, emptyToNull(body), "senses")),
+            entry("skill", (s, body) -> linkifyRules(s, emptyToNull(body), "skills")),
+            entry("note", (s, body) -> note(body)),
+            entry("quickref", (s, body) -> quickref(body)),
+            entry("hitYourSpellAttack", (s, body) -> body == null ? "the summoner's spell attack modifier" : null),
+            entry("link", (s, body) -> link(body)),
+            entry("5etools", (s, body) -> firstPart(body)),
+            entry("area", (s, body) -> firstPart(body)),
+            entry("action", (s, body) -> emptyToNull(body)),
+            entry("hazard", (s, body) -> firstPart(body)),
+            entry("reward", (s, body) -> firstPart(body)),
+            entry("dc", (s, body) -> isEmpty(body) ? null : "DC " + body),
+            entry("d20", (s, body) -> emptyToNull(body)),
+            entry("recharge", (s, body) -> body == null
+                    ? "(Recharge 6)"
+                    : (body.isEmpty() ? null : "(Recharge " + body + "-6)")),
+            entry("filter", (s, body) -> firstPart(body)),
+            entry("classFeature", (s, body) -> firstPart(body)),
+            entry("optfeature", (s, body) -> firstPart(body)),
+            entry("cult", (s, body) -> cult(body)),
+            entry("language", (s, body) -> firstPart(body)),
+            entry("table", (s, body) -> firstPart(body)),
+            entry("variantrule", (s, body) -> firstPart(body)),
+            entry("book", (s, body) -> {
+                String title = firstPart(body);
+                return title == null ? null : "\"" + title + "\"";
+            }),
+            entry("hit", (s, body) -> isEmpty(body) || body.indexOf('<') >= 0 ? null : "+" + body),
+            entry("h", (s, body) -> body == null ? "Hit: " : null),
+            entry("atk", (s, body) -> body == null ? null : attackTypes.get(body)),
+            entry("b", (s, body) -> isEmpty(body) ? null : "**" + body + "**"),
+            entry("bold", (s, body) -> isEmpty(body) ? null : "**" + body + "**"),
+            entry("i", (s, body) -> isEmpty(body) ? null : "_" + body + "_"),
+            entry("italic", (s, body) -> isEmpty(body) ? null : "_" + body + "_"),
+            entry("adventure", (s, body) -> {
+                int pipe = body == null ? -1 : body.indexOf('|');
+                return pipe > 0 ? body.substring(0, pipe) : null;
+            }));
+
+    private JsonTextReplacer() {
+    }
+
+    static String replaceText(JsonSource source, String input) {
+        String result = replacePrompts(input);
+        if (result.indexOf("{@") < 0) {
+            return result;
+        }
+        try {
+            return replaceTags(source, result);
+        } catch (RuntimeException e) {
+            source.tui().errorf(e, "Unable to parse string from %s: %s", source.getSources().getKey(), input);
+        }
+        return result;
+    }
+
+    /**
+     * Single left-to-right pass over the text. The body of each tag is converted
+     * first (recursively), then handed to the handler for the tag.
+     * Unknown tags, and tags a handler does not accept, are left as-is (with a converted body).
+     */
+    static String replaceTags(JsonSource source, String input) {
+        StringBuilder result = new StringBuilder(input.length());
+        int pos = 0;
+        int start;
+        while ((start = input.indexOf("{@", pos)) >= 0) {
+            result.append(input, pos, start);
+            int end = closingBrace(input, start + 2);
+            if (end < 0) {
+                // unterminated tag: leave it as-is, but convert tags that follow
+                result.append("{@");
+                pos = start + 2;
+                continue;
+            }
+
+            int nameEnd = start + 2;
+            while (nameEnd < end && input.charAt(nameEnd) != ' ') {
+                nameEnd++;
+            }
+            String name = input.substring(start + 2, nameEnd);
+            String body = nameEnd == end ? null : input.substring(nameEnd + 1, end);
+            if (body != null && body.contains("{@")) {
+                body = replaceTags(source, body);
+            }
+
+            TagHandler handler = handlers.get(name);
+            String replacement = handler == null ? null : handler.apply(source, body);
+            if (replacement == null) {
+                result.append("{@").append(name);
+                if (body != null) {
+                    result.append(' ').append(body);
+                }
+                result.append('}');
+            } else {
+                result.append(replacement);
+            }
+            pos = end + 1;
+        }
+        return result.append(input, pos, input.length()).toString();
+    }
+
+    /**
+     * @return position of the brace that closes a tag (skipping nested braces), or -1
+     */
+    static int closingBrace(String input, int from) {
+        int depth = 0;
+        for (int i = from; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    static String replacePrompts(String input) {
+        if (!input.contains("#$prompt_number")) {
+            return input;
+        }
+        return input
+                .replace("#$prompt_number:title=Enter Alert Level$#", "Alert Level")
+                .replace("#$prompt_number:title=Enter Charisma Modifier$#", "Charisma modifier")
+                .replace("#$prompt_number:title=Enter Lifestyle Modifier$#", "Charisma modifier")
+                .replace("#$prompt_number:title=Enter a Modifier$#", "Modifier")
+                .replace("#$prompt_number:title=Enter a Modifier,default=10$#", "Modifier (default 10)");
+    }
+
+    private static boolean isEmpty(String body) {
+        return body == null || body.isEmpty();
+    }
+
+    private static String emptyToNull(String body) {
+        return isEmpty(body) ? null : body;
+    }
+
+    /** Text before the first pipe, if that is not empty */
+    private static String firstPart(String body) {
+        if (isEmpty(body)) {
+            return null;
+        }
+        int pipe = body.indexOf('|');
+        if (pipe == 0) {
+            return null;
+        }
+        return pipe < 0 ? body : body.substring(0, pipe);
+    }
+
+    private static String linkifyRules(JsonSource source, String text, String rules) {
+        return text == null ? null : source.linkifyRules(text, rules);
+    }
+
+    private static String link(String body) {
+        int pipe = body == null ? -1 : body.indexOf('|');
+        if (pipe <= 0 || pipe == body.length() - 1) {
+            return null;
+        }
+        return body.substring(0, pipe) + " (" + body.substring(pipe + 1) + ")";
+    }
+
+    private static String cult(String body) {
+        if (body == null) {
+            return null;
+        }
+        int first = body.indexOf('|');
+        if (first <= 0) {
+            return null;
+        }
+        int second = body.indexOf('|', first + 1);
+        if (second > first + 1 && body.indexOf('|', second + 1) < 0) {
+            return body.substring(first + 1, second);
+        }
+        return body.substring(0, first);
+    }
+
+    private static String note(String body) {
+        if (isEmpty(body)) {
+            return null;
+        }
+        // (\*|Note:)?\s?([^}]+), preferring the longest prefix that leaves some text
+        int prefix = body.startsWith("*") ? 1 : (body.startsWith("Note:") ? 5 : 0);
+        for (int skip : new int[] { prefix, 0 }) {
+            if (skip + 1 < body.length() && isRegexSpace(body.charAt(skip))) {
+                return noteText(body.substring(skip + 1));
+            }
+            if (skip < body.length()) {
+                return noteText(body.substring(skip));
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static String noteText(String note) {
+        List<String> text = new ArrayList<>();
+        text.add("> [!note]");
+        for (String line : note.split("\n")) {
+            text.add("> " + line);
+        }
+        return String.join("\n", text);
+    }
+
+    private static String quickref(String body) {
+        if (isEmpty(body)) {
+            return null;
+        }
+        String[] parts = body.split("\\|");
+        if (parts.length > 4) {
+            return parts[4];
+        }
+        return parts[0];
+    }
+}
@@ -0,0 +1,361 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Include and exclude rules from source configuration files, compiled so that
+ * checking a key does not cost one regular expression per rule:
+ * <ul>
+ * <li>include and exclude keys (and patterns that are plain text) are looked up by key</li>
+ * <li>patterns that are a literal prefix followed by <code>.*</code> are kept in a trie</li>
+ * <li>other patterns are combined into one alternation per type
+ * (and one for patterns that do not start with a literal type)</li>
+ * </ul>
+ * The matching rule is returned, so that it can be reported.
+ * <p>
+ * Rules are added while input files are read, and compiled before the index is prepared.
+ */
+public class KeyMatcher {
+
+    public enum Kind {
+        include,
+        exclude,
+        excludePattern
+    }
+
+    /** A rule, as written in the configuration file */
+    public static class Rule {
+        final Kind kind;
+        final String text;
+
+        Rule(Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        public boolean included() {
+            return kind == Kind.include;
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + text;
+        }
+    }
+
+    // rules in the order they were added (first rule wins for duplicates)
+    private final Map<String, Rule> includeRules = new LinkedHashMap<>();
+    private final Map<String, Rule> excludeRules = new LinkedHashMap<>();
+    private final Map<String, Rule> patternRules = new LinkedHashMap<>();
+
+    private volatile Compiled compiled;
+
+    void include(String key) {
+        includeRules.putIfAbsent(key, new Rule(Kind.include, key));
+        compiled = null;
+    }
+
+    void exclude(String key) {
+        excludeRules.putIfAbsent(key, new Rule(Kind.exclude, key));
+        compiled = null;
+    }
+
+    /**
+     * @param pattern Regular expression matching complete keys.
+     *        Pipes are separators: they do not need to be escaped.
+     */
+    void excludePattern(String pattern) {
+        // fail early (when the configuration file is read) if the pattern is not valid
+        Pattern.compile(toRegex(pattern));
+        patternRules.computeIfAbsent(pattern, p -> new Rule(Kind.excludePattern, p));
+        compiled = null;
+    }
+
+    public boolean isEmpty() {
+        return includeRules.isEmpty() && excludeRules.isEmpty() && patternRules.isEmpty();
+    }
+
+    /** @return all rules: includes, excludes, then patterns */
+    public List<Rule> rules() {
+        List<Rule> all = new ArrayList<>(includeRules.values());
+        all.addAll(excludeRules.values());
+        all.addAll(patternRules.values());
+        return all;
+    }
+
+    /**
+     * Compile rules. Called once all configuration files have been read;
+     * {@link #match(String)} will compile rules if needed.
+     */
+    void compile() {
+        if (compiled == null) {
+            compiled = new Compiled(includeRules, excludeRules, patternRules.values());
+        }
+    }
+
+    /**
+     * Included keys take precedence over excluded keys and patterns.
+     *
+     * @param key Index key
+     * @return rule that includes or excludes the key, or null if no rule matches
+     */
+    public Rule match(String key) {
+        Compiled c = compiled;
+        if (c == null) {
+            compile();
+            c = compiled;
+        }
+        return c.match(key);
+    }
+
+    static class Compiled {
+        final Map<String, Rule> included;
+        final Map<String, Rule> excluded = new HashMap<>();
+        final Node prefixes = new Node();
+        final Map<String, Alternation> byType = new HashMap<>();
+        final Alternation anyType;
+        final List<Alternation> standalone = new ArrayList<>();
+
+        Compiled(Map<String, Rule> includeRules, Map<String, Rule> excludeRules, Iterable<Rule> patterns) {
+            included = new HashMap<>(includeRules);
+            excluded.putAll(excludeRules);
+
+            Map<String, List<Rule>> typed = new LinkedHashMap<>();
+            List<Rule> untyped = new ArrayList<>();
+            for (Rule r : patterns) {
+                String regex = toRegex(r.text);
+                Literal literal = Literal.of(regex);
+                if (GROUP_REFERENCE.matcher(regex).find()) {
+                    // group numbers and names would change if patterns were combined
+                    standalone.add(new Alternation(List.of(r)));
+                } else if (hasAlternation(regex)) {
+                    // the literal prefix is not a prefix of every match
+                    untyped.add(r);
+                } else if (literal.complete) {
+                    excluded.putIfAbsent(literal.prefix, r);
+                } else if (literal.prefixOnly) {
+                    prefixes.add(literal.prefix, r);
+                } else {
+                    int pipe = literal.prefix.indexOf('|');
+                    if (pipe < 0) {
+                        untyped.add(r);
+                    } else {
+                        typed.computeIfAbsent(literal.prefix.substring(0, pipe), t -> new ArrayList<>()).add(r);
+                    }
+                }
+            }
+            typed.forEach((type, rules) -> byType.put(type, new Alternation(rules)));
+            anyType = untyped.isEmpty() ? null : new Alternation(untyped);
+        }
+
+        Rule match(String key) {
+            Rule rule = included.get(key);
+            if (rule != null) {
+                return rule;
+            }
+            rule = excluded.get(key);
+            if (rule != null) {
+                return rule;
+            }
+            rule = prefixes.match(key);
+            if (rule != null) {
+                return rule;
+            }
+            int pipe = key.indexOf('|');
+            Alternation alternation = pipe < 0 ? null : byType.get(key.substring(0, pipe));
+            if (alternation != null && (rule = alternation.match(key)) != null) {
+                return rule;
+            }
+            if (anyType != null && (rule = anyType.match(key)) != null) {
+                return rule;
+            }
+            for (Alternation a : standalone) {
+                if ((rule = a.match(key)) != null) {
+                    return rule;
+                }
+            }
+            return null;
+        }
+    }
+
+    // back references and named groups: \1, \k<name>, (?<name>...)
+    static final Pattern GROUP_REFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]");
+
+    /** @return true if the expression contains a pipe that is not escaped */
+    static boolean hasAlternation(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '|') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Patterns are written with unescaped pipes as separators:
+     * <code>race|.*|dmg</code> is <code>race\|.*\|dmg</code>
+     */
+    static String toRegex(String pattern) {
+        String[] split = pattern.split("\\|");
+        if (split.length > 1) {
+            for (int i = 0; i < split.length - 1; i++) {
+                if (!split[i].endsWith("\\")) {
+                    split[i] += "\\";
+                }
+            }
+        }
+        return String.join("|", split);
+    }
+
+    /** Literal text at the start of a regular expression */
+    static class Literal {
+        final String prefix;
+        // the expression matches only the prefix
+        final boolean complete;
+        // the expression matches the prefix followed by anything (.*)
+        final boolean prefixOnly;
+
+        Literal(String prefix, boolean complete, boolean prefixOnly) {
+            this.prefix = prefix;
+            this.complete = complete;
+            this.prefixOnly = prefixOnly;
+        }
+
+        static Literal of(String regex) {
+            StringBuilder prefix = new StringBuilder();
+            int i = 0;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                int next;
+                if (c == '\\') {
+                    // only escaped punctuation is literal (\d, \Q, \1, ... are not)
+                    if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                        break;
+                    }
+                    c = regex.charAt(i + 1);
+                    next = i + 2;
+                } else if (".[]{}()*+?^$|".indexOf(c) >= 0) {
+                    break;
+                } else {
+                    next = i + 1;
+                }
+                if (next < regex.length() && "*+?{".indexOf(regex.charAt(next)) >= 0) {
+                    // a quantifier applies to this character: it is not part of the prefix
+                    break;
+                }
+                prefix.append(c);
+                i = next;
+            }
+            String rest = regex.substring(i);
+            return new Literal(prefix.toString(), rest.isEmpty(), rest.equals(".*"));
+        }
+    }
+
+    /** Trie of literal prefixes (patterns like <code>spell|.*</code>) */
+    static class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        Rule rule;
+
+        void add(String prefix, Rule r) {
+            Node n = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                n = n.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+            }
+            if (n.rule == null) {
+                n.rule = r;
+            }
+        }
+
+        Rule match(String key) {
+            // '.' does not match line terminators
+            int end = lineTerminator(key);
+            Node n = this;
+            for (int i = 0; n != null; i++) {
+                if (n.rule != null && end < i) {
+                    return n.rule;
+                }
+                if (i == key.length()) {
+                    break;
+                }
+                n = n.children.get(key.charAt(i));
+            }
+            return null;
+        }
+
+        /** @return position of the last line terminator in the key, or -1 */
+        static int lineTerminator(String key) {
+            for (int i = key.length() - 1; i >= 0; i--) {
+                char c = key.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Patterns combined into one expression. Each pattern is wrapped in a group,
+     * which identifies the rule that matched.
+     */
+    static class Alternation {
+        final Pattern pattern;
+        final int[] groups;
+        final Rule[] rules;
+
+        Alternation(List<Rule> list) {
+            rules = list.toArray(new Rule[0]);
+            groups = new int[rules.length];
+            if (rules.length == 1) {
+                // a single pattern is used as is (back references keep their group numbers)
+                pattern = Pattern.compile(toRegex(rules[0].text));
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            int group = 1;
+            for (int i = 0; i < rules.length; i++) {
+                String regex = toRegex(rules[i].text);
+                if (i > 0) {
+                    sb.append('|');
+                }
+                sb.append('(').append(regex).append(')');
+                groups[i] = group;
+                group += 1 + Pattern.compile(regex).matcher("").groupCount();
+            }
+            pattern = Pattern.compile(sb.toString());
+        }
+
+        Rule match(String key) {
+            Matcher m = pattern.matcher(key);
+            if (!m.matches()) {
+                return null;
+            }
+            if (rules.length == 1) {
+                return rules[0];
+            }
+            for (int i = 0; i < rules.length; i++) {
+                if (m.start(groups[i]) >= 0) {
+                    return rules[i];
+                }
+            }
+            return null;
+        }
+    }
+}
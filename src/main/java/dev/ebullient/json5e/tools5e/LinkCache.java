@@ -0,0 +1,52 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Resolved links, by tag and the (raw) text of the tag:
+ * <code>{@spell fireball|phb}</code> is cached as ("spell", "fireball|phb").
+ * <p>
+ * Each value is the final markdown: a link, or plain text when the target is excluded
+ * (which is cached as well). Links are resolved against the prepared index, which does not
+ * change while entries are converted.
+ */
+public class LinkCache {
+    final Map<String, String> links = new ConcurrentHashMap<>();
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    /**
+     * @param tag Tag name (spell, creature, ...)
+     * @param match Text of the tag
+     * @param resolve Creates the link (or text) if it has not been cached
+     * @return markdown link or text
+     */
+    String get(String tag, String match, Supplier<String> resolve) {
+        // tag names do not contain a pipe
+        String key = tag + "|" + match;
+        String link = links.get(key);
+        if (link != null) {
+            hits.increment();
+            return link;
+        }
+        misses.increment();
+        link = resolve.get();
+        String previous = links.putIfAbsent(key, link);
+        return previous == null ? link : previous;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return links.size();
+    }
+}
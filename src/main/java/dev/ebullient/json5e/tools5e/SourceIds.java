@@ -0,0 +1,47 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Interned source abbreviations: each source has a (small) id.
+ * <p>
+ * There is one table per {@link SourcesRegistry}, so it only holds sources found in the
+ * input files of an index (and of the indexes that share its registry in watch mode).
+ */
+final class SourceIds {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new CopyOnWriteArrayList<>();
+    private final List<String> keys = new CopyOnWriteArrayList<>();
+
+    /** @return id of the source abbreviation (assigned on first use) */
+    int id(String source) {
+        Integer id = ids.get(source);
+        if (id != null) {
+            return id;
+        }
+        synchronized (names) {
+            return ids.computeIfAbsent(source, s -> {
+                names.add(s);
+                keys.add(s.toLowerCase());
+                return names.size() - 1;
+            });
+        }
+    }
+
+    /** @return source abbreviation */
+    String name(int id) {
+        return names.get(id);
+    }
+
+    /** @return lower case source abbreviation (as used in keys and source filters) */
+    String key(int id) {
+        return keys.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+}
@@ -139,7 +139,7 @@ public class Sourceless2QuteNote extends Json2QuteCommon {
                 maybeAddBlankLine(text);
                 text.add("## " + propertyEnum.longName);
                 maybeAddBlankLine(text);
-                entry.withArray("entries").forEach(e -> appendEntryToText(text, e.get("entries"), null));
+                arrayOf(entry, "entries").forEach(e -> appendEntryToText(text, e.get("entries"), null));
                 if (propertyEnum == PropertyEnum.SPECIAL) {
                     text.add(
                             "A weapon with the special property has unusual rules governing its use, which are explained in the weapon's description.");
@@ -175,7 +175,7 @@ public class Sourceless2QuteNote extends Json2QuteCommon {
             text.add(String.format("`dice: [](%s.md#^%s)`", slugify(title), blockid));
             text.add("");
 
-            ArrayNode table = entry.withArray("table");
+            ArrayNode table = arrayOf(entry, "table");
             if (table.get(0).isTextual()) {
                 String header = "| " + name + " |";
                 text.add(header);
@@ -214,9 +214,9 @@ public class Sourceless2QuteNote extends Json2QuteCommon {
 
     String chooseFrom(JsonNode choose) {
         if (choose.has("fromGroup")) {
-            return joinAndReplace(choose.withArray("fromGroup"));
+            return joinAndReplace(arrayOf(choose, "fromGroup"));
         } else if (choose.has("fromGeneric")) {
-            return joinAndReplace(choose.withArray("fromGeneric"));
+            return joinAndReplace(arrayOf(choose, "fromGeneric"));
         }
         throw new IllegalArgumentException("What kind of item to choose? " + choose.toPrettyString());
     }
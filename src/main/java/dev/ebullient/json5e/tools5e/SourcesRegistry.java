@@ -0,0 +1,87 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Sources of elements, by node identity.
+ * <p>
+ * Jackson nodes hash and compare their whole tree, which is expensive for large
+ * elements (monsters, classes). Converters read indexed nodes without changing them
+ * (copies are merged into new nodes), so sources are kept for the node instance instead.
+ * <p>
+ * Nodes are weakly referenced: sources of transient nodes (created while an entry
+ * is converted) are dropped once the node is no longer used.
+ * Source abbreviations are interned in {@link #ids}, which lives as long as the registry.
+ */
+final class SourcesRegistry {
+    final SourceIds ids = new SourceIds();
+    private final Map<NodeRef, CompendiumSources> sources = new ConcurrentHashMap<>();
+    private final ReferenceQueue<JsonNode> cleared = new ReferenceQueue<>();
+
+    /**
+     * @param node Element
+     * @param construct Creates sources for the element if none have been registered
+     * @return sources of the element
+     */
+    CompendiumSources get(JsonNode node, Function<JsonNode, CompendiumSources> construct) {
+        expunge();
+        CompendiumSources s = sources.get(new NodeRef(node, null));
+        if (s != null) {
+            return s;
+        }
+        s = construct.apply(node);
+        CompendiumSources previous = sources.putIfAbsent(new NodeRef(node, cleared), s);
+        return previous == null ? s : previous;
+    }
+
+    int size() {
+        expunge();
+        return sources.size();
+    }
+
+    void clear() {
+        sources.clear();
+        expunge();
+    }
+
+    private void expunge() {
+        Reference<? extends JsonNode> ref;
+        while ((ref = cleared.poll()) != null) {
+            sources.remove(ref);
+        }
+    }
+
+    /** Weak reference to a node, compared by identity */
+    static final class NodeRef extends WeakReference<JsonNode> {
+        final int hash;
+
+        NodeRef(JsonNode node, ReferenceQueue<JsonNode> queue) {
+            super(node, queue);
+            this.hash = System.identityHashCode(node);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof NodeRef)) {
+                return false;
+            }
+            JsonNode node = get();
+            return node != null && node == ((NodeRef) obj).get();
+        }
+    }
+}
@@ -55,7 +55,7 @@ public class Table2QuteNote extends Json2QuteCommon {
         Set<String> tags = new HashSet<>(sources.getSourceTags());
         List<String> text = new ArrayList<>();
 
-        node.withArray("rows").forEach(row -> {
+        arrayOf(node, "rows").forEach(row -> {
             ArrayNode cols = (ArrayNode) row;
             maybeAddBlankLine(text);
             text.add("## " + replaceText(cols.get(0).asText()));
@@ -5,6 +5,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -13,7 +15,11 @@ import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.io.OutputManifest;
+import dev.ebullient.json5e.tools5e.DependencyGraph;
 import io.quarkus.test.junit.main.Launch;
 import io.quarkus.test.junit.main.LaunchResult;
 import io.quarkus.test.junit.main.QuarkusMainLauncher;
@@ -97,6 +103,220 @@ public class Import5eToolsConvertTest {
         }
     }
 
+    @Test
+    void testCommandSampleDataThreads(QuarkusMainLauncher launcher) throws Exception {
+        Path sequential = outputPath.resolve("sample-sequential");
+        Path parallel = outputPath.resolve("sample-parallel");
+        TestUtils.deleteDir(sequential);
+        TestUtils.deleteDir(parallel);
+
+        LaunchResult result = launcher.launch("--index", "-s", "ALL", "--threads", "1",
+                "-o", sequential.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+
+        result = launcher.launch("--index", "-s", "ALL", "--threads", "4",
+                "-o", parallel.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+
+        TestUtils.assertSameFiles(sequential, parallel);
+    }
+
+    @Test
+    void testCommandSampleDataStream(QuarkusMainLauncher launcher) throws Exception {
+        Path collected = outputPath.resolve("sample-collected");
+        Path streamed = outputPath.resolve("sample-streamed");
+        TestUtils.deleteDir(collected);
+        TestUtils.deleteDir(streamed);
+
+        LaunchResult result = launcher.launch("--index", "-s", "ALL",
+                "-o", collected.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+
+        result = launcher.launch("--index", "-s", "ALL", "--stream", "--threads", "4",
+                "-o", streamed.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+
+        TestUtils.assertSameFiles(collected, streamed);
+    }
+
+    @Test
+    void testCommandSampleDataIncremental(QuarkusMainLauncher launcher) throws Exception {
+        Path incremental = outputPath.resolve("sample-incremental");
+        TestUtils.deleteDir(incremental);
+
+        LaunchResult result = launcher.launch("-s", "ALL", "--incremental",
+                "-o", incremental.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        assertThat(incremental.resolve(OutputManifest.MANIFEST_FILE)).exists();
+
+        Path spells = incremental.resolve("compendium/spells");
+        Path changed = spells.resolve("arcane-bolt-i.md");
+        Path deleted = spells.resolve("dancing-ward-i.md");
+        Path untouched = spells.resolve("ember-gate-ii.md");
+        FileTime old = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(untouched, old);
+        Files.writeString(changed, "changed");
+        Files.delete(deleted);
+
+        result = launcher.launch("-s", "ALL", "--incremental",
+                "-o", incremental.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        assertThat(result.getOutput()).contains("0 input files and 0 templates changed; 1 files created, 1 updated");
+        assertThat(Files.getLastModifiedTime(untouched)).isEqualTo(old);
+        assertThat(Files.readString(changed)).isNotEqualTo("changed");
+        assertThat(deleted).exists();
+    }
+
+    @Test
+    void testCommandSampleDataDependencies(QuarkusMainLauncher launcher) throws Exception {
+        Path data = outputPath.resolve("sample-dependencies-data");
+        Path incremental = outputPath.resolve("sample-dependencies");
+        Path full = outputPath.resolve("sample-dependencies-full");
+        TestUtils.deleteDir(data);
+        TestUtils.deleteDir(incremental);
+        TestUtils.deleteDir(full);
+        for (Path p : TestUtils.listFiles(TestUtils.SAMPLE_PATH)) {
+            Path target = data.resolve(p.toString());
+            Files.createDirectories(target.getParent());
+            Files.copy(TestUtils.SAMPLE_PATH.resolve(p), target);
+        }
+
+        LaunchResult result = launcher.launch("-s", "ALL", "--incremental",
+                "-o", incremental.toString(), data.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        assertThat(incremental.resolve(DependencyGraph.GRAPH_FILE)).exists();
+
+        result = launcher.launch("-s", "ALL", "--incremental",
+                "-o", incremental.toString(), data.toString());
+        assertThat(result.getOutput()).contains("Converted 0 entries");
+
+        // Change the text of one spell: only that spell is converted (and backgrounds, which always are)
+        Path spells = data.resolve("spells/spells-phb.json");
+        Files.writeString(spells, Files.readString(spells)
+                .replaceFirst("You call upon binding power.", "You call upon a binding power."));
+
+        result = launcher.launch("-s", "ALL", "--incremental",
+                "-o", incremental.toString(), data.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        assertThat(result.getOutput()).contains("0 files created, 1 updated");
+        assertThat(result.getOutput()).doesNotContain("Converted 0 entries", "reused 0 unchanged");
+
+        result = launcher.launch("-s", "ALL", "-o", full.toString(), data.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        Files.delete(incremental.resolve(DependencyGraph.GRAPH_FILE));
+        Files.delete(incremental.resolve(OutputManifest.MANIFEST_FILE));
+        TestUtils.assertSameFiles(full, incremental);
+    }
+
+    @Test
+    void testCommandSampleDataTemplateDependencies(QuarkusMainLauncher launcher) throws Exception {
+        Path incremental = outputPath.resolve("sample-template-dependencies");
+        Path template = outputPath.resolve("sample-template-dependencies-spell2md.txt");
+        TestUtils.deleteDir(incremental);
+        Files.copy(TestUtils.PROJECT_PATH.resolve("src/main/resources/templates/spell2md.txt"), template,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        LaunchResult result = launcher.launch("-s", "ALL", "--incremental", "--spell", template.toString(),
+                "-o", incremental.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+
+        // Change the spell template: only spells are converted again
+        Files.writeString(template, Files.readString(template) + "\n% changed\n");
+        result = launcher.launch("-s", "ALL", "--incremental", "--spell", template.toString(),
+                "-o", incremental.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+
+        long spells = TestUtils.listFiles(incremental.resolve("compendium/spells")).stream()
+                .filter(p -> !p.endsWith("spells.md")).count();
+        assertThat(result.getOutput()).contains(String.format("Converted %d entries", spells));
+        assertThat(Files.readString(incremental.resolve("compendium/spells/arcane-bolt-i.md"))).contains("% changed");
+    }
+
+    @Test
+    void testCommandInvalidTemplate(QuarkusMainLauncher launcher) throws Exception {
+        Path target = outputPath.resolve("sample-invalid-template");
+        Path template = outputPath.resolve("sample-invalid-template-spell2md.txt");
+        TestUtils.deleteDir(target);
+        Files.writeString(template, "# {resource.name}\n{#if resource.level}\n");
+
+        // Templates are parsed before data is read: nothing is written
+        LaunchResult result = launcher.launch("-s", "ALL", "--spell", template.toString(),
+                "-o", target.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command should have failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(2);
+        assertThat(target.resolve("compendium")).doesNotExist();
+    }
+
+    @Test
+    void testCommandSampleDataIndexCache(QuarkusMainLauncher launcher) throws Exception {
+        Path read = outputPath.resolve("sample-cache-read");
+        Path restored = outputPath.resolve("sample-cache-restored");
+        Path cache = outputPath.resolve("sample-cache.smile");
+        TestUtils.deleteDir(read);
+        TestUtils.deleteDir(restored);
+        Files.deleteIfExists(cache);
+
+        LaunchResult result = launcher.launch("--index", "-s", "ALL", "--index-cache", cache.toString(),
+                "-o", read.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        assertThat(cache).exists();
+        assertThat(result.getOutput()).doesNotContain("restored prepared index");
+
+        result = launcher.launch("--index", "-s", "ALL", "--index-cache", cache.toString(),
+                "-o", restored.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        assertThat(result.getOutput()).contains("restored prepared index");
+
+        TestUtils.assertSameFiles(read, restored);
+    }
+
+    @Test
+    void testCommandSampleDataMetrics(QuarkusMainLauncher launcher) throws Exception {
+        Path target = outputPath.resolve("sample-metrics");
+        TestUtils.deleteDir(target);
+
+        LaunchResult result = launcher.launch("-s", "ALL", "--metrics=metrics.json", "--profile-entries", "3",
+                "-o", target.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        assertThat(result.getOutput()).contains("Stage", "convert monster", "3 most expensive entries");
+
+        JsonNode stages = Json5eTui.MAPPER.readTree(target.resolve("metrics.json").toFile()).get("stages");
+        assertThat(stages.get("read").get("count").asInt()).isGreaterThan(0);
+        assertThat(stages.get("read").get("bytes").asLong()).isGreaterThan(0);
+        assertThat(stages.get("convert monster").get("count").asInt()).isGreaterThan(0);
+        assertThat(stages.get("write").get("count").asInt())
+                .isEqualTo(stages.get("render").get("count").asInt());
+    }
+
     List<String> getFilesFrom(Path directory) {
         try (Stream<Path> paths = Files.walk(directory)) {
             return paths
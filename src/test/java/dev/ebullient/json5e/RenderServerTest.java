@@ -0,0 +1,93 @@
+package dev.ebullient.json5e;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.io.MarkdownWriter;
+import dev.ebullient.json5e.io.Templates;
+import dev.ebullient.json5e.tools5e.IndexType;
+import dev.ebullient.json5e.tools5e.Json2MarkdownConverter;
+import dev.ebullient.json5e.tools5e.JsonIndex;
+import io.quarkus.arc.Arc;
+import io.quarkus.test.junit.QuarkusTest;
+
+@QuarkusTest
+public class RenderServerTest {
+    static final Path outputPath = TestUtils.OUTPUT_ROOT.resolve("render-server");
+
+    @Test
+    public void testRenderEntries() throws Exception {
+        Json5eTui tui = Arc.container().instance(Json5eTui.class).get();
+        Templates templates = Arc.container().instance(Templates.class).get();
+        tui.init(null, false, false);
+
+        JsonIndex index = new JsonIndex(List.of("*"), tui);
+        tui.read5eTools(TestUtils.SAMPLE_PATH, index.importFile());
+        index.prepare();
+
+        TestUtils.deleteDir(outputPath);
+        tui.setOutputPath(outputPath);
+        MarkdownWriter writer = new MarkdownWriter(outputPath, templates, tui);
+        new Json2MarkdownConverter(index, writer).writeFiles(List.of(IndexType.spell, IndexType.classtype));
+
+        // Small cache: 2 KB holds about two spells
+        RenderServer server = new RenderServer(index, writer, 2048);
+        int port = server.start(0, 2);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://localhost:" + port;
+
+            HttpResponse<String> response = get(client, base + "/render/spell%7Carcane%20bolt%20i%7Cphb");
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.headers().firstValue("X-Cache")).hasValue("miss");
+            assertThat(response.body()).isEqualTo(
+                    Files.readString(outputPath.resolve(index.compendiumPath()).resolve("spells/arcane-bolt-i.md")));
+
+            response = get(client, base + "/render/SPELL%7CArcane%20Bolt%20I%7CPHB");
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.headers().firstValue("X-Cache")).hasValue("hit");
+
+            // a subclass is converted with its class
+            response = get(client, base + "/render/subclass%7Cpath%20of%20arcane%7Cfighter%7Cphb%7C");
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.body()).isEqualTo(Files.readString(
+                    outputPath.resolve(index.compendiumPath()).resolve("classes/fighter-path-of-arcane.md")));
+
+            assertThat(get(client, base + "/render/spell%7Cunknown%7Cphb").statusCode()).isEqualTo(404);
+            assertThat(get(client, base + "/render/nothing").statusCode()).isEqualTo(404);
+
+            for (String spell : List.of("arcane%20bolt%20ii", "binding%20whisper%20ii", "crimson%20chain%20i")) {
+                assertThat(get(client, base + "/render/spell%7C" + spell + "%7Cphb").statusCode()).isEqualTo(200);
+            }
+
+            response = get(client, base + "/stats");
+            assertThat(response.statusCode()).isEqualTo(200);
+            JsonNode stats = Json5eTui.MAPPER.readTree(response.body());
+            assertThat(stats.at("/cache/hits").asLong()).isEqualTo(1);
+            assertThat(stats.at("/cache/misses").asLong()).isEqualTo(7);
+            assertThat(stats.at("/cache/evictions").asLong()).isPositive();
+            assertThat(stats.at("/cache/bytes").asLong()).isLessThanOrEqualTo(2048);
+            assertThat(stats.at("/render/count").asLong()).isEqualTo(5);
+            assertThat(stats.at("/render/p50Ms").asDouble()).isPositive();
+        } finally {
+            server.stop();
+        }
+    }
+
+    HttpResponse<String> get(HttpClient client, String uri) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(uri)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,42 @@
+package dev.ebullient.json5e;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.test.junit.main.LaunchResult;
+import io.quarkus.test.junit.main.QuarkusMainIntegrationTest;
+import io.quarkus.test.junit.main.QuarkusMainLauncher;
+
+/**
+ * Smoke test for the packaged application (the native executable with -Pnative):
+ * convert the sample data, and compare the output with the output of the JVM build
+ * (written by {@link Import5eToolsConvertTest} in the test phase). The test fails
+ * if that output is missing.
+ */
+@QuarkusMainIntegrationTest
+public class SampleDataNativeIT {
+    static final Path outputPath = TestUtils.OUTPUT_ROOT.resolve("test-cli");
+
+    @Test
+    void testCommandSampleDataMatchesJvm(QuarkusMainLauncher launcher) throws Exception {
+        Path expected = outputPath.resolve("sample-sequential");
+        assertThat(expected)
+                .withFailMessage("Output of the JVM build is missing (run tests before integration tests): %s", expected)
+                .isDirectory();
+
+        Path target = outputPath.resolve("sample-packaged");
+        TestUtils.deleteDir(target);
+
+        LaunchResult result = launcher.launch("--index", "-s", "ALL", "--threads", "1",
+                "-o", target.toString(), TestUtils.SAMPLE_PATH.toString());
+        assertThat(result.exitCode())
+                .withFailMessage("Command failed. Output:%n%s", TestUtils.dump(result))
+                .isEqualTo(0);
+        assertThat(result.getErrorOutput()).isEmpty();
+
+        TestUtils.assertSameFiles(expected, target);
+    }
+}
@@ -17,6 +17,7 @@ import java.util.List;
 import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Assertions;
@@ -28,6 +29,7 @@ public class TestUtils {
     final static Path PROJECT_PATH = Paths.get(System.getProperty("user.dir")).toAbsolutePath();
     // for compile/test purposes. Must clone/sync separately.
     final static Path TOOLS_PATH = PROJECT_PATH.resolve("5etools-mirror-1.github.io/data");
+    final static Path SAMPLE_PATH = PROJECT_PATH.resolve("src/test/resources/5etools-sample/data");
     final static Path TEST_PATH_JSON = PROJECT_PATH.resolve("src/test/resources/paths.json");
     final static Path TEST_SOURCES_JSON = PROJECT_PATH.resolve("src/test/resources/sources.json");
     final static Path OUTPUT_ROOT = PROJECT_PATH.resolve("target/test-data");
@@ -57,6 +59,25 @@ public class TestUtils {
         }
     }
 
+    static void assertSameFiles(Path expected, Path actual) throws IOException {
+        List<Path> expectedFiles = listFiles(expected);
+        assertThat(listFiles(actual)).isEqualTo(expectedFiles);
+        for (Path p : expectedFiles) {
+            assertThat(Files.readString(actual.resolve(p)))
+                    .describedAs(p.toString())
+                    .isEqualTo(Files.readString(expected.resolve(p)));
+        }
+    }
+
+    static List<Path> listFiles(Path directory) throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.filter(p -> p.toFile().isFile())
+                    .map(directory::relativize)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
     static void checkMarkdownLinks(String baseDir, Path p, String line, List<String> errors) {
         List<String> e = new ArrayList<>();
         Matcher links = markdownLinkPattern.matcher(line);
@@ -0,0 +1,112 @@
+package dev.ebullient.json5e.io;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class InputWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testChangesAreCollected() throws Exception {
+        Json5eTui tui = new Json5eTui();
+        tui.init(null, false, false);
+
+        Path data = Files.createDirectories(tempDir.resolve("data/spells"));
+        Path template = Files.writeString(tempDir.resolve("spell2md.txt"), "{resource.name}");
+        TestSource source = new TestSource();
+
+        try (InputWatcher watcher = new InputWatcher(tui, 200, source)) {
+            watcher.watch(tempDir.resolve("data"));
+            watcher.watch(template);
+            assertThat(source.registered).containsExactlyInAnyOrder(tempDir.resolve("data"), data, tempDir);
+
+            // Events that arrive before the debounce time has passed are reported together;
+            // unwatched files are ignored
+            Path spells = data.resolve("spells-phb.json");
+            source.add(data, event(ENTRY_CREATE, spells), event(ENTRY_MODIFY, spells));
+            source.add(tempDir, event(ENTRY_MODIFY, template), event(ENTRY_MODIFY, tempDir.resolve("other.txt")));
+            assertThat(watcher.take()).containsExactly(spells, template);
+            assertThat(source.timeouts).containsExactly(-1L, 200L, 200L);
+
+            // Files in new directories are found, and the new directory is watched
+            Path items = Files.createDirectories(tempDir.resolve("data/items"));
+            Path item = Files.writeString(items.resolve("items.json"), "{}");
+            source.add(tempDir.resolve("data"), event(ENTRY_CREATE, items));
+            assertThat(watcher.take()).containsExactlyInAnyOrder(items, item);
+            assertThat(source.registered).contains(items);
+
+            source.add(items, event(ENTRY_MODIFY, item));
+            assertThat(watcher.take()).containsExactly(item);
+
+            // Lost events: the directory is reported, or the watched files in it
+            source.add(data, event(OVERFLOW, null));
+            source.add(tempDir, event(OVERFLOW, null));
+            assertThat(watcher.take()).containsExactly(data, template);
+        }
+    }
+
+    static WatchEvent<Path> event(WatchEvent.Kind<?> kind, Path child) {
+        return new WatchEvent<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Kind<Path> kind() {
+                return (Kind<Path>) kind;
+            }
+
+            @Override
+            public int count() {
+                return 1;
+            }
+
+            @Override
+            public Path context() {
+                return child == null ? null : child.getFileName();
+            }
+        };
+    }
+
+    /** Events are delivered in the order they were added; polling never waits */
+    static class TestSource implements InputWatcher.EventSource {
+        final List<Path> registered = new ArrayList<>();
+        final List<Long> timeouts = new ArrayList<>();
+        final Deque<InputWatcher.Events> queue = new ArrayDeque<>();
+
+        void add(Path dir, WatchEvent<?>... events) {
+            queue.add(new InputWatcher.Events(dir, List.of(events)));
+        }
+
+        @Override
+        public void register(Path dir) {
+            registered.add(dir);
+        }
+
+        @Override
+        public InputWatcher.Events poll(long timeoutMillis) {
+            timeouts.add(timeoutMillis);
+            if (timeoutMillis < 0 && queue.isEmpty()) {
+                throw new IllegalStateException("Nothing to wait for");
+            }
+            return queue.poll();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
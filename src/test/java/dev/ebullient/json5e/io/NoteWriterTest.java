@@ -0,0 +1,67 @@
+package dev.ebullient.json5e.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class NoteWriterTest {
+
+    @Test
+    public void testTrimWhileStreaming() {
+        List<String> chunks = List.of("\n  ", "\t", "# Title\n", "\n", "  ", "body é ", "\n\n", " ");
+        String content = String.join("", chunks);
+
+        assertThat(write(chunks, true, true)).isEqualTo(content.trim().getBytes(StandardCharsets.UTF_8));
+        assertThat(write(chunks, true, false)).isEqualTo(content.trim().getBytes(StandardCharsets.UTF_8));
+        assertThat(write(chunks, false, true)).isEqualTo(content.getBytes(StandardCharsets.UTF_8));
+        assertThat(write(List.of(" ", "\n"), true, true)).isEmpty();
+    }
+
+    @Test
+    public void testSameAsStringEncoding() {
+        // Content larger than the buffers (the first larger than a kept buffer),
+        // split at random (including within surrogate pairs)
+        Random random = new Random(42);
+        String alphabet = " \n\tab😀é-";
+        for (int i = 0; i < 50; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = i == 0 ? NoteWriter.MAX_KEPT : random.nextInt(i % 5 == 0 ? 100_000 : 100);
+            while (sb.length() < length) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String content = sb.toString();
+
+            List<String> chunks = new ArrayList<>();
+            int start = 0;
+            while (start < content.length()) {
+                int end = Math.min(content.length(), start + 1 + random.nextInt(10_000));
+                chunks.add(content.substring(start, end));
+                start = end;
+            }
+            for (boolean trim : List.of(true, false)) {
+                byte[] expected = (trim ? content.trim() : content).getBytes(StandardCharsets.UTF_8);
+                assertThat(write(chunks, trim, true)).isEqualTo(expected);
+                assertThat(write(chunks, trim, false)).isEqualTo(expected);
+            }
+        }
+    }
+
+    byte[] write(List<String> chunks, boolean trim, boolean channel) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NoteWriter out = NoteWriter.get().start(channel ? Channels.newChannel(bytes) : null, trim);
+        chunks.forEach(out);
+        out.finish();
+        out.flush();
+        return channel
+                ? bytes.toByteArray()
+                : Arrays.copyOf(out.content(), (int) out.bytes());
+    }
+}
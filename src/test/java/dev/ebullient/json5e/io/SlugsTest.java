@@ -0,0 +1,37 @@
+package dev.ebullient.json5e.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class SlugsTest {
+
+    static final List<String> NAMES = List.of(
+            "Fireball", "  Potion of Giant Strength (Hill)  ", "Tasha's Hideous Laughter",
+            "Path of the \"Berserker\"", "Arcane Archer: Arcane Shot", "d100 | Wild Magic",
+            "Blackstaff/Ahghairon", "The Five-Fold", "--- Trailing ---", "snake_case name",
+            "...", "", " ", "+1 Longsword", "Dungeon & Dragons", "Faerûnian", "Æther", "Ünderdark",
+            "Drow, Lolth-Sworn", "Arms of the Astral Self; 3rd level", "A\tB\nC", "'", "it's-'s");
+
+    @Test
+    public void testSameAsSlugifier() {
+        for (String name : NAMES) {
+            assertThat(Slugs.create(name))
+                    .as(name)
+                    .isEqualTo(Json5eTui.slugifier().slugify(name));
+            assertThat(Slugs.slugify(name))
+                    .as(name)
+                    .isEqualTo(Json5eTui.slugifier().slugify(name));
+        }
+    }
+
+    @Test
+    public void testAsciiPath() {
+        assertThat(Slugs.asciiSlug("Tasha's Hideous Laughter")).isEqualTo("tashas-hideous-laughter");
+        assertThat(Slugs.asciiSlug(" (Hill) ")).isEqualTo("hill");
+        assertThat(Slugs.asciiSlug("Faerûnian")).isNull();
+        assertThat(Slugs.asciiSlug("Dungeon & Dragons")).isNull();
+    }
+}
@@ -0,0 +1,154 @@
+package dev.ebullient.json5e.tools5e;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The original <code>replaceText</code>: one regex pass per tag type, in a fixed order.
+ * <p>
+ * Kept (unchanged) to compare with {@link JsonTextReplacer}, and as the baseline in ConvertBenchmark.
+ * Output is the same, except for two (intentional) changes:
+ * <ul>
+ * <li>nested tags: the passes do not convert the inner tag of <code>{&#64;b {&#64;i x}}</code> first
+ * (<code>**_x**_</code> rather than <code>**_x_**</code>)</li>
+ * <li><code>$</code> or <code>\</code> in converted text: the passes read it as a group reference,
+ * and fail (the text is left partly converted, and an error is reported)</li>
+ * </ul>
+ */
+public class BaselineTextReplacer {
+    static final Pattern backgroundPattern = Pattern.compile("\\{@(background) ([^}]+)}");
+    static final Pattern classPattern1 = Pattern.compile("\\{@(class) ([^}]+)}");
+    static final Pattern deityPattern = Pattern.compile("\\{@(deity) ([^}]+)}");
+    static final Pattern featPattern = Pattern.compile("\\{@(feat) ([^}]+)}");
+    static final Pattern itemPattern = Pattern.compile("\\{@(item) ([^}]+)}");
+    static final Pattern racePattern = Pattern.compile("\\{@(race) ([^}]+)}");
+    static final Pattern spellPattern = Pattern.compile("\\{@(spell) ([^}]+)}");
+    static final Pattern creaturePattern = Pattern.compile("\\{@(creature) ([^}]+)}");
+    static final Pattern dicePattern = Pattern.compile("\\{@(dice|damage) ([^|}]+)[^}]*}");
+    static final Pattern chancePattern = Pattern.compile("\\{@chance ([^}]+)}");
+    static final Pattern quickRefPattern = Pattern.compile("\\{@quickref ([^}]+)}");
+    static final Pattern notePattern = Pattern.compile("\\{@note (\\*|Note:)?\\s?([^}]+)}");
+    static final Pattern condPattern = Pattern.compile("\\{@condition ([^|}]+)\\|?[^}]*}");
+    static final Pattern diseasePattern = Pattern.compile("\\{@disease ([^|}]+)\\|?[^}]*}");
+    static final Pattern skillPattern = Pattern.compile("\\{@skill ([^}]+)}");
+    static final Pattern sensePattern = Pattern.compile("\\{@sense ([^}]+)}");
+
+    private BaselineTextReplacer() {
+    }
+
+    /** @return true if the text has nested tags, or a group reference: the passes convert it differently */
+    public static boolean convertsDifferently(String input) {
+        if (input.indexOf('$') >= 0 || input.indexOf('\\') >= 0) {
+            return true;
+        }
+        int start = input.indexOf("{@");
+        while (start >= 0) {
+            int end = input.indexOf('}', start + 2);
+            if (end < 0) {
+                return false;
+            }
+            int open = input.indexOf('{', start + 2);
+            if ((open >= 0 && open < end) || (start > 0 && input.charAt(start - 1) == '{')) {
+                return true;
+            }
+            start = input.indexOf("{@", end + 1);
+        }
+        return false;
+    }
+
+    public static String replaceText(JsonSource source, String input) {
+        String result = input;
+        try {
+            result = result
+                    .replace("#$prompt_number:title=Enter Alert Level$#", "Alert Level")
+                    .replace("#$prompt_number:title=Enter Charisma Modifier$#", "Charisma modifier")
+                    .replace("#$prompt_number:title=Enter Lifestyle Modifier$#", "Charisma modifier")
+                    .replace("#$prompt_number:title=Enter a Modifier$#", "Modifier")
+                    .replace("#$prompt_number:title=Enter a Modifier,default=10$#", "Modifier (default 10)");
+            result = dicePattern.matcher(result)
+                    .replaceAll((match) -> match.group(2));
+            result = chancePattern.matcher(result)
+                    .replaceAll((match) -> match.group(1) + "% chance");
+
+            result = backgroundPattern.matcher(result).replaceAll(source::linkify);
+            result = classPattern1.matcher(result).replaceAll(source::linkify);
+            result = creaturePattern.matcher(result).replaceAll(source::linkify);
+            result = deityPattern.matcher(result).replaceAll(source::linkify);
+            result = featPattern.matcher(result).replaceAll(source::linkify);
+            result = itemPattern.matcher(result).replaceAll(source::linkify);
+            result = racePattern.matcher(result).replaceAll(source::linkify);
+            result = spellPattern.matcher(result).replaceAll(source::linkify);
+
+            result = condPattern.matcher(result)
+                    .replaceAll((match) -> source.linkifyRules(match.group(1), "conditions"));
+
+            result = diseasePattern.matcher(result)
+                    .replaceAll((match) -> source.linkifyRules(match.group(1), "diseases"));
+
+            result = sensePattern.matcher(result)
+                    .replaceAll((match) -> source.linkifyRules(match.group(1), "senses"));
+
+            result = skillPattern.matcher(result)
+                    .replaceAll((match) -> source.linkifyRules(match.group(1), "skills"));
+
+            result = notePattern.matcher(result)
+                    .replaceAll((match) -> {
+                        List<String> text = new ArrayList<>();
+                        text.add("> [!note]");
+                        for (String line : match.group(2).split("\n")) {
+                            text.add("> " + line);
+                        }
+                        return String.join("\n", text);
+                    });
+
+            result = quickRefPattern.matcher(result)
+                    .replaceAll((match) -> {
+                        String[] parts = match.group(1).split("\\|");
+                        if (parts.length > 4) {
+                            return parts[4];
+                        }
+                        return parts[0];
+                    });
+            result = result
+                    .replace("{@hitYourSpellAttack}", "the summoner's spell attack modifier")
+                    .replaceAll("\\{@link ([^}|]+)\\|([^}]+)}", "$1 ($2)") // this must come first
+                    .replaceAll("\\{@5etools ([^}|]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@area ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@action ([^}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@hazard ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@reward ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@dc ([^}]+)}", "DC $1")
+                    .replaceAll("\\{@d20 ([^}]+?)}", "$1")
+                    .replaceAll("\\{@recharge ([^}]+?)}", "(Recharge $1-6)")
+                    .replaceAll("\\{@recharge}", "(Recharge 6)")
+                    .replaceAll("\\{@filter ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@classFeature ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@optfeature ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@cult ([^|}]+)\\|([^|}]+)\\|[^|}]*}", "$2")
+                    .replaceAll("\\{@cult ([^|}]+)\\|[^}]*}", "$1")
+                    .replaceAll("\\{@language ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@table ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@variantrule ([^|}]+)\\|?[^}]*}", "$1")
+                    .replaceAll("\\{@book ([^}|]+)\\|?[^}]*}", "\"$1\"")
+                    .replaceAll("\\{@hit ([^}<]+)}", "+$1")
+                    .replaceAll("\\{@h}", "Hit: ")
+                    .replaceAll("\\{@atk m}", "*Melee Attack:*")
+                    .replaceAll("\\{@atk mw}", "*Melee Weapon Attack:*")
+                    .replaceAll("\\{@atk rw}", "*Ranged Weapon Attack:*")
+                    .replaceAll("\\{@atk mw,rw}", "*Melee or Ranged Weapon Attack:*")
+                    .replaceAll("\\{@atk ms}", "*Melee Spell Attack:*")
+                    .replaceAll("\\{@atk rs}", "*Ranged Spell Attack:*")
+                    .replaceAll("\\{@atk ms,rs}", "*Melee or Ranged Spell Attack:*")
+                    .replaceAll("\\{@b ([^}]+?)}", "**$1**")
+                    .replaceAll("\\{@bold ([^}]+?)}", "**$1**")
+                    .replaceAll("\\{@i ([^}]+?)}", "_$1_")
+                    .replaceAll("\\{@italic ([^}]+)}", "_$1_");
+
+        } catch (Exception e) {
+            source.tui().errorf(e, "Unable to parse string from %s: %s", source.getSources().getKey(), input);
+        }
+        // after other replacements
+        return result.replaceAll("\\{@adventure ([^|}]+)\\|[^}]*}", "$1");
+    }
+}
@@ -0,0 +1,65 @@
+package dev.ebullient.json5e.tools5e;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testConvertAndCopyEvents() throws Exception {
+        Path file = tempDir.resolve("events.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("dev.ebullient.json5e.Convert");
+            recording.enable("dev.ebullient.json5e.Copy");
+            recording.start();
+
+            Json5eTui tui = new Json5eTui();
+            tui.init(null, false, false);
+            JsonIndex index = new JsonIndex(List.of("*"), tui);
+            tui.read5eTools(JsonIndexTest.SAMPLE_PATH, index.importFile());
+            index.prepare();
+
+            Json2MarkdownConverter converter = new Json2MarkdownConverter(index, null);
+            for (Entry<String, JsonNode> e : index.includedEntries()) {
+                if (e.getKey().startsWith("monster|")) {
+                    converter.convert(e);
+                }
+            }
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, List<RecordedEvent>> events = RecordingFile.readAllEvents(file).stream()
+                .collect(Collectors.groupingBy(e -> e.getEventType().getName()));
+
+        List<RecordedEvent> converted = events.get("dev.ebullient.json5e.Convert");
+        assertThat(converted).isNotEmpty();
+        assertThat(converted).allSatisfy(e -> {
+            assertThat(e.getString("type")).isEqualTo("monster");
+            assertThat(e.getString("key")).startsWith("monster|");
+        });
+
+        List<RecordedEvent> copies = events.get("dev.ebullient.json5e.Copy");
+        assertThat(copies).isNotEmpty();
+        assertThat(copies).allSatisfy(e -> assertThat(e.getString("originKey")).isNotEmpty());
+    }
+}
@@ -0,0 +1,213 @@
+package dev.ebullient.json5e.tools5e;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+import dev.ebullient.json5e.qute.QuteSource;
+
+public class JsonIndexTest {
+    static final Path SAMPLE_PATH = Path.of(System.getProperty("user.dir"))
+            .resolve("src/test/resources/5etools-sample/data");
+
+    @TempDir
+    static Path dataDir;
+
+    @BeforeAll
+    static void copySample() throws IOException {
+        try (Stream<Path> files = Files.walk(SAMPLE_PATH)) {
+            for (Path p : files.collect(Collectors.toList())) {
+                Path target = dataDir.resolve(SAMPLE_PATH.relativize(p).toString());
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(p, target);
+                }
+            }
+        }
+        // A second definition of an existing key: the file read last wins
+        Files.writeString(dataDir.resolve("bestiary/bestiary-mm-errata.json"),
+                "{\"monster\":[{\"name\":\"Ember Goblin\",\"source\":\"MM\",\"page\":999,"
+                        + "\"type\":\"humanoid\",\"size\":[\"S\"],\"ac\":[15],\"hp\":{\"average\":7},"
+                        + "\"speed\":{\"walk\":30},\"cr\":\"1/4\"}]}");
+    }
+
+    @Test
+    public void testParallelReadMatchesSequentialRead() throws Exception {
+        JsonIndex sequential = readSample(1);
+        JsonIndex parallel = readSample(4);
+
+        assertThat(toMap(parallel)).isEqualTo(toMap(sequential));
+        assertThat(parallel.getRules()).isEqualTo(sequential.getRules());
+        assertThat(parallel.getOrigin("monster|ember goblin|mm"))
+                .isEqualTo(sequential.getOrigin("monster|ember goblin|mm"));
+    }
+
+    @Test
+    public void testSecondaryIndexLookups() throws Exception {
+        JsonIndex index = readSample(2);
+
+        assertThat(index.classElementsMatching(IndexType.subclass, "Cleric", "PHB")
+                .map(x -> x.get("name").asText()))
+                .containsExactlyInAnyOrder("Path of Arcane", "Path of Binding");
+        assertThat(index.classElementsMatching(IndexType.subclass, "Cleric", "XGE")).isEmpty();
+
+        JsonNode elf = index.getOrigin("race|elf|phb");
+        assertThat(index.originSubraces(index.constructSources(IndexType.race, elf))
+                .map(x -> x.get("name").asText()))
+                .containsExactlyInAnyOrder("High", "Wood");
+
+        assertThat(index.lookupName(IndexType.spell, "Arcane Bolt")).isEqualTo("Arcane Bolt");
+        assertThat(index.lookupName(IndexType.spell, "Unknown Bolt")).isEqualTo("Unknown Bolt");
+    }
+
+    @Test
+    public void testIndexKey() throws Exception {
+        assertThat(IndexKey.create(IndexType.subclass, "Path of Arcane", "Cleric", "PHB", ""))
+                .isEqualTo(String.format("%s|%s|%s|%s|", IndexType.subclass, "Path of Arcane", "Cleric", "PHB")
+                        .toLowerCase());
+
+        IndexKey key = IndexKey.of("subclass|path of arcane|cleric|phb|");
+        assertThat(key).isEqualTo(IndexKey.of("subclass|path of arcane|cleric|phb|"));
+        assertThat(key.type()).isEqualTo(IndexType.subclass);
+        assertThat(key.name()).isEqualTo("path of arcane");
+        assertThat(key.field(2)).isEqualTo("cleric");
+        assertThat(key.field(3)).isEqualTo("phb");
+        assertThat(key.field(4)).isEmpty();
+        assertThat(key.field(5)).isEmpty();
+        assertThat(key.size()).isEqualTo(5);
+        assertThat(IndexType.getTypeFromKey("classtype|fighter|phb")).isEqualTo(IndexType.classtype);
+        assertThatThrownBy(() -> IndexType.getTypeFromKey("class|fighter|phb"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        JsonNode node = Json5eTui.MAPPER.readTree("{\"name\":\"Rage\",\"className\":\"Barbarian\","
+                + "\"classSource\":\"PHB\",\"level\":1,\"source\":\"XGE\"}");
+        assertThat(new JsonIndex(List.of("*"), new Json5eTui()).getKey(IndexType.classfeature, node))
+                .isEqualTo("classfeature|rage|barbarian||1|xge");
+    }
+
+    @Test
+    public void testRestoredIndexMatchesPreparedIndex() throws Exception {
+        JsonIndex prepared = readSample(2);
+        ObjectNode snapshot = prepared.snapshot();
+
+        JsonIndex restored = new JsonIndex(List.of("*"), prepared.tui());
+        restored.restore(Json5eTui.MAPPER.readTree(snapshot.toString()));
+
+        assertThat(restored.snapshot()).isEqualTo(snapshot);
+        assertThat(keys(restored)).isEqualTo(keys(prepared));
+        assertThat(toMap(restored)).isEqualTo(toMap(prepared));
+        assertThat(restored.getRules()).isEqualTo(prepared.getRules());
+    }
+
+    @Test
+    public void testConcurrentConversionDoesNotModifyIndex() throws Exception {
+        JsonIndex index = readSample(8);
+        Map<String, String> before = index.includedEntries().stream()
+                .collect(Collectors.toMap(Entry::getKey, e -> e.getValue().toString()));
+        List<String> keys = before.keySet().stream().sorted().collect(Collectors.toList());
+
+        // every entry is converted several times at once
+        Json2MarkdownConverter converter = new Json2MarkdownConverter(index, null);
+        List<String> repeated = keys.stream()
+                .flatMap(k -> Stream.of(k, k, k, k))
+                .collect(Collectors.toList());
+        List<List<String>> concurrent = index.tui().parallel(repeated, k -> describe(converter.convert(k)));
+
+        for (int i = 0; i < keys.size(); i++) {
+            List<String> expected = describe(converter.convert(keys.get(i)));
+            for (int j = 0; j < 4; j++) {
+                assertThat(concurrent.get(i * 4 + j)).as(keys.get(i)).isEqualTo(expected);
+            }
+        }
+        assertThat(index.includedEntries().stream()
+                .collect(Collectors.toMap(Entry::getKey, e -> e.getValue().toString())))
+                .isEqualTo(before);
+    }
+
+    @Test
+    public void testIndexBuiltAgainReusesUnchangedCopies() throws Exception {
+        Json5eTui tui = new Json5eTui();
+        tui.init(null, false, false);
+        List<Entry<String, JsonNode>> files = new ArrayList<>();
+        tui.read5eTools(dataDir, (name, node) -> files.add(Map.entry(name, node)));
+
+        JsonIndex first = new JsonIndex(List.of("*"), tui);
+        files.forEach(e -> first.importFile().accept(e.getKey(), e.getValue()));
+        first.prepare();
+        assertThat(first.copier.misses.sum()).isPositive();
+
+        // The same (unchanged) trees: copies are not resolved again
+        JsonIndex second = new JsonIndex(List.of("*"), tui, first);
+        files.forEach(e -> second.importFile().accept(e.getKey(), e.getValue()));
+        second.prepare();
+        assertThat(second.copier.misses.sum()).isZero();
+        assertThat(toMap(second)).isEqualTo(toMap(first));
+        assertThat(second.getRules()).isEqualTo(first.getRules());
+
+        // A changed file replaces its entries: copies based on a changed entry are resolved again
+        // (Goblin Boss copies Arcane Goblin, Ember Goblin Chief copies Goblin Boss)
+        files.replaceAll(e -> e.getKey().equals("bestiary-mm.json")
+                ? Map.entry(e.getKey(), (JsonNode) e.getValue().deepCopy())
+                : e);
+        JsonNode mm = files.stream().filter(e -> e.getKey().equals("bestiary-mm.json"))
+                .findFirst().orElseThrow().getValue();
+        ((ObjectNode) mm.get("monster").get(0)).put("str", 30);
+
+        JsonIndex third = new JsonIndex(List.of("*"), tui, second);
+        JsonIndex fresh = new JsonIndex(List.of("*"), tui);
+        for (JsonIndex index : List.of(third, fresh)) {
+            files.forEach(e -> index.importFile().accept(e.getKey(), e.getValue()));
+            index.prepare();
+        }
+        assertThat(third.copier.misses.sum()).isEqualTo(2);
+        assertThat(third.getNode("monster|ember goblin chief|mm").get("str").asInt()).isEqualTo(30);
+        assertThat(toMap(third).keySet()).isEqualTo(toMap(fresh).keySet());
+        assertThat(third.includedEntries().stream().map(e -> e.getValue().toString()))
+                .containsExactlyElementsOf(fresh.includedEntries().stream()
+                        .map(e -> e.getValue().toString()).collect(Collectors.toList()));
+    }
+
+    JsonIndex readSample(int threads) throws IOException {
+        Json5eTui tui = new Json5eTui();
+        tui.init(null, false, false);
+        tui.setThreads(threads);
+
+        JsonIndex index = new JsonIndex(List.of("*"), tui);
+        tui.read5eTools(dataDir, index.importFile());
+        index.prepare();
+        return index;
+    }
+
+    List<String> describe(List<QuteSource> sources) {
+        return sources.stream()
+                .map(qs -> qs.key() + " " + qs.targetFile() + " " + qs.title())
+                .collect(Collectors.toList());
+    }
+
+    List<String> keys(JsonIndex index) {
+        return index.includedEntries().stream().map(Entry::getKey).collect(Collectors.toList());
+    }
+
+    Map<String, Object> toMap(JsonIndex index) {
+        return index.includedEntries().stream()
+                .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+    }
+}
@@ -0,0 +1,143 @@
+package dev.ebullient.json5e.tools5e;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+
+public class JsonSourceCopierTest {
+
+    static final String BASE = "{\"name\":\"Goblin\",\"source\":\"MM\",\"page\":166,"
+            + "\"ability\":[{\"dex\":2}],"
+            + "\"entries\":[\"The goblin is small.\"],"
+            + "\"action\":[{\"name\":\"Scimitar\",\"entries\":[\"{@atk mw} {@hit 4} to hit. Goblin strikes.\"]}],"
+            + "\"trait\":[{\"name\":\"Nimble Escape\",\"entries\":[\"The goblin can take the Disengage action.\"]}]}";
+
+    static final String COPY = "{\"name\":\"Goblin Boss\",\"source\":\"MM\",\"page\":166,"
+            + "\"_copy\":{\"name\":\"Goblin\",\"source\":\"MM\","
+            + "\"_mod\":{"
+            + "\"*\":{\"mode\":\"replaceTxt\",\"replace\":\"goblin\",\"with\":\"boss\",\"flags\":\"i\"},"
+            + "\"action\":{\"mode\":\"appendArr\",\"items\":{\"name\":\"Redirect\",\"entries\":[\"text\"]}}}},"
+            + "\"ability\":[{\"str\":1}],"
+            + "\"entries\":[\"The boss is bossy.\"]}";
+
+    static JsonIndex index;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        index = new JsonIndex(List.of("*"), new Json5eTui());
+        index.importTree("test.json", Json5eTui.MAPPER.readTree(
+                "{\"monster\":[" + BASE + "," + COPY + "]}"));
+    }
+
+    @Test
+    public void testMergeDoesNotModifyBase() throws Exception {
+        JsonNode base = index.getOrigin("monster|goblin|mm");
+        JsonNode copy = index.getOrigin("monster|goblin boss|mm");
+
+        JsonNode merged = index.copier.handleCopy(IndexType.monster, copy);
+
+        assertThat(base).isEqualTo(Json5eTui.MAPPER.readTree(BASE));
+        assertThat(merged.get("name").asText()).isEqualTo("Goblin Boss");
+        assertThat(merged.get("ability").toString()).isEqualTo("[{\"dex\":2,\"str\":1}]");
+        assertThat(merged.get("entries")).hasSize(1);
+        assertThat(merged.get("action")).hasSize(2);
+        assertThat(merged.get("action").get(0).get("entries").get(0).asText())
+                .isEqualTo("{@atk mw} {@hit 4} to hit. boss strikes.");
+        assertThat(merged.get("trait").get(0).get("entries").get(0).asText())
+                .isEqualTo("The boss can take the Disengage action.");
+    }
+
+    @Test
+    public void testCopiesAreResolvedOnce() throws Exception {
+        JsonIndex chain = new JsonIndex(List.of("*"), new Json5eTui());
+        chain.importTree("test.json", Json5eTui.MAPPER.readTree("{\"monster\":[" + BASE + "," + COPY + ","
+                + "{\"name\":\"Goblin Warlord\",\"source\":\"MM\",\"_copy\":{\"name\":\"Goblin Boss\",\"source\":\"MM\"}},"
+                + "{\"name\":\"Goblin Chief\",\"source\":\"MM\",\"_copy\":{\"name\":\"Goblin Boss\",\"source\":\"MM\"}}]}"));
+        JsonSourceCopier copier = new JsonSourceCopier(chain);
+
+        JsonNode boss = chain.getOrigin("monster|goblin boss|mm");
+        JsonNode warlord = copier.handleCopy(IndexType.monster, chain.getOrigin("monster|goblin warlord|mm"));
+        JsonNode chief = copier.handleCopy(IndexType.monster, chain.getOrigin("monster|goblin chief|mm"));
+        JsonNode resolvedBoss = copier.handleCopy(IndexType.monster, boss);
+
+        // the boss is resolved once (for the warlord), then reused
+        assertThat(copier.size()).isEqualTo(3);
+        assertThat(copier.misses()).isEqualTo(3);
+        assertThat(copier.hits()).isEqualTo(2);
+        assertThat(copier.handleCopy(IndexType.monster, chain.getOrigin("monster|goblin warlord|mm"))).isSameAs(warlord);
+        assertThat(warlord.get("action")).hasSize(2);
+        assertThat(chief.get("name").asText()).isEqualTo("Goblin Chief");
+        assertThat(resolvedBoss.get("name").asText()).isEqualTo("Goblin Boss");
+
+        // not a copy: not cached
+        assertThat(copier.handleCopy(IndexType.monster, chain.getOrigin("monster|goblin|mm")))
+                .isSameAs(chain.getOrigin("monster|goblin|mm"));
+        assertThat(copier.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testModsReplaceText() throws Exception {
+        String base = "{\"name\":\"Bandit\",\"source\":\"MM\",\"cr\":\"1\",\"str\":14,\"dex\":12,"
+                + "\"senses\":[\"darkvision 60 ft.\"],"
+                + "\"trait\":[{\"name\":\"Cunning\",\"entries\":[\"<$title_short_name$> hides.\"]}],"
+                + "\"action\":[{\"name\":\"Club\",\"entries\":[\"{@hit 4} to hit. {@dc 12|Constitution} save.\"]}]}";
+        JsonIndex mods = new JsonIndex(List.of("*"), new Json5eTui());
+        mods.importTree("test.json", Json5eTui.MAPPER.readTree("{\"monster\":[" + base + ","
+                + "{\"name\":\"Bandit Captain\",\"source\":\"MM\",\"_copy\":{\"name\":\"Bandit\",\"source\":\"MM\","
+                + "\"_mod\":{\"*\":[{\"mode\":\"scalarAddHit\",\"scalar\":2},{\"mode\":\"scalarAddDc\",\"scalar\":1}],"
+                + "\"action\":{\"mode\":\"appendArr\",\"items\":{\"name\":\"Parry\","
+                + "\"entries\":[\"<$name$> adds {@hit <$to_hit__str$>}, DC <$spell_dc__dex$>.\"]}},"
+                + "\"_\":{\"mode\":\"addSenses\",\"senses\":{\"type\":\"darkvision\",\"range\":120}}}}}]}"));
+        JsonSourceCopier copier = new JsonSourceCopier(mods);
+
+        JsonNode bandit = mods.getOrigin("monster|bandit|mm");
+        JsonNode captain = copier.handleCopy(IndexType.monster, mods.getOrigin("monster|bandit captain|mm"));
+
+        assertThat(captain.get("trait").get(0).get("entries").get(0).asText()).isEqualTo("The bandit captain hides.");
+        assertThat(captain.get("action").get(0).get("entries").get(0).asText())
+                .isEqualTo("{@hit 6} to hit. {@dc 13} save.");
+        assertThat(captain.get("action").get(1).get("entries").get(0).asText())
+                .isEqualTo("Bandit adds {@hit +4}, DC 11.");
+        assertThat(captain.get("senses").toString()).isEqualTo("[\"darkvision 120 ft.\"]");
+        // the base is unchanged
+        assertThat(bandit).isEqualTo(Json5eTui.MAPPER.readTree(base));
+    }
+
+    @Test
+    public void testCircularCopy() throws Exception {
+        JsonIndex circle = new JsonIndex(List.of("*"), new Json5eTui());
+        circle.importTree("test.json", Json5eTui.MAPPER.readTree("{\"monster\":["
+                + "{\"name\":\"Ouroboros\",\"source\":\"MM\",\"_copy\":{\"name\":\"Serpent\",\"source\":\"MM\"}},"
+                + "{\"name\":\"Serpent\",\"source\":\"MM\",\"_copy\":{\"name\":\"Ouroboros\",\"source\":\"MM\"}}]}"));
+        JsonSourceCopier copier = new JsonSourceCopier(circle);
+
+        assertThatThrownBy(() -> copier.handleCopy(IndexType.monster, circle.getOrigin("monster|ouroboros|mm")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("monster|ouroboros|mm copies itself");
+    }
+
+    @Test
+    public void testCopyReplaceNode() throws Exception {
+        JsonNode node = Json5eTui.MAPPER.readTree(
+                "{\"entries\":[\"A \\\"goblin\\\" here\",\"nothing\",3,{\"goblin\":\"goblin\"}]}");
+
+        JsonNode result = index.copier.copyReplaceNode(node, Pattern.compile("goblin"), "orc");
+
+        assertThat(result.toString())
+                .isEqualTo("{\"entries\":[\"A \\\"orc\\\" here\",\"nothing\",3,{\"goblin\":\"orc\"}]}");
+        assertThat(result.get("entries").get(1)).isSameAs(node.get("entries").get(1));
+        assertThat(node.get("entries").get(0).asText()).isEqualTo("A \"goblin\" here");
+        // each text value is matched on its own: not across values, or in field names
+        JsonNode across = index.copier.copyReplaceNode(node, Pattern.compile("here\",\"nothing|\\{\"goblin\""), "orc");
+        assertThat(across).isSameAs(node);
+    }
+}
@@ -0,0 +1,163 @@
+package dev.ebullient.json5e.tools5e;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+
+public class JsonTextReplacerTest {
+
+    static final String DATA = "{"
+            + "\"spell\":[{\"name\":\"Fireball\",\"source\":\"PHB\",\"page\":241}],"
+            + "\"feat\":[{\"name\":\"Alert\",\"source\":\"PHB\",\"page\":165}],"
+            + "\"background\":[{\"name\":\"Acolyte\",\"source\":\"PHB\",\"page\":127}],"
+            + "\"item\":[{\"name\":\"Longsword\",\"source\":\"PHB\",\"page\":149}]"
+            + "}";
+
+    static final String FIREBALL = "[fireball](/compendium/spells/fireball.md)";
+
+    static final String[] FRAGMENTS = {
+            "{@", "}", "{", "|", " ", "b ", "i ", "h", "dc ", "hit ", "atk ", "mw", "note ", "* ", "Note:",
+            "spell ", "fireball", "condition ", "quickref ", "cult ", "link ", "adventure ", "recharge", "text",
+            "$", "\\", "@", "\n", "<", "dice ", "1d6", "chance ", "book "
+    };
+
+    static JsonIndex index;
+    static JsonSource source;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        index = new JsonIndex(List.of("*"), new Json5eTui());
+        index.importTree("test.json", Json5eTui.MAPPER.readTree(DATA));
+        index.prepare();
+
+        JsonNode note = Json5eTui.MAPPER.readTree("{\"name\":\"Test\",\"source\":\"PHB\"}");
+        CompendiumSources sources = index.constructSources(IndexType.note, note);
+        source = new JsonSource() {
+            @Override
+            public JsonIndex index() {
+                return index;
+            }
+
+            @Override
+            public CompendiumSources getSources() {
+                return sources;
+            }
+        };
+    }
+
+    @Test
+    public void testReplaceText() {
+        assertThat(source.replaceText(
+                "{@atk mw} {@hit 4} to hit, reach 5 ft., one target. {@h}1 ({@damage 1d4+2}) slashing damage."))
+                .isEqualTo("*Melee Weapon Attack:* +4 to hit, reach 5 ft., one target. Hit: 1 (1d4+2) slashing damage.");
+        assertThat(source.replaceText("{@spell fireball} {@spell missing spell|xge}"))
+                .isEqualTo(FIREBALL + " missing spell");
+        assertThat(source.replaceText("{@dc 19} {@recharge 5} {@recharge} {@chance 25} {@dice 2d6|extra}"))
+                .isEqualTo("DC 19 (Recharge 5-6) (Recharge 6) 25% chance 2d6");
+        assertThat(source.replaceText("{@quickref Cover||3||cover} {@quickref difficult terrain||3}"))
+                .isEqualTo("cover difficult terrain");
+        assertThat(source.replaceText("{@link text|https://example.com} {@cult Cult|dmg|Text} {@cult Cult|dmg}"))
+                .isEqualTo("text (https://example.com) dmg Cult");
+        assertThat(source.replaceText("{@book Player's Handbook|phb} {@adventure Lost Mine|LMoP|1} {@atk ms,rs}"))
+                .isEqualTo("\"Player's Handbook\" Lost Mine *Melee or Ranged Spell Attack:*");
+        assertThat(source.replaceText("{@note Note: this is a note\nwith two lines}"))
+                .isEqualTo("> [!note]\n> this is a note\n> with two lines");
+        assertThat(source.replaceText("#$prompt_number:title=Enter a Modifier$# and {@b $5} or {@i a\\b}"))
+                .isEqualTo("Modifier and **$5** or _a\\b_");
+    }
+
+    @Test
+    public void testReplaceTextMatchesBaseline() throws Exception {
+        // Every string in the sample data converts as it did with the regex passes,
+        // except for the changes listed in BaselineTextReplacer (see testReplaceNestedTags)
+        Json5eTui tui = new Json5eTui();
+        tui.init(null, false, false);
+        JsonIndex sample = new JsonIndex(List.of("*"), tui);
+        List<String> strings = new ArrayList<>();
+        tui.read5eTools(JsonIndexTest.SAMPLE_PATH, (name, node) -> {
+            sample.importTree(name, node);
+            collectText(node, strings);
+        });
+        sample.prepare();
+
+        int different = 0;
+        for (String s : strings) {
+            if (BaselineTextReplacer.convertsDifferently(s)) {
+                different++;
+                continue;
+            }
+            assertThat(sample.replaceText(s)).describedAs(s)
+                    .isEqualTo(BaselineTextReplacer.replaceText(sample, s));
+        }
+        assertThat(strings.size() - different).isGreaterThan(100);
+    }
+
+    @Test
+    public void testReplaceNestedTags() {
+        // The regex passes convert the outer tag first: {@b {@i both}} became **_both**_
+        assertThat(source.replaceText("nested {@note see {@spell fireball} for details} and {@b {@i both}}"))
+                .isEqualTo("nested > [!note]\n> see " + FIREBALL + " for details and **_both_**");
+        assertThat(source.replaceText("{{@b x}} {@b x}} {@i y} {@h}{@h}"))
+                .isEqualTo("{**x**} **x**} _y_ Hit: Hit: ");
+    }
+
+    @Test
+    public void testReplaceTextLeavesUnknownTags() {
+        assertThat(source.replaceText("{@unknown tag {@b x}} {@b} {@dc } {@hit 3<br>} {@link nolink} {@cult |x}"))
+                .isEqualTo("{@unknown tag **x**} {@b} {@dc } {@hit 3<br>} {@link nolink} {@cult |x}");
+        assertThat(source.replaceText("unterminated {@b bold and {@i italic} and {@spell"))
+                .isEqualTo("unterminated {@b bold and _italic_ and {@spell");
+    }
+
+    @Test
+    public void testLinkCache() throws Exception {
+        JsonIndex cached = new JsonIndex(List.of("*"), new Json5eTui());
+        cached.importTree("test.json", Json5eTui.MAPPER.readTree(DATA));
+        cached.prepare();
+        LinkCache links = cached.linkCache();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(cached.linkify("spell", "fireball")).isEqualTo("[fireball](/compendium/spells/fireball.md)");
+            assertThat(cached.linkify("spell", "missing spell|xge")).isEqualTo("missing spell");
+        }
+        assertThat(links.size()).isEqualTo(2);
+        assertThat(links.misses()).isEqualTo(2);
+        assertThat(links.hits()).isEqualTo(4);
+    }
+
+    @Test
+    public void testReplaceTextFuzz() {
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int n = 1 + random.nextInt(12);
+            for (int j = 0; j < n; j++) {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            String s = sb.toString();
+            String result = source.replaceText(s);
+            if (!s.contains("{@")) {
+                assertThat(result).describedAs(s).isEqualTo(s);
+            } else if (!BaselineTextReplacer.convertsDifferently(s)) {
+                assertThat(result).describedAs(s).isEqualTo(BaselineTextReplacer.replaceText(source, s));
+            }
+        }
+    }
+
+    static void collectText(JsonNode node, List<String> strings) {
+        if (node.isTextual()) {
+            strings.add(node.asText());
+        } else {
+            node.forEach(child -> collectText(child, strings));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package dev.ebullient.json5e.tools5e;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class KeyMatcherTest {
+
+    static final List<String> PATTERNS = List.of(
+            "race|.*|dmg",
+            "spell|.*",
+            "monster|goblin boss|mm",
+            "item|.*sword.*|phb",
+            "(feat|background)|.*|xge",
+            ".*|ua.*",
+            "classfeature|[^|]+|monk|phb|\\d+",
+            "deity|(.)\\1.*|.*",
+            "subclass|path of (?<x>[a-z]+)|barbarian|phb|");
+
+    static final List<String> KEYS = List.of(
+            "race|elf|dmg", "race|elf|phb", "race|half-elf|dmg",
+            "spell|fireball|phb", "spell|", "spells|fireball|phb",
+            "monster|goblin boss|mm", "monster|goblin|mm",
+            "item|longsword|phb", "item|longsword|dmg", "item|+1 shortsword|phb",
+            "feat|alert|xge", "background|acolyte|xge", "feat|alert|phb",
+            "optionalfeature|thing|uaartificer", "sense|darkvision|phb",
+            "classfeature|flurry of blows|monk|phb|2", "classfeature|flurry of blows|monk|phb|x",
+            "deity|aaron|faerun|phb", "deity|abe|faerun|phb",
+            "subclass|path of the berserker|barbarian|phb|", "subclass|path of wild|barbarian|phb|");
+
+    @Test
+    public void testMatchesRegexPerRule() {
+        KeyMatcher matcher = new KeyMatcher();
+        PATTERNS.forEach(matcher::excludePattern);
+        matcher.include("race|elf|dmg");
+        matcher.exclude("sense|darkvision|phb");
+
+        List<Pattern> regexes = PATTERNS.stream()
+                .map(p -> Pattern.compile(KeyMatcher.toRegex(p)))
+                .collect(Collectors.toList());
+
+        for (String key : KEYS) {
+            KeyMatcher.Rule rule = matcher.match(key);
+            if (key.equals("race|elf|dmg")) {
+                assertThat(rule.included()).isTrue();
+                continue;
+            }
+            if (key.equals("sense|darkvision|phb")) {
+                assertThat(rule.kind()).isEqualTo(KeyMatcher.Kind.exclude);
+                continue;
+            }
+            boolean expected = regexes.stream().anyMatch(x -> x.matcher(key).matches());
+            assertThat(rule != null).describedAs(key).isEqualTo(expected);
+            if (rule != null) {
+                assertThat(rule.included()).isFalse();
+                assertThat(Pattern.compile(KeyMatcher.toRegex(rule.text())).matcher(key).matches())
+                        .describedAs(key + " " + rule)
+                        .isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        KeyMatcher.Literal literal = KeyMatcher.Literal.of(KeyMatcher.toRegex("spell|fireball|phb"));
+        assertThat(literal.complete).isTrue();
+        assertThat(literal.prefix).isEqualTo("spell|fireball|phb");
+
+        literal = KeyMatcher.Literal.of(KeyMatcher.toRegex("spell|.*"));
+        assertThat(literal.prefixOnly).isTrue();
+        assertThat(literal.prefix).isEqualTo("spell|");
+
+        literal = KeyMatcher.Literal.of("items?\\|.*");
+        assertThat(literal.prefixOnly).isFalse();
+        assertThat(literal.prefix).isEqualTo("item");
+    }
+}
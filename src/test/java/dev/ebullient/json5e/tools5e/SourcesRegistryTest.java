@@ -0,0 +1,61 @@
+package dev.ebullient.json5e.tools5e;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import dev.ebullient.json5e.io.Json5eTui;
+
+public class SourcesRegistryTest {
+
+    @Test
+    public void testSourcesByIdentity() throws Exception {
+        JsonNode node = Json5eTui.MAPPER.readTree("{"
+                + "\"name\": \"Goblin\", \"source\": \"MM\", \"page\": 166,"
+                + "\"otherSources\": [{\"source\": \"LMoP\"}, {\"source\": \"MM\"}]"
+                + "}");
+        ObjectNode equal = node.deepCopy();
+
+        SourcesRegistry registry = new SourcesRegistry();
+        CompendiumSources sources = registry.get(node,
+                x -> new CompendiumSources(registry.ids, IndexType.monster, "monster|goblin|mm", x));
+
+        assertThat(registry.get(node, x -> null)).isSameAs(sources);
+        assertThat(registry.size()).isEqualTo(1);
+
+        // an equal node is a different element
+        CompendiumSources other = registry.get(equal,
+                x -> new CompendiumSources(registry.ids, IndexType.monster, "monster|goblin|mm", x));
+        assertThat(other).isNotSameAs(sources);
+        assertThat(registry.size()).isEqualTo(2);
+
+        registry.clear();
+        assertThat(registry.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testBookSources() throws Exception {
+        JsonNode node = Json5eTui.MAPPER.readTree("{"
+                + "\"name\": \"Thing\", \"source\": \"UAArtificer\","
+                + "\"additionalSources\": [{\"source\": \"ERLW\"}, {\"source\": \"UAArtificer\"}, {\"source\": \"PHB\"}]"
+                + "}");
+        SourceIds ids = new SourceIds();
+        CompendiumSources sources = new CompendiumSources(ids, IndexType.item, "item|thing|uaartificer", node);
+
+        assertThat(sources.getBookSources()).isEqualTo(List.of("UAArtificer", "ERLW"));
+        assertThat(sources.primarySource()).isEqualTo("UAArtificer");
+        assertThat(sources.isPrimarySource("UAArtificer")).isTrue();
+        assertThat(sources.alternateSource()).isEqualTo("ERLW");
+        assertThat(sources.uaSource()).contains("UAA");
+        assertThat(sources.sourceKey(sources.bookSources[1])).isEqualTo("erlw");
+        assertThat(ids.id("ERLW")).isEqualTo(sources.bookSources[1]);
+        // the table only holds the sources it was given
+        assertThat(ids.size()).isEqualTo(2);
+        assertThat(new SourceIds().size()).isZero();
+    }
+}